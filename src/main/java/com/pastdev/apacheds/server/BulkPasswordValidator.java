@@ -0,0 +1,184 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Validates batches of passwords in parallel on a {@link ForkJoinPool}, for
+ * imports and audits. Every password of a batch is checked against the one
+ * policy compiled from the settings of the {@link PastdevPasswordValidator}
+ * when the batch starts, and a rejection is reported as a
+ * {@link PasswordValidationResult} rather than thrown.
+ */
+public class BulkPasswordValidator {
+    private static final int CHUNK_SIZE = 256;
+    private static final int MINIMUM_THRESHOLD = 16;
+    private static final int SPLITS_PER_THREAD = 8;
+
+    private final ForkJoinPool pool;
+    private final PastdevPasswordValidator validator;
+
+    /**
+     * Creates a bulk validator that runs on a pool shared by every bulk
+     * validator created this way, with one thread per processor.
+     *
+     * @param validator
+     *            The validator whose settings apply
+     */
+    public BulkPasswordValidator( PastdevPasswordValidator validator ) {
+        this( validator, SharedPool.POOL );
+    }
+
+    /**
+     * Creates a bulk validator that runs on <code>pool</code>.
+     *
+     * @param validator
+     *            The validator whose settings apply
+     * @param pool
+     *            The pool to validate on
+     */
+    public BulkPasswordValidator( PastdevPasswordValidator validator, ForkJoinPool pool ) {
+        this.validator = validator;
+        this.pool = pool;
+    }
+
+    private static PasswordValidationResult validate( CompiledPasswordPolicy policy, int index,
+            PasswordCandidate candidate ) {
+        RuleResultDetail reported;
+        if ( candidate.getUser() == null ) {
+            reported = PastdevPasswordValidator.check( policy, candidate.getPassword(), candidate.getUsername() );
+        }
+        else {
+            try {
+                reported = PastdevPasswordValidator.check( policy, candidate.getPassword(), candidate.getUser() );
+            }
+            catch ( PasswordPolicyException e ) {
+                return new PasswordValidationResult( index, candidate, PasswordValidationResult.ERROR_CODE_USER,
+                        e.getMessage() );
+            }
+        }
+        if ( reported == null ) {
+            return new PasswordValidationResult( index, candidate, null, null );
+        }
+        return new PasswordValidationResult( index, candidate, reported.getErrorCode(),
+                policy.getMessageTemplates().resolve( reported ) );
+    }
+
+    /**
+     * Validates every candidate of <code>candidates</code> and returns the
+     * results in the same order.
+     *
+     * @param candidates
+     *            The passwords to validate
+     * @return The results, one per candidate
+     */
+    public List<PasswordValidationResult> validate( List<PasswordCandidate> candidates ) {
+        PasswordCandidate[] array = candidates.toArray( new PasswordCandidate[candidates.size()] );
+        PasswordValidationResult[] results = new PasswordValidationResult[array.length];
+        pool.invoke( new ValidateTask( validator.getCompiledPolicy(), array, 0, array.length, 0,
+                threshold( array.length ), results, null ) );
+        return Arrays.asList( results );
+    }
+
+    /**
+     * Validates the candidates of <code>candidates</code> as they are read,
+     * passing each result to <code>listener</code> as soon as it is known.
+     * Only a few chunks of candidates are held at a time, however long the
+     * iteration, and this returns once every result has been passed on.
+     *
+     * @param candidates
+     *            The passwords to validate, read on the calling thread
+     * @param listener
+     *            Receives the results, from the pool threads
+     */
+    public void validate( Iterator<PasswordCandidate> candidates, PasswordValidationListener listener ) {
+        CompiledPasswordPolicy policy = validator.getCompiledPolicy();
+        int maximumInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<?>> inFlight = new ArrayDeque<ForkJoinTask<?>>();
+        int offset = 0;
+        while ( candidates.hasNext() ) {
+            PasswordCandidate[] chunk = new PasswordCandidate[CHUNK_SIZE];
+            int size = 0;
+            while ( size < CHUNK_SIZE && candidates.hasNext() ) {
+                chunk[size++] = candidates.next();
+            }
+            if ( inFlight.size() >= maximumInFlight ) {
+                inFlight.removeFirst().join();
+            }
+            inFlight.addLast( pool.submit( new ValidateTask( policy, chunk, 0, size, offset,
+                    threshold( size ), null, listener ) ) );
+            offset += size;
+        }
+        while ( !inFlight.isEmpty() ) {
+            inFlight.removeFirst().join();
+        }
+    }
+
+    private int threshold( int size ) {
+        return Math.max( MINIMUM_THRESHOLD, size / (pool.getParallelism() * SPLITS_PER_THREAD) );
+    }
+
+    private static final class SharedPool {
+        private static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    private static final class ValidateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PasswordCandidate[] candidates;
+        private final int from;
+        private final PasswordValidationListener listener;
+        private final int offset;
+        private final CompiledPasswordPolicy policy;
+        private final PasswordValidationResult[] results;
+        private final int threshold;
+        private final int to;
+
+        private ValidateTask( CompiledPasswordPolicy policy, PasswordCandidate[] candidates, int from, int to,
+                int offset, int threshold, PasswordValidationResult[] results, PasswordValidationListener listener ) {
+            this.policy = policy;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.offset = offset;
+            this.threshold = threshold;
+            this.results = results;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from <= threshold ) {
+                for ( int i = from; i < to; i++ ) {
+                    PasswordValidationResult result = validate( policy, offset + i, candidates[i] );
+                    if ( results != null ) {
+                        results[i] = result;
+                    }
+                    if ( listener != null ) {
+                        listener.validated( result );
+                    }
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new ValidateTask( policy, candidates, from, middle, offset, threshold, results, listener ),
+                    new ValidateTask( policy, candidates, middle, to, offset, threshold, results, listener ) );
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A reusable {@link CharSequence} view of a <code>char[]</code>, so a
+ * password held in an array can be validated without copying it into a
+ * {@link String} that could never be wiped. The view holds no copy of its
+ * own, so there is nothing of it to wipe: wiping the array is left to its
+ * owner. Only {@link #subSequence(int, int)} and {@link #toString()} copy
+ * characters out, and rules only call them to describe a rejection. Not
+ * thread safe.
+ */
+final class CharArraySequence implements CharSequence {
+    private static final char[] EMPTY = new char[0];
+
+    private char[] chars = EMPTY;
+
+    @Override
+    public char charAt( int index ) {
+        return chars[index];
+    }
+
+    /**
+     * Returns a view of a copy of <code>sequence</code>, for a thread that
+     * may still be reading it after its owner has wiped or reused the
+     * original. The copy is the view's own, so {@link #wipe()} it when done.
+     */
+    static CharArraySequence copyOf( CharSequence sequence ) {
+        char[] chars;
+        if ( sequence instanceof CharArraySequence ) {
+            chars = Arrays.copyOf( ((CharArraySequence) sequence).chars, sequence.length() );
+        }
+        else {
+            chars = new char[sequence.length()];
+            for ( int i = 0; i < chars.length; i++ ) {
+                chars[i] = sequence.charAt( i );
+            }
+        }
+        return new CharArraySequence().wrap( chars );
+    }
+
+    /**
+     * Drops the reference to the wrapped array, leaving its contents as they
+     * are.
+     */
+    void clear() {
+        chars = EMPTY;
+    }
+
+    @Override
+    public int length() {
+        return chars.length;
+    }
+
+    @Override
+    public CharSequence subSequence( int start, int end ) {
+        return new String( chars, start, end - start );
+    }
+
+    @Override
+    public String toString() {
+        return new String( chars );
+    }
+
+    /**
+     * Zeroes the wrapped array and drops the reference to it. Only for a
+     * view that owns its array, as one from {@link #copyOf(CharSequence)}
+     * does.
+     */
+    void wipe() {
+        Arrays.fill( chars, '\0' );
+        chars = EMPTY;
+    }
+
+    CharArraySequence wrap( char[] chars ) {
+        this.chars = chars;
+        return this;
+    }
+}
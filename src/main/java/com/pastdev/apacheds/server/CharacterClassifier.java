@@ -0,0 +1,143 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Classifies every character of a password in a single pass. ASCII
+ * characters are looked up in tables precomputed at construction, everything
+ * else falls back to the {@link Character} tests used by
+ * {@link edu.vt.middleware.password.Password} so counts are identical to the
+ * vt-password character rules.
+ */
+final class CharacterClassifier {
+    static final int UPPERCASE = 0;
+    static final int LOWERCASE = 1;
+    static final int DIGIT = 2;
+    static final int NON_ALPHANUMERIC = 3;
+    static final int CLASS_COUNT = 4;
+
+    private static final int NONE = -1;
+    private static final int ASCII = 128;
+    private static final byte[] ASCII_CLASSES = new byte[ASCII];
+
+    static {
+        for ( char c = 0; c < ASCII; c++ ) {
+            ASCII_CLASSES[c] = (byte) classOf( c );
+        }
+    }
+
+    private final int[] asciiIllegalIndexes;
+    private final char[] illegalCharacters;
+    private final char[] otherIllegalCharacters;
+    private final int[] otherIllegalIndexes;
+
+    /**
+     * Creates a classifier that reports the characters in
+     * <code>illegalCharacters</code>. When more than one is present, the one
+     * that comes first in <code>illegalCharacters</code> is reported, matching
+     * {@link edu.vt.middleware.password.IllegalCharacterRule}.
+     *
+     * @param illegalCharacters
+     */
+    CharacterClassifier( String illegalCharacters ) {
+        this.illegalCharacters = illegalCharacters.toCharArray();
+
+        asciiIllegalIndexes = new int[ASCII];
+        StringBuilder others = new StringBuilder();
+        for ( char c = 0; c < ASCII; c++ ) {
+            asciiIllegalIndexes[c] = illegalCharacters.indexOf( c );
+        }
+        for ( char c : this.illegalCharacters ) {
+            if ( c >= ASCII && others.indexOf( String.valueOf( c ) ) < 0 ) {
+                others.append( c );
+            }
+        }
+
+        // non ascii illegal characters are rare, so a sorted array is enough
+        otherIllegalCharacters = others.toString().toCharArray();
+        Arrays.sort( otherIllegalCharacters );
+        otherIllegalIndexes = new int[otherIllegalCharacters.length];
+        for ( int i = 0; i < otherIllegalCharacters.length; i++ ) {
+            otherIllegalIndexes[i] = illegalCharacters.indexOf( otherIllegalCharacters[i] );
+        }
+    }
+
+    private static int classOf( char c ) {
+        if ( Character.isDigit( c ) ) {
+            return DIGIT;
+        }
+        else if ( Character.isLetter( c ) ) {
+            if ( Character.isUpperCase( c ) ) {
+                return UPPERCASE;
+            }
+            else if ( Character.isLowerCase( c ) ) {
+                return LOWERCASE;
+            }
+            return NONE;
+        }
+        // whitespace is counted as non alphanumeric by vt-password
+        return NON_ALPHANUMERIC;
+    }
+
+    /**
+     * Adds the number of characters of each class in <code>password</code> to
+     * <code>counts</code>, indexed by {@link #UPPERCASE}, {@link #LOWERCASE},
+     * {@link #DIGIT} and {@link #NON_ALPHANUMERIC}.
+     *
+     * @param password
+     *            The password to classify
+     * @param counts
+     *            An array of at least {@link #CLASS_COUNT} counters
+     * @return The index into {@link #getIllegalCharacters()} of the reported
+     *         illegal character, or -1 if there are none
+     */
+    int classify( CharSequence password, int[] counts ) {
+        int illegalIndex = Integer.MAX_VALUE;
+        for ( int i = 0, length = password.length(); i < length; i++ ) {
+            char c = password.charAt( i );
+            int characterClass = getCharacterClass( c );
+            if ( characterClass != NONE ) {
+                counts[characterClass]++;
+            }
+            int index = getIllegalIndex( c );
+            if ( index >= 0 && index < illegalIndex ) {
+                illegalIndex = index;
+            }
+        }
+        return illegalIndex == Integer.MAX_VALUE ? NONE : illegalIndex;
+    }
+
+    /**
+     * Returns the class of <code>c</code>, {@link #UPPERCASE},
+     * {@link #LOWERCASE}, {@link #DIGIT}, {@link #NON_ALPHANUMERIC}, or -1 for
+     * a letter that is neither upper nor lower case.
+     */
+    int getCharacterClass( char c ) {
+        return c < ASCII ? ASCII_CLASSES[c] : classOf( c );
+    }
+
+    /**
+     * Returns the index of <code>c</code> in {@link #getIllegalCharacters()},
+     * or -1 if it is not illegal.
+     */
+    int getIllegalIndex( char c ) {
+        if ( c < ASCII ) {
+            return asciiIllegalIndexes[c];
+        }
+        if ( otherIllegalCharacters.length == 0 ) {
+            return NONE;
+        }
+        int index = Arrays.binarySearch( otherIllegalCharacters, c );
+        return index >= 0 ? otherIllegalIndexes[index] : NONE;
+    }
+
+    char[] getIllegalCharacters() {
+        return illegalCharacters.clone();
+    }
+
+    char getIllegalCharacter( int index ) {
+        return illegalCharacters[index];
+    }
+}
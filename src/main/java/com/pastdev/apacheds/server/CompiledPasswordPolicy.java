@@ -0,0 +1,102 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+import com.pastdev.apacheds.server.dictionary.DictionaryRegistry;
+import com.pastdev.apacheds.server.metrics.PasswordPolicyMetrics;
+import com.pastdev.apacheds.server.metrics.RuleMetrics;
+
+
+/**
+ * An immutable snapshot of the rules, dictionary and messages compiled from
+ * the settings of a {@link PastdevPasswordValidator}. Once published, an
+ * instance is shared by every validation and never modified, so readers need
+ * no locking.
+ */
+final class CompiledPasswordPolicy {
+    private final PastdevAccountRule accountRule;
+    private final RuleMetrics accountRuleMetrics;
+    private final DictionaryRegistry.Lease dictionary;
+    private final boolean failFast;
+    private final int inlineRuleCount;
+    private final MessageTemplates messageTemplates;
+    private final PasswordPolicyMetrics metrics;
+    private final List<PastdevRule> rules;
+
+    CompiledPasswordPolicy( List<PastdevRule> rules, int inlineRuleCount, PastdevAccountRule accountRule,
+            MessageTemplates messageTemplates, boolean failFast, DictionaryRegistry.Lease dictionary,
+            PasswordPolicyMetrics metrics ) {
+        this.accountRule = accountRule;
+        this.accountRuleMetrics = accountRule == null || metrics == null
+                ? null
+                : metrics.getRuleMetrics( PastdevAccountRule.class.getSimpleName() );
+        this.dictionary = dictionary;
+        this.failFast = failFast;
+        this.inlineRuleCount = inlineRuleCount;
+        this.rules = Collections.unmodifiableList( new ArrayList<PastdevRule>( rules ) );
+        this.messageTemplates = messageTemplates;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the rule checked with {@link #getRules()} when validating
+     * against a user entry, or null if account information is not checked
+     * and the entry only supplies a username.
+     */
+    PastdevAccountRule getAccountRule() {
+        return accountRule;
+    }
+
+    RuleMetrics getAccountRuleMetrics() {
+        return accountRuleMetrics;
+    }
+
+    /**
+     * Returns the shared dictionary the dictionary rule searches, or null if
+     * dictionary words are not checked.
+     */
+    DictionaryRegistry.Lease getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the number of leading rules cheap enough to run on the calling
+     * thread when validation is offloaded; the rules after them are the
+     * costly ones.
+     */
+    int getInlineRuleCount() {
+        return inlineRuleCount;
+    }
+
+    MessageTemplates getMessageTemplates() {
+        return messageTemplates;
+    }
+
+    /**
+     * Returns the metrics to count rejections in, or null if nothing is
+     * measured.
+     */
+    PasswordPolicyMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the rules in evaluation order.
+     */
+    List<PastdevRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns true if validation stops at the first rule that rejects the
+     * password and reports its detail, false if every rule adds its details
+     * and the most telling one is reported.
+     */
+    boolean isFailFast() {
+        return failFast;
+    }
+}
@@ -0,0 +1,167 @@
+package com.pastdev.apacheds.server;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Watches a set of files with a {@link WatchService} on a daemon thread of
+ * its own and tells a {@link Listener} which of them changed. Events are
+ * coalesced until the files have been quiet for a while, so an editor
+ * writing a file in several steps, or a deployment replacing several files,
+ * causes one notification rather than many.
+ */
+final class FileWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger( FileWatcher.class );
+
+    private final Map<Path, WatchKey> directories = new HashMap<Path, WatchKey>();
+    private final Set<Path> files = new HashSet<Path>();
+    private final Listener listener;
+    private final long quietMillis;
+    private final Thread thread;
+    private final WatchService watchService;
+
+    /**
+     * @param name
+     *            The name of the watching thread
+     * @param quietMillis
+     *            How long the files must be unchanged before the listener is
+     *            told
+     * @param listener
+     *            Told of changes, on the watching thread
+     * @throws IOException
+     *             If the file system cannot be watched
+     */
+    FileWatcher( String name, long quietMillis, Listener listener ) throws IOException {
+        this.quietMillis = quietMillis;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, name );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Stops watching. A notification in progress is interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private synchronized boolean isWatched( Path file ) {
+        return files.contains( file );
+    }
+
+    /**
+     * Takes events until the watch service is closed, collecting changed
+     * files until none has changed for <code>quietMillis</code>.
+     */
+    private void watch() {
+        Set<Path> changed = new HashSet<Path>();
+        try {
+            while ( true ) {
+                WatchKey key = changed.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll( quietMillis, TimeUnit.MILLISECONDS );
+                if ( key == null ) {
+                    try {
+                        listener.changed( changed );
+                    }
+                    catch ( RuntimeException e ) {
+                        logger.error( "Failed to apply changes to {}", changed, e );
+                    }
+                    changed = new HashSet<Path>();
+                    continue;
+                }
+                Path directory = (Path) key.watchable();
+                for ( WatchEvent<?> event : key.pollEvents() ) {
+                    if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                        synchronized ( this ) {
+                            changed.addAll( files );
+                        }
+                    }
+                    else {
+                        Path file = directory.resolve( (Path) event.context() );
+                        if ( isWatched( file ) ) {
+                            changed.add( file );
+                        }
+                    }
+                }
+                key.reset();
+            }
+        }
+        catch ( InterruptedException | ClosedWatchServiceException e ) {
+            logger.debug( "Stopped watching {}", files );
+        }
+    }
+
+    /**
+     * Watches <code>files</code> in place of those watched so far. The
+     * directories of the files are what is registered, so a file that is
+     * deleted and written again, as many tools replace files, is still seen.
+     *
+     * @param files
+     *            The absolute paths of the files to watch
+     * @throws IOException
+     *             If a directory cannot be watched
+     */
+    synchronized void watch( Collection<Path> files ) throws IOException {
+        this.files.clear();
+        this.files.addAll( files );
+
+        Set<Path> watched = new HashSet<Path>();
+        for ( Path file : files ) {
+            Path directory = file.getParent();
+            watched.add( directory );
+            if ( !directories.containsKey( directory ) ) {
+                directories.put( directory, directory.register( watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE ) );
+            }
+        }
+        for ( Iterator<Map.Entry<Path, WatchKey>> iterator = directories.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            if ( !watched.contains( entry.getKey() ) ) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+    }
+
+    static interface Listener {
+        /**
+         * Called on the watching thread with the files that changed.
+         *
+         * @param files
+         *            The changed files
+         */
+        public void changed( Set<Path> files );
+    }
+}
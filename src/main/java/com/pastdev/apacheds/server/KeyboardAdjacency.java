@@ -0,0 +1,105 @@
+package com.pastdev.apacheds.server;
+
+
+/**
+ * The adjacent keys of the common keyboard layouts, precomputed for every
+ * pair of ASCII characters as a bitset of the layouts on which the keys
+ * that type them are neighbors, horizontally, vertically or diagonally.
+ * The shifted and unshifted characters of a key share its neighbors, and
+ * characters beyond ASCII, such as the accented letters of AZERTY and
+ * QWERTZ, have none. The table is 16k, so a lookup is one array read.
+ */
+final class KeyboardAdjacency {
+    static final int QWERTY = 1;
+    static final int QWERTZ = 1 << 1;
+    static final int AZERTY = 1 << 2;
+    static final int DVORAK = 1 << 3;
+    static final int KEYPAD = 1 << 4;
+    static final int ALL = QWERTY | QWERTZ | AZERTY | DVORAK | KEYPAD;
+
+    // rows of unshifted then shifted keys, offset in quarter keys from the
+    // left of the top row, as staggered on the board
+    private static final int[] STAGGERED_OFFSETS = { 0, 6, 7, 9 };
+    private static final int[] ISO_OFFSETS = { 0, 6, 7, 5 };
+    private static final int[] KEYPAD_OFFSETS = { 0, 0, 0, 0 };
+    private static final int KEY_WIDTH = 4;
+
+    private static final byte[] ADJACENT = new byte[128 * 128];
+
+    static {
+        add( QWERTY, STAGGERED_OFFSETS,
+                "`1234567890-=", "~!@#$%^&*()_+",
+                "qwertyuiop[]\\", "QWERTYUIOP{}|",
+                "asdfghjkl;'", "ASDFGHJKL:\"",
+                "zxcvbnm,./", "ZXCVBNM<>?" );
+        add( QWERTZ, ISO_OFFSETS,
+                "^1234567890ß´", "°!\"§$%&/()=?`",
+                "qwertzuiopü+", "QWERTZUIOPÜ*",
+                "asdfghjklöä#", "ASDFGHJKLÖÄ'",
+                "<yxcvbnm,.-", ">YXCVBNM;:_" );
+        add( AZERTY, ISO_OFFSETS,
+                "²&é\"'(-è_çà)=", "²1234567890°+",
+                "azertyuiop^$", "AZERTYUIOP¨£",
+                "qsdfghjklmù*", "QSDFGHJKLM%µ",
+                "<wxcvbn,;:!", ">WXCVBN?./§" );
+        add( DVORAK, STAGGERED_OFFSETS,
+                "`1234567890[]", "~!@#$%^&*(){}",
+                "',.pyfgcrl/=\\", "\"<>PYFGCRL?+|",
+                "aoeuidhtns-", "AOEUIDHTNS_",
+                ";qjkxbmwvz", ":QJKXBMWVZ" );
+        add( KEYPAD, KEYPAD_OFFSETS,
+                "789", "789",
+                "456", "456",
+                "123", "123",
+                "0", "0" );
+    }
+
+    private KeyboardAdjacency() {}
+
+    /**
+     * Marks the keys of <code>rows</code>, pairs of unshifted and shifted
+     * characters, that are neighbors as adjacent on <code>layout</code>.
+     * Keys of neighboring rows are adjacent when their centers are at most
+     * a key width apart, which on a staggered board is the two keys above
+     * and the two below, and on the keypad grid includes the diagonals.
+     */
+    private static void add( int layout, int[] offsets, String... rows ) {
+        for ( int row = 0; row < rows.length / 2; row++ ) {
+            for ( int column = 0; column < rows[row * 2].length(); column++ ) {
+                for ( int otherRow = row; otherRow < rows.length / 2 && otherRow <= row + 1; otherRow++ ) {
+                    for ( int otherColumn = 0; otherColumn < rows[otherRow * 2].length(); otherColumn++ ) {
+                        int distance = Math.abs( offsets[row] + column * KEY_WIDTH
+                                - offsets[otherRow] - otherColumn * KEY_WIDTH );
+                        boolean adjacent = otherRow == row
+                                ? Math.abs( column - otherColumn ) == 1
+                                : distance <= KEY_WIDTH;
+                        if ( adjacent ) {
+                            link( layout, rows, row, column, otherRow, otherColumn );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the layouts on which <code>a</code> and <code>b</code> are
+     * typed with adjacent keys, 0 if none.
+     */
+    static int adjacent( char a, char b ) {
+        return a < 128 && b < 128 ? ADJACENT[a << 7 | b] : 0;
+    }
+
+    private static void link( int layout, String[] rows, int row, int column, int otherRow, int otherColumn ) {
+        for ( int shift = 0; shift < 2; shift++ ) {
+            char a = rows[row * 2 + shift].charAt( column );
+            for ( int otherShift = 0; otherShift < 2; otherShift++ ) {
+                char b = rows[otherRow * 2 + otherShift].charAt( otherColumn );
+                if ( a < 128 && b < 128 && a != b ) {
+                    ADJACENT[a << 7 | b] |= layout;
+                    ADJACENT[b << 7 | a] |= layout;
+                }
+            }
+        }
+    }
+}
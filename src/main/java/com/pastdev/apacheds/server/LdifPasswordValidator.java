@@ -0,0 +1,266 @@
+package com.pastdev.apacheds.server;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.password.PasswordUtil;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Screens the cleartext <code>userPassword</code> values of an LDIF file
+ * against a {@link PastdevPasswordValidator} before it is imported, so a
+ * large load is not started only to have entries rejected hours into it.
+ * Each password is checked against the username from the <code>mail</code>
+ * of its entry, as {@link PastdevPasswordValidator#validate(String, Entry)}
+ * does. Hashed passwords cannot be checked and are only counted.
+ * <p>
+ * The LDIF is read one entry at a time and validated in parallel with a
+ * {@link BulkPasswordValidator}, so memory stays flat however large the
+ * file. Each rejection is written to the report as a line of
+ * <code>dn</code>, error code and message separated by tabs, in the order
+ * they are found rather than the order of the file.
+ * <p>
+ * Run with
+ * <code>java com.pastdev.apacheds.server.LdifPasswordValidator [--settings &lt;settings&gt;] &lt;ldif&gt; [&lt;report&gt;]</code>;
+ * the settings file is the one the deployment's validator is given with
+ * {@link PastdevPasswordValidator#setSettingsFile(String)}, without it the
+ * default policy applies. The report goes to standard out if no file is
+ * given, and the exit status is 1 if any password is rejected.
+ */
+public class LdifPasswordValidator {
+    private static final Logger logger = LoggerFactory.getLogger( LdifPasswordValidator.class );
+    private static final String PASSWORD_ATTRIBUTE = "userPassword";
+
+    private final BulkPasswordValidator bulkValidator;
+
+    public LdifPasswordValidator( BulkPasswordValidator bulkValidator ) {
+        this.bulkValidator = bulkValidator;
+    }
+
+    public static void main( String[] args ) throws IOException, LdapException {
+        String settingsFile = null;
+        int first = 0;
+        if ( args.length > 1 && "--settings".equals( args[0] ) ) {
+            settingsFile = args[1];
+            first = 2;
+        }
+        if ( args.length - first < 1 || args.length - first > 2 ) {
+            System.err.println( "usage: LdifPasswordValidator [--settings <settings>] <ldif> [<report>]" );
+            System.exit( 2 );
+        }
+
+        Summary summary;
+        try (PastdevPasswordValidator validator = new PastdevPasswordValidator()) {
+            if ( settingsFile != null ) {
+                try {
+                    validator.setSettingsFile( settingsFile );
+                }
+                catch ( IllegalArgumentException | IllegalStateException e ) {
+                    System.err.println( e.getMessage() );
+                    System.exit( 2 );
+                }
+            }
+            try (Reader ldif = Files.newBufferedReader( Paths.get( args[first] ), StandardCharsets.UTF_8 );
+                    Writer report = args.length - first > 1
+                            ? Files.newBufferedWriter( Paths.get( args[first + 1] ), StandardCharsets.UTF_8 )
+                            : new BufferedWriter( new OutputStreamWriter( System.out, StandardCharsets.UTF_8 ) )) {
+                summary = new LdifPasswordValidator( new BulkPasswordValidator( validator ) )
+                        .validate( ldif, report );
+            }
+        }
+        System.err.println( summary );
+        System.exit( summary.getRejected() > 0 ? 1 : 0 );
+    }
+
+    /**
+     * Validates the passwords of the entries in <code>ldif</code>, writing
+     * each rejection to <code>report</code>. Only <code>add</code> records
+     * and plain entries are checked.
+     *
+     * @param ldif
+     *            The LDIF to read
+     * @param report
+     *            Receives a line per rejected password
+     * @return The counts of what was read and rejected
+     * @throws IOException
+     *             If the report cannot be written
+     * @throws LdapException
+     *             If the LDIF cannot be parsed
+     */
+    public Summary validate( Reader ldif, final Writer report ) throws IOException, LdapException {
+        final Summary summary = new Summary();
+        final IOException[] reportError = new IOException[1];
+        LdifReader reader = new LdifReader( ldif instanceof BufferedReader ? ldif : new BufferedReader( ldif ) );
+        CandidateIterator candidates = new CandidateIterator( reader, summary );
+        try {
+            bulkValidator.validate( candidates, new PasswordValidationListener() {
+                @Override
+                public void validated( PasswordValidationResult result ) {
+                    summary.passwords.incrementAndGet();
+                    if ( result.isValid() ) {
+                        return;
+                    }
+                    summary.rejected.incrementAndGet();
+                    String line = result.getCandidate().getUser().getDn() + "\t" + result.getErrorCode() + "\t"
+                            + result.getMessage() + "\n";
+                    synchronized ( report ) {
+                        if ( reportError[0] != null ) {
+                            return;
+                        }
+                        try {
+                            report.write( line );
+                        }
+                        catch ( IOException e ) {
+                            reportError[0] = e;
+                        }
+                    }
+                }
+            } );
+        }
+        finally {
+            reader.close();
+        }
+
+        if ( candidates.error != null ) {
+            throw new LdapException( "unable to parse ldif at line " + reader.getLineNumber(), candidates.error );
+        }
+        synchronized ( report ) {
+            if ( reportError[0] != null ) {
+                throw reportError[0];
+            }
+            report.flush();
+        }
+        logger.debug( "validated {}", summary );
+        return summary;
+    }
+
+    /**
+     * Flattens the entries of an LDIF into a candidate per cleartext
+     * password, reading the next entry only when the ones before it are
+     * used up.
+     */
+    private static final class CandidateIterator implements Iterator<PasswordCandidate> {
+        private final Deque<PasswordCandidate> pending = new ArrayDeque<PasswordCandidate>();
+        private final LdifReader reader;
+        private final Summary summary;
+        private RuntimeException error;
+
+        private CandidateIterator( LdifReader reader, Summary summary ) {
+            this.reader = reader;
+            this.summary = summary;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ( pending.isEmpty() && error == null && reader.hasNext() ) {
+                LdifEntry ldifEntry;
+                try {
+                    ldifEntry = reader.next();
+                }
+                catch ( NoSuchElementException e ) {
+                    // how the reader reports an entry it cannot parse
+                    error = e;
+                    break;
+                }
+                summary.entries.incrementAndGet();
+                if ( ldifEntry.isLdifContent() || ldifEntry.isChangeAdd() ) {
+                    read( ldifEntry.getEntry() );
+                }
+            }
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public PasswordCandidate next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            return pending.removeFirst();
+        }
+
+        private void read( Entry entry ) {
+            Attribute passwords = entry.get( PASSWORD_ATTRIBUTE );
+            if ( passwords == null ) {
+                return;
+            }
+            for ( Value<?> value : passwords ) {
+                byte[] bytes = value.getBytes();
+                if ( bytes == null || PasswordUtil.findAlgorithm( bytes ) != null ) {
+                    summary.hashed.incrementAndGet();
+                    continue;
+                }
+                pending.addLast( new PasswordCandidate( Strings.utf8ToString( bytes ), entry ) );
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The counts from screening an LDIF.
+     */
+    public static final class Summary {
+        private final AtomicLong entries = new AtomicLong();
+        private final AtomicLong hashed = new AtomicLong();
+        private final AtomicLong passwords = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        public long getEntries() {
+            return entries.get();
+        }
+
+        /**
+         * Returns the number of hashed passwords, which were not checked.
+         *
+         * @return The hashed password count
+         */
+        public long getHashed() {
+            return hashed.get();
+        }
+
+        /**
+         * Returns the number of cleartext passwords checked.
+         *
+         * @return The checked password count
+         */
+        public long getPasswords() {
+            return passwords.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        @Override
+        public String toString() {
+            return "{Summary:{entries:" + entries + ",passwords:" + passwords + ",rejected:" + rejected
+                    + ",hashed:" + hashed + "}}";
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.List;
+
+
+import com.pastdev.apacheds.server.metrics.RuleMetrics;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Counts and samples the latency of the checks of another rule. Only
+ * {@link #accepts(CharSequence, CharSequence)} is measured, the details of
+ * a rejection being built after the outcome is known.
+ */
+final class MeasuredRule extends PastdevRule {
+    private final RuleMetrics metrics;
+    private final PastdevRule rule;
+
+    MeasuredRule( PastdevRule rule, RuleMetrics metrics ) {
+        this.rule = rule;
+        this.metrics = metrics;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        long start = metrics.start();
+        boolean accepted = rule.accepts( password, username );
+        metrics.record( start, accepted );
+        return accepted;
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        rule.addDetails( password, username, details );
+    }
+
+    @Override
+    RuleResultDetail getReportedDetail( CharSequence password, CharSequence username ) {
+        return rule.getReportedDetail( password, username );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::rule=%s", getClass().getName(), hashCode(), rule );
+    }
+}
@@ -0,0 +1,129 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+
+import edu.vt.middleware.password.MessageResolver;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Resolves the message for a {@link RuleResultDetail} as a
+ * {@link MessageResolver} over the same properties would, but with each
+ * template parsed once rather than by {@link String#format(String, Object...)}
+ * on every rejection. Templates that use anything beyond <code>%s</code>,
+ * <code>%n$s</code>, <code>%%</code> and <code>%n</code> are left to
+ * {@link String#format(String, Object...)}.
+ */
+final class MessageTemplates {
+    private final Map<String, Template> templates;
+
+    MessageTemplates( Properties messages ) {
+        templates = new HashMap<String, Template>();
+        for ( String errorCode : messages.stringPropertyNames() ) {
+            templates.put( errorCode, Template.compile( messages.getProperty( errorCode ) ) );
+        }
+    }
+
+    String resolve( RuleResultDetail detail ) {
+        Template template = templates.get( detail.getErrorCode() );
+        if ( template != null ) {
+            return template.render( detail.getValues() );
+        }
+        else if ( !detail.getParameters().isEmpty() ) {
+            return detail.getErrorCode() + ":" + detail.getParameters();
+        }
+        return detail.getErrorCode();
+    }
+
+    private static final class Template {
+        private final int[] arguments;
+        private final String format;
+        private final String[] literals;
+
+        private Template( String format, String[] literals, int[] arguments ) {
+            this.format = format;
+            this.literals = literals;
+            this.arguments = arguments;
+        }
+
+        /**
+         * Splits <code>format</code> into literals and the zero based indexes
+         * of the arguments between them; <code>literals</code> has one more
+         * element than <code>arguments</code>.
+         */
+        private static Template compile( String format ) {
+            StringBuilder literal = new StringBuilder();
+            List<String> literals = new ArrayList<String>();
+            List<Integer> arguments = new ArrayList<Integer>();
+            int ordinaryIndex = 0;
+            int length = format.length();
+            for ( int i = 0; i < length; i++ ) {
+                char c = format.charAt( i );
+                if ( c != '%' ) {
+                    literal.append( c );
+                    continue;
+                }
+
+                int end = i + 1;
+                while ( end < length && Character.isDigit( format.charAt( end ) ) ) {
+                    end++;
+                }
+                if ( end == i + 1 && end < length && format.charAt( end ) == '%' ) {
+                    literal.append( '%' );
+                }
+                else if ( end == i + 1 && end < length && format.charAt( end ) == 'n' ) {
+                    literal.append( System.getProperty( "line.separator" ) );
+                }
+                else if ( end == i + 1 && end < length && format.charAt( end ) == 's' ) {
+                    literals.add( literal.toString() );
+                    literal.setLength( 0 );
+                    arguments.add( ordinaryIndex++ );
+                }
+                else if ( end > i + 1 && end + 1 < length && format.charAt( end ) == '$'
+                        && format.charAt( end + 1 ) == 's' ) {
+                    int index = Integer.parseInt( format.substring( i + 1, end ) ) - 1;
+                    if ( index < 0 ) {
+                        return new Template( format, null, null );
+                    }
+                    literals.add( literal.toString() );
+                    literal.setLength( 0 );
+                    arguments.add( index );
+                    end++;
+                }
+                else {
+                    // flags, widths and other conversions are left to String.format
+                    return new Template( format, null, null );
+                }
+                i = end;
+            }
+            literals.add( literal.toString() );
+
+            int[] argumentIndexes = new int[arguments.size()];
+            for ( int i = 0; i < argumentIndexes.length; i++ ) {
+                argumentIndexes[i] = arguments.get( i );
+            }
+            return new Template( format, literals.toArray( new String[literals.size()] ), argumentIndexes );
+        }
+
+        private String render( Object[] values ) {
+            if ( literals == null ) {
+                return String.format( format, values );
+            }
+            StringBuilder message = new StringBuilder( format.length() + 32 );
+            for ( int i = 0; i < arguments.length; i++ ) {
+                if ( arguments[i] >= values.length ) {
+                    // let String.format report the missing argument
+                    return String.format( format, values );
+                }
+                message.append( literals[i] ).append( String.valueOf( values[arguments[i]] ) );
+            }
+            return message.append( literals[arguments.length] ).toString();
+        }
+    }
+}
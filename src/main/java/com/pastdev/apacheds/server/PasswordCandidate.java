@@ -0,0 +1,70 @@
+package com.pastdev.apacheds.server;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+
+/**
+ * A password to validate in bulk with a {@link BulkPasswordValidator}, with
+ * either the username to check it against or the user entry to take the
+ * username from, as {@link PastdevPasswordValidator#validate(String, Entry)}
+ * does.
+ */
+public final class PasswordCandidate {
+    private final CharSequence password;
+    private final Entry user;
+    private final CharSequence username;
+
+    /**
+     * Creates a candidate checked against <code>username</code>.
+     *
+     * @param password
+     *            The password
+     * @param username
+     *            The username, or null to skip the username rule
+     */
+    public PasswordCandidate( CharSequence password, CharSequence username ) {
+        this.password = password;
+        this.username = username;
+        this.user = null;
+    }
+
+    /**
+     * Creates a candidate checked against the username of <code>user</code>,
+     * the local part of its <code>mail</code>.
+     *
+     * @param password
+     *            The password
+     * @param user
+     *            The user entry
+     */
+    public PasswordCandidate( CharSequence password, Entry user ) {
+        this.password = password;
+        this.username = null;
+        this.user = user;
+    }
+
+    public CharSequence getPassword() {
+        return password;
+    }
+
+    /**
+     * Returns the user entry, or null if the candidate was created with a
+     * username.
+     *
+     * @return The user entry
+     */
+    public Entry getUser() {
+        return user;
+    }
+
+    /**
+     * Returns the username, or null if the candidate was created with a user
+     * entry.
+     *
+     * @return The username
+     */
+    public CharSequence getUsername() {
+        return username;
+    }
+}
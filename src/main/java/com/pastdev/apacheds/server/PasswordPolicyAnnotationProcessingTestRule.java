@@ -1,9 +1,13 @@
 package com.pastdev.apacheds.server;
 
 
+import java.io.Closeable;
+
+
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyConfiguration;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordValidator;
 import org.apache.directory.server.core.authn.AuthenticationInterceptor;
 import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
 import org.junit.rules.TestRule;
@@ -35,7 +39,8 @@ public class PasswordPolicyAnnotationProcessingTestRule implements TestRule {
                     PpolicyConfigContainer originalPolicyContainer = authenticationInterceptor.getPwdPolicyContainer();
 
                     logger.trace( "setting password policy from method annotation" );
-                    authenticationInterceptor.setPwdPolicies( getPolicyContainer( applyPasswordPolicy ) );
+                    PpolicyConfigContainer policyContainer = getPolicyContainer( applyPasswordPolicy );
+                    authenticationInterceptor.setPwdPolicies( policyContainer );
 
                     try {
                         base.evaluate();
@@ -43,6 +48,11 @@ public class PasswordPolicyAnnotationProcessingTestRule implements TestRule {
                     finally {
                         logger.trace( "restoring original password policy" );
                         authenticationInterceptor.setPwdPolicies( originalPolicyContainer );
+                        // let go of what the validator shares, its dictionary
+                        PasswordValidator validator = policyContainer.getDefaultPolicy().getPwdValidator();
+                        if ( validator instanceof Closeable ) {
+                            ((Closeable) validator).close();
+                        }
                     }
                 }
             };
@@ -0,0 +1,11 @@
+package com.pastdev.apacheds.server;
+
+
+/**
+ * Receives the results of a {@link BulkPasswordValidator} as they are
+ * produced. Results arrive from several threads at once and in no particular
+ * order, so implementations must be thread safe.
+ */
+public interface PasswordValidationListener {
+    public void validated( PasswordValidationResult result );
+}
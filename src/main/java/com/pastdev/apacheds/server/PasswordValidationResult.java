@@ -0,0 +1,70 @@
+package com.pastdev.apacheds.server;
+
+
+/**
+ * The outcome of validating one {@link PasswordCandidate} with a
+ * {@link BulkPasswordValidator}.
+ */
+public final class PasswordValidationResult {
+    /**
+     * The error code of a candidate whose user entry has no usable
+     * <code>mail</code> to take the username from.
+     */
+    public static final String ERROR_CODE_USER = "INVALID_USER";
+
+    private final PasswordCandidate candidate;
+    private final String errorCode;
+    private final int index;
+    private final String message;
+
+    PasswordValidationResult( int index, PasswordCandidate candidate, String errorCode, String message ) {
+        this.index = index;
+        this.candidate = candidate;
+        this.errorCode = errorCode;
+        this.message = message;
+    }
+
+    public PasswordCandidate getCandidate() {
+        return candidate;
+    }
+
+    /**
+     * Returns the error code of the reported rule detail, such as
+     * <code>ILLEGAL_USERNAME</code>, {@link #ERROR_CODE_USER}, or null if the
+     * password is valid.
+     *
+     * @return The error code
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Returns the position of the candidate in the batch, counting from 0.
+     *
+     * @return The index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the message {@link PastdevPasswordValidator#validate(String,
+     * org.apache.directory.api.ldap.model.entry.Entry)} would have thrown, or
+     * null if the password is valid.
+     *
+     * @return The message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isValid() {
+        return errorCode == null;
+    }
+
+    @Override
+    public String toString() {
+        return "{PasswordValidationResult:{index:" + index + ",errorCode:" + errorCode + ",message:" + message + "}}";
+    }
+}
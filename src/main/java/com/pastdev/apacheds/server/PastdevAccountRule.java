@@ -0,0 +1,367 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Rejects passwords that contain account information: the values of the
+ * identity attributes of the user entry, such as <code>uid</code>,
+ * <code>cn</code> and <code>mail</code>, and the words within them. The
+ * tokens of the entry are built into an <a
+ * href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm"
+ * >Aho-Corasick</a> automaton, forwards and reversed, in flat arrays that each
+ * thread reuses from one validation to the next, and the password is scanned
+ * once, so the scan costs the same however many attributes are checked.
+ * Absent attributes contribute no tokens. As with the dictionary, the
+ * shortest token found is the one reported.
+ * <p>
+ * Unlike the other rules, this needs the user entry rather than a username,
+ * so it is not a {@link PastdevRule}. It takes the place of the
+ * {@link PastdevUsernameRule} when it is enabled, the local part of
+ * <code>mail</code> being one of its tokens.
+ */
+final class PastdevAccountRule {
+    static final String ERROR_CODE = "ILLEGAL_ACCOUNT_INFO";
+    static final String ERROR_CODE_REVERSED = "ILLEGAL_ACCOUNT_INFO_REVERSED";
+    private static final long NOT_FOUND = -1;
+    private static final int ROOT = 0;
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final String[] attributes;
+    private final boolean ignoreCase;
+    private final boolean matchBackwards;
+    private final int minimumTokenLength;
+
+    PastdevAccountRule( String[] attributes, int minimumTokenLength, boolean matchBackwards, boolean ignoreCase ) {
+        if ( attributes.length > 0xffff ) {
+            throw new IllegalArgumentException( "too many attributes" );
+        }
+        this.attributes = attributes.clone();
+        this.minimumTokenLength = minimumTokenLength;
+        this.matchBackwards = matchBackwards;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Returns true if <code>password</code> contains no token of
+     * <code>user</code>. The automaton is built in the calling thread's
+     * arrays, so this creates nothing but the iterators over the entry's
+     * values.
+     */
+    boolean accepts( CharSequence password, Entry user ) {
+        Scratch scratch = SCRATCH.get();
+        build( user, scratch );
+        scan( password, scratch, true );
+        return scratch.forward == NOT_FOUND && scratch.reversed == NOT_FOUND;
+    }
+
+    /**
+     * Adds the token <code>text</code> from <code>start</code> to
+     * <code>end</code>, and the token reversed, to the automaton in
+     * <code>scratch</code>. A token already added keeps its attribute, so it
+     * is reported as that of the first attribute it is found in.
+     */
+    private void add( Scratch scratch, String text, int start, int end, int attribute ) {
+        int length = end - start;
+        if ( length < minimumTokenLength ) {
+            return;
+        }
+        scratch.ensureCapacity( matchBackwards ? length * 2 : length );
+        int state = ROOT;
+        for ( int i = start; i < end; i++ ) {
+            state = scratch.addChild( state, fold( text.charAt( i ) ) );
+        }
+        if ( scratch.forwardLengths[state] == 0 ) {
+            scratch.forwardLengths[state] = length;
+            scratch.forwardAttributes[state] = attribute;
+        }
+        if ( matchBackwards ) {
+            state = ROOT;
+            for ( int i = end - 1; i >= start; i-- ) {
+                state = scratch.addChild( state, fold( text.charAt( i ) ) );
+            }
+            if ( scratch.reversedLengths[state] == 0 ) {
+                scratch.reversedLengths[state] = length;
+                scratch.reversedAttributes[state] = attribute;
+            }
+        }
+    }
+
+    void addDetails( CharSequence password, Entry user, List<RuleResultDetail> details ) {
+        Scratch scratch = SCRATCH.get();
+        build( user, scratch );
+        scan( password, scratch, false );
+        if ( scratch.forward != NOT_FOUND ) {
+            details.add( new RuleResultDetail( ERROR_CODE,
+                    createRuleResultDetailParameters( password, scratch.forward, false ) ) );
+        }
+        if ( scratch.reversed != NOT_FOUND ) {
+            details.add( new RuleResultDetail( ERROR_CODE_REVERSED,
+                    createRuleResultDetailParameters( password, scratch.reversed, true ) ) );
+        }
+    }
+
+    /**
+     * Builds the automaton of the tokens of <code>user</code> into
+     * <code>scratch</code>, in place of the previous one.
+     */
+    private void build( Entry user, Scratch scratch ) {
+        scratch.clear();
+        for ( int index = 0; index < attributes.length; index++ ) {
+            Attribute attribute = user.get( attributes[index] );
+            if ( attribute == null ) {
+                continue;
+            }
+            boolean mail = "mail".equalsIgnoreCase( attributes[index] );
+            for ( Value<?> value : attribute ) {
+                if ( !value.isHumanReadable() || value.getString() == null ) {
+                    continue;
+                }
+                String text = value.getString();
+                int end = mail && text.indexOf( '@' ) >= 0 ? text.indexOf( '@' ) : text.length();
+
+                // the whole value, trimmed as String.trim() does
+                int start = 0;
+                int trimmedEnd = end;
+                while ( start < trimmedEnd && text.charAt( start ) <= ' ' ) {
+                    start++;
+                }
+                while ( trimmedEnd > start && text.charAt( trimmedEnd - 1 ) <= ' ' ) {
+                    trimmedEnd--;
+                }
+                add( scratch, text, start, trimmedEnd, index );
+
+                // and the runs of letters and digits within it
+                start = -1;
+                for ( int i = 0; i <= end; i++ ) {
+                    boolean wordCharacter = i < end && Character.isLetterOrDigit( text.charAt( i ) );
+                    if ( wordCharacter && start < 0 ) {
+                        start = i;
+                    }
+                    else if ( !wordCharacter && start >= 0 ) {
+                        add( scratch, text, start, i, index );
+                        start = -1;
+                    }
+                }
+            }
+        }
+        scratch.link();
+    }
+
+    private Map<String, ?> createRuleResultDetailParameters( CharSequence password, long found, boolean reversed ) {
+        int start = start( found );
+        char[] token = new char[length( found )];
+        for ( int i = 0; i < token.length; i++ ) {
+            token[i] = fold( password.charAt( reversed ? start + token.length - 1 - i : start + i ) );
+        }
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "accountInformation", new String( token ) );
+        parameters.put( "attribute", attributes[attribute( found )] );
+        return parameters;
+    }
+
+    private static int attribute( long found ) {
+        return (int) (found >>> 48);
+    }
+
+    private char fold( char c ) {
+        return ignoreCase ? Character.toLowerCase( Character.toUpperCase( c ) ) : c;
+    }
+
+    private static int length( long found ) {
+        return (int) (found & 0xffffff);
+    }
+
+    private static long pack( int start, int length, int attribute ) {
+        return ((long) attribute << 48) | ((long) (start & 0xffffff) << 24) | (length & 0xffffff);
+    }
+
+    /**
+     * Scans <code>password</code> once with the automaton in
+     * <code>scratch</code>, leaving there the token found, packed as by
+     * {@link #pack(int, int, int)}, or {@link #NOT_FOUND}: any token if
+     * <code>first</code>, otherwise the shortest, the leftmost of those in
+     * the password as it is read, reversed tokens being read from the right.
+     */
+    private void scan( CharSequence password, Scratch scratch, boolean first ) {
+        long forward = NOT_FOUND;
+        long reversed = NOT_FOUND;
+        int length = password.length();
+        int state = ROOT;
+        for ( int i = 0; i < length; i++ ) {
+            state = scratch.next( state, fold( password.charAt( i ) ) );
+
+            // the shortest token ending here, the first one found wins a tie
+            int tokenLength = scratch.forwardLengths[state];
+            if ( tokenLength != 0 && (forward == NOT_FOUND || tokenLength < length( forward )) ) {
+                forward = pack( i - tokenLength + 1, tokenLength, scratch.forwardAttributes[state] );
+            }
+
+            // read backwards, the last one found wins a tie
+            tokenLength = scratch.reversedLengths[state];
+            if ( tokenLength != 0 && (reversed == NOT_FOUND || tokenLength <= length( reversed )) ) {
+                reversed = pack( i - tokenLength + 1, tokenLength, scratch.reversedAttributes[state] );
+            }
+            if ( first && (forward != NOT_FOUND || reversed != NOT_FOUND) ) {
+                break;
+            }
+        }
+        scratch.forward = forward;
+        scratch.reversed = reversed;
+    }
+
+    private static int start( long found ) {
+        return (int) ((found >>> 24) & 0xffffff);
+    }
+
+    RuleResultDetail getReportedDetail( CharSequence password, Entry user ) {
+        List<RuleResultDetail> details = new ArrayList<RuleResultDetail>( 2 );
+        addDetails( password, user, details );
+        return PastdevRule.select( details );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::attributes=%s,ignoreCase=%s,matchBackwards=%s,minimumTokenLength=%s",
+                getClass().getName(), hashCode(), Arrays.toString( attributes ), ignoreCase,
+                matchBackwards, minimumTokenLength );
+    }
+
+    /**
+     * The automaton of the tokens of one entry, rebuilt in place for each
+     * validation. A state's children are a list linked through their
+     * siblings, as an entry has a handful of tokens, and each state records
+     * the shortest token, forward and reversed, ending there or at any of
+     * its suffixes, and its attribute.
+     */
+    private static final class Scratch {
+        private int[] failures = new int[0];
+        private int[] firstChildren = new int[0];
+        private int[] forwardAttributes = new int[0];
+        private int[] forwardLengths = new int[0];
+        private char[] labels = new char[0];
+        private int[] nextSiblings = new int[0];
+        private int[] queue = new int[0];
+        private int[] reversedAttributes = new int[0];
+        private int[] reversedLengths = new int[0];
+        private int stateCount;
+
+        private long forward;
+        private long reversed;
+
+        private Scratch() {
+            allocate( 256 );
+        }
+
+        private int addChild( int state, char c ) {
+            int child = child( state, c );
+            if ( child >= 0 ) {
+                return child;
+            }
+            child = stateCount++;
+            labels[child] = c;
+            firstChildren[child] = -1;
+            nextSiblings[child] = firstChildren[state];
+            firstChildren[state] = child;
+            forwardLengths[child] = 0;
+            reversedLengths[child] = 0;
+            return child;
+        }
+
+        private void allocate( int capacity ) {
+            // failures and the queue are only filled once every token is in
+            failures = new int[capacity];
+            firstChildren = Arrays.copyOf( firstChildren, capacity );
+            forwardAttributes = Arrays.copyOf( forwardAttributes, capacity );
+            forwardLengths = Arrays.copyOf( forwardLengths, capacity );
+            labels = Arrays.copyOf( labels, capacity );
+            nextSiblings = Arrays.copyOf( nextSiblings, capacity );
+            queue = new int[capacity];
+            reversedAttributes = Arrays.copyOf( reversedAttributes, capacity );
+            reversedLengths = Arrays.copyOf( reversedLengths, capacity );
+        }
+
+        private int child( int state, char c ) {
+            for ( int child = firstChildren[state]; child >= 0; child = nextSiblings[child] ) {
+                if ( labels[child] == c ) {
+                    return child;
+                }
+            }
+            return -1;
+        }
+
+        private void clear() {
+            stateCount = 1;
+            firstChildren[ROOT] = -1;
+            forwardLengths[ROOT] = 0;
+            reversedLengths[ROOT] = 0;
+        }
+
+        private void ensureCapacity( int states ) {
+            if ( stateCount + states > labels.length ) {
+                allocate( Math.max( labels.length * 2, stateCount + states ) );
+            }
+        }
+
+        /**
+         * Sets the failure of every state, and carries the shortest tokens
+         * of each state's failure into it, breadth first so that the
+         * failures are complete before they are followed.
+         */
+        private void link() {
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = ROOT;
+            failures[ROOT] = ROOT;
+            while ( head < tail ) {
+                int state = queue[head++];
+                for ( int child = firstChildren[state]; child >= 0; child = nextSiblings[child] ) {
+                    int failure = state == ROOT ? ROOT : next( failures[state], labels[child] );
+                    failures[child] = failure;
+                    // a suffix is always shorter than the token itself
+                    if ( forwardLengths[failure] != 0 ) {
+                        forwardLengths[child] = forwardLengths[failure];
+                        forwardAttributes[child] = forwardAttributes[failure];
+                    }
+                    if ( reversedLengths[failure] != 0 ) {
+                        reversedLengths[child] = reversedLengths[failure];
+                        reversedAttributes[child] = reversedAttributes[failure];
+                    }
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        private int next( int state, char c ) {
+            while ( true ) {
+                int child = child( state, c );
+                if ( child >= 0 ) {
+                    return child;
+                }
+                if ( state == ROOT ) {
+                    return ROOT;
+                }
+                state = failures[state];
+            }
+        }
+    }
+}
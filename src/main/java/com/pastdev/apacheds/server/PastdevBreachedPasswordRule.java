@@ -0,0 +1,52 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.Collections;
+import java.util.List;
+
+
+import com.pastdev.apacheds.server.dictionary.BreachedPasswordCorpus;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Rejects passwords that are in a {@link BreachedPasswordCorpus}, the whole
+ * password rather than any word within it. The lookup hashes the password
+ * into reused buffers and reads a few pages of the mapped corpus, so it
+ * creates no objects.
+ */
+final class PastdevBreachedPasswordRule extends PastdevRule {
+    static final String ERROR_CODE = "BREACHED_PASSWORD";
+
+    private final BreachedPasswordCorpus corpus;
+
+    PastdevBreachedPasswordRule( BreachedPasswordCorpus corpus ) {
+        this.corpus = corpus;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        return !corpus.contains( password );
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        if ( corpus.contains( password ) ) {
+            details.add( new RuleResultDetail( ERROR_CODE, Collections.<String, Object> emptyMap() ) );
+        }
+    }
+
+    @Override
+    RuleResultDetail getReportedDetail( CharSequence password, CharSequence username ) {
+        return corpus.contains( password )
+                ? new RuleResultDetail( ERROR_CODE, Collections.<String, Object> emptyMap() )
+                : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::corpus=%s", getClass().getName(), hashCode(), corpus );
+    }
+}
@@ -0,0 +1,170 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import edu.vt.middleware.password.AbstractCharacterRule;
+import edu.vt.middleware.password.CharacterCharacteristicsRule;
+import edu.vt.middleware.password.IllegalCharacterRule;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Replaces a {@link CharacterCharacteristicsRule} of uppercase, lowercase,
+ * digit and non-alphanumeric rules followed by an
+ * {@link IllegalCharacterRule}, classifying the password once with a
+ * {@link CharacterClassifier} instead of once per rule. The details, their
+ * order and their parameters are the same as the rules it replaces.
+ */
+final class PastdevCharacterRule extends PastdevRule {
+    private static final String[] CHARACTER_TYPES = { "uppercase", "lowercase", "digit", "non-alphanumeric" };
+    private static final String CHARACTER_SETS = "uppercase, lowercase, digit, non-alphanumeric";
+
+    private final CharacterClassifier classifier;
+    private final int minimumCharacterTypes;
+    private final int[] minimums;
+    private final String[] validCharacters;
+
+    PastdevCharacterRule( int minimumUpper, int minimumLower, int minimumDigits, int minimumSpecial,
+            int minimumCharacterTypes, String allowedSpecials, String illegalSpecials ) {
+        this.minimums = new int[] { minimumUpper, minimumLower, minimumDigits, minimumSpecial };
+        for ( int minimum : minimums ) {
+            if ( minimum <= 0 ) {
+                throw new IllegalArgumentException( "argument must be greater than zero" );
+            }
+        }
+        if ( minimumCharacterTypes <= 0 ) {
+            throw new IllegalArgumentException( "argument must be greater than zero" );
+        }
+        if ( minimumCharacterTypes > CharacterClassifier.CLASS_COUNT ) {
+            throw new IllegalStateException( "Number of characteristics must be <= to the number of rules" );
+        }
+        this.minimumCharacterTypes = minimumCharacterTypes;
+        this.validCharacters = new String[] {
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+                "abcdefghijklmnopqrstuvwxyz",
+                "0123456789",
+                allowedSpecials };
+        this.classifier = new CharacterClassifier( illegalSpecials );
+    }
+
+    private Map<String, ?> createCharacteristicsParameters( int successCount ) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "successCount", successCount );
+        parameters.put( "minimumRequired", minimumCharacterTypes );
+        parameters.put( "ruleCount", CharacterClassifier.CLASS_COUNT );
+        parameters.put( "characterSets", CHARACTER_SETS );
+        return parameters;
+    }
+
+    private Map<String, ?> createCharacterParameters( int characterClass, int count ) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "minimumRequired", minimums[characterClass] );
+        parameters.put( "characterType", CHARACTER_TYPES[characterClass] );
+        parameters.put( "validCharacterCount", count );
+        parameters.put( "validCharacters", validCharacters[characterClass] );
+        return parameters;
+    }
+
+    private Map<String, ?> createIllegalCharacterParameters( char illegalCharacter ) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "illegalCharacter", illegalCharacter );
+        return parameters;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        int upper = 0;
+        int lower = 0;
+        int digits = 0;
+        int special = 0;
+        for ( int i = 0, length = password.length(); i < length; i++ ) {
+            char c = password.charAt( i );
+            if ( classifier.getIllegalIndex( c ) >= 0 ) {
+                return false;
+            }
+            switch ( classifier.getCharacterClass( c ) ) {
+                case CharacterClassifier.UPPERCASE:
+                    upper++;
+                    break;
+                case CharacterClassifier.LOWERCASE:
+                    lower++;
+                    break;
+                case CharacterClassifier.DIGIT:
+                    digits++;
+                    break;
+                case CharacterClassifier.NON_ALPHANUMERIC:
+                    special++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        int successCount = (upper >= minimums[CharacterClassifier.UPPERCASE] ? 1 : 0)
+                + (lower >= minimums[CharacterClassifier.LOWERCASE] ? 1 : 0)
+                + (digits >= minimums[CharacterClassifier.DIGIT] ? 1 : 0)
+                + (special >= minimums[CharacterClassifier.NON_ALPHANUMERIC] ? 1 : 0);
+        return successCount >= minimumCharacterTypes;
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        int[] counts = new int[CharacterClassifier.CLASS_COUNT];
+        int illegalIndex = classifier.classify( password, counts );
+
+        int successCount = 0;
+        for ( int characterClass = 0; characterClass < counts.length; characterClass++ ) {
+            if ( counts[characterClass] >= minimums[characterClass] ) {
+                successCount++;
+            }
+        }
+        if ( successCount < minimumCharacterTypes ) {
+            for ( int characterClass = 0; characterClass < counts.length; characterClass++ ) {
+                if ( counts[characterClass] < minimums[characterClass] ) {
+                    details.add( new RuleResultDetail( AbstractCharacterRule.ERROR_CODE,
+                            createCharacterParameters( characterClass, counts[characterClass] ) ) );
+                }
+            }
+            details.add( new RuleResultDetail( CharacterCharacteristicsRule.ERROR_CODE,
+                    createCharacteristicsParameters( successCount ) ) );
+        }
+        if ( illegalIndex >= 0 ) {
+            details.add( new RuleResultDetail( IllegalCharacterRule.ERROR_CODE,
+                    createIllegalCharacterParameters( classifier.getIllegalCharacter( illegalIndex ) ) ) );
+        }
+    }
+
+    @Override
+    RuleResultDetail getReportedDetail( CharSequence password, CharSequence username ) {
+        // the characteristics detail outranks the illegal character, so the
+        // character details it summarizes are never needed
+        int[] counts = new int[CharacterClassifier.CLASS_COUNT];
+        int illegalIndex = classifier.classify( password, counts );
+        int successCount = 0;
+        for ( int characterClass = 0; characterClass < counts.length; characterClass++ ) {
+            if ( counts[characterClass] >= minimums[characterClass] ) {
+                successCount++;
+            }
+        }
+        if ( successCount < minimumCharacterTypes ) {
+            return new RuleResultDetail( CharacterCharacteristicsRule.ERROR_CODE,
+                    createCharacteristicsParameters( successCount ) );
+        }
+        if ( illegalIndex >= 0 ) {
+            return new RuleResultDetail( IllegalCharacterRule.ERROR_CODE,
+                    createIllegalCharacterParameters( classifier.getIllegalCharacter( illegalIndex ) ) );
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::minimums=%s,numberOfCharacteristics=%s,illegalChar=%s",
+                getClass().getName(), hashCode(), Arrays.toString( minimums ),
+                minimumCharacterTypes, Arrays.toString( classifier.getIllegalCharacters() ) );
+    }
+}
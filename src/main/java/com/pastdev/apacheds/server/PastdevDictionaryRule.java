@@ -0,0 +1,64 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import com.pastdev.apacheds.server.dictionary.WordMatch;
+import com.pastdev.apacheds.server.dictionary.WordMatcher;
+
+
+import edu.vt.middleware.password.AbstractDictionaryRule;
+import edu.vt.middleware.password.DictionarySubstringRule;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Replaces a {@link DictionarySubstringRule}, finding embedded and reversed
+ * dictionary words with a {@link WordMatcher}, typically one scan of a
+ * {@link com.pastdev.apacheds.server.dictionary.DictionaryAutomaton} rather
+ * than a dictionary search for every substring. The details are the same as
+ * the rule it replaces.
+ */
+final class PastdevDictionaryRule extends PastdevRule {
+    private final WordMatcher matcher;
+
+    PastdevDictionaryRule( WordMatcher matcher ) {
+        this.matcher = matcher;
+    }
+
+    private Map<String, ?> createRuleResultDetailParameters( String word ) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "matchingWord", word );
+        return parameters;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        // matchers only create a match when they find a word
+        return matcher.search( password ) == null;
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        WordMatch match = matcher.search( password );
+        if ( match == null ) {
+            return;
+        }
+        if ( match.getWord() != null ) {
+            details.add( new RuleResultDetail( AbstractDictionaryRule.ERROR_CODE,
+                    createRuleResultDetailParameters( match.getWord() ) ) );
+        }
+        if ( match.getReversedWord() != null ) {
+            details.add( new RuleResultDetail( AbstractDictionaryRule.ERROR_CODE_REVERSED,
+                    createRuleResultDetailParameters( match.getReversedWord() ) ) );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::matcher=%s", getClass().getName(), hashCode(), matcher );
+    }
+}
@@ -1,17 +1,25 @@
 package com.pastdev.apacheds.server;
 
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 import org.apache.directory.api.ldap.extras.controls.ppolicy.PasswordPolicyErrorEnum;
+import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
@@ -20,53 +28,197 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-import edu.vt.middleware.dictionary.ArrayWordList;
-import edu.vt.middleware.dictionary.WordListDictionary;
-import edu.vt.middleware.dictionary.WordLists;
-import edu.vt.middleware.dictionary.sort.ArraysSort;
-import edu.vt.middleware.password.CharacterCharacteristicsRule;
-import edu.vt.middleware.password.CharacterRule;
-import edu.vt.middleware.password.DictionarySubstringRule;
-import edu.vt.middleware.password.DigitCharacterRule;
-import edu.vt.middleware.password.IllegalCharacterRule;
-import edu.vt.middleware.password.LowercaseCharacterRule;
+import com.pastdev.apacheds.server.dictionary.BinaryDictionary;
+import com.pastdev.apacheds.server.dictionary.BloomFilter;
+import com.pastdev.apacheds.server.dictionary.BreachedPasswordCorpus;
+import com.pastdev.apacheds.server.dictionary.DictionaryRegistry;
+import com.pastdev.apacheds.server.dictionary.FrequencyTable;
+import com.pastdev.apacheds.server.metrics.PasswordPolicyMetrics;
+import com.pastdev.apacheds.server.metrics.RuleMetrics;
+
+
 import edu.vt.middleware.password.MessageResolver;
-import edu.vt.middleware.password.NonAlphanumericCharacterRule;
-import edu.vt.middleware.password.Password;
-import edu.vt.middleware.password.PasswordData;
-import edu.vt.middleware.password.Rule;
-import edu.vt.middleware.password.RuleResult;
 import edu.vt.middleware.password.RuleResultDetail;
-import edu.vt.middleware.password.UppercaseCharacterRule;
-import edu.vt.middleware.password.UsernameRule;
 
 
-public class PastdevPasswordValidator implements PasswordValidator {
+public class PastdevPasswordValidator implements PasswordValidator, Closeable {
     private static Logger logger = LoggerFactory.getLogger( PastdevPasswordValidator.class );
+    private static final int ACCOUNT_TOKEN_LENGTH = 3;
+    private static final int DICTIONARY_WORD_LENGTH = 4;
     private static final String MESSAGES_PROPERTIES = "/conf/password_policy_validator_messages.properties";
+    private static final String PASSWORD_FREQUENCIES = "conf/password_frequencies";
+    private static final long RELOAD_QUIET_MILLIS = 250;
+    private static final ThreadLocal<CharArraySequence> PASSWORD_VIEWS = new ThreadLocal<CharArraySequence>() {
+        @Override
+        protected CharArraySequence initialValue() {
+            return new CharArraySequence();
+        }
+    };
+
+    private final AtomicReference<CompiledPasswordPolicy> compiledPolicy =
+            new AtomicReference<CompiledPasswordPolicy>();
+    private final PasswordPolicyMetrics metrics = new PasswordPolicyMetrics();
+    private DictionaryRegistry.Lease dictionaryLease;
+    private FileWatcher fileWatcher;
+    private volatile ValidationExecutor offload;
+    private final boolean settingsOnly;
+    private long settingsVersion;
 
+    private String[] accountInformationAttributes = { "uid", "cn", "sn", "givenName", "mail" };
+    private boolean accountInformationEnabled = false;
     private String allowedSpecials = "!@#$%*()-=+{}:',.?/";
+    private String breachedPasswordCorpus = null;
     private String dictionary = "cracklib-words-20080507";
     private boolean dictionaryCaseSensitive = true;
     private boolean dictionaryEnabled = false;
     private boolean dictionaryMatchBackwards = false;
+    private int dictionaryPrefilterBitsPerPrefix = 0;
+    private boolean failFast = false;
     private String illegalSpecials = "`~";
-    private MessageResolver messageResolver;
     private int minimumLowerCharacters = 1;
     private int minimumDigits = 1;
     private int minimumSpecialCharacters = 1;
     private int minimumUpperCharacters = 1;
     private int minimumCharacterTypes = 3;
+    private int minimumStrengthScore = 0;
+    private int offloadQueueSize = 100;
+    private int offloadThreads = 0;
+    private long offloadTimeoutMillis = 500;
+    private boolean reloadEnabled = false;
+    private int repeatLength = 4;
+    private int sequenceLength = 5;
+    private boolean sequencesEnabled = false;
+    private String settingsFile = null;
     private boolean usernameCaseSensitive = false;
     private boolean usernameMatchBackwards = true;
-    private edu.vt.middleware.password.PasswordValidator validator;
 
-    public PastdevPasswordValidator() {}
+    public PastdevPasswordValidator() {
+        this( false );
+    }
+
+    /**
+     * @param settingsOnly
+     *            True for a validator that only checks settings, and so
+     *            starts no offload pool
+     */
+    private PastdevPasswordValidator( boolean settingsOnly ) {
+        this.settingsOnly = settingsOnly;
+    }
+
+    private DictionaryRegistry.Lease acquireDictionary() {
+        return dictionaryEnabled
+                ? DictionaryRegistry.getInstance().acquire( getClass().getClassLoader(), dictionary,
+                        dictionaryCaseSensitive, DICTIONARY_WORD_LENGTH, dictionaryMatchBackwards,
+                        dictionaryPrefilterBitsPerPrefix )
+                : null;
+    }
+
+    /**
+     * Applies <code>settings</code>, each named for its setter, as
+     * <code>minimumCharacterTypes=3</code> for
+     * {@link #setMinimumCharacterTypes(int)}. They are checked on a scratch
+     * validator first, so a bad value leaves this one unchanged; it starts
+     * no offload pool, so there is nothing of it to close.
+     */
+    private void applySettings( Properties settings ) {
+        new PastdevPasswordValidator( true ).applySettingsUnchecked( settings );
+        applySettingsUnchecked( settings );
+    }
+
+    private void applySettingsUnchecked( Properties settings ) {
+        for ( String name : settings.stringPropertyNames() ) {
+            String value = settings.getProperty( name );
+            switch ( name ) {
+                case "accountInformationAttributes":
+                    setAccountInformationAttributes( value.trim().split( "\\s*,\\s*" ) );
+                    break;
+                case "accountInformationEnabled":
+                    setAccountInformationEnabled( Boolean.parseBoolean( value.trim() ) );
+                    break;
+                case "allowedSpecials":
+                    setAllowedSpecial( value );
+                    break;
+                case "breachedPasswordCorpus":
+                    setBreachedPasswordCorpus( value.trim().isEmpty() ? null : value.trim() );
+                    break;
+                case "dictionary":
+                    setDictionary( value.trim() );
+                    break;
+                case "dictionaryEnabled":
+                    setDictionaryEnabled( Boolean.parseBoolean( value.trim() ) );
+                    break;
+                case "dictionaryPrefilterBitsPerPrefix":
+                    setDictionaryPrefilterBitsPerPrefix( Integer.parseInt( value.trim() ) );
+                    break;
+                case "failFast":
+                    setFailFast( Boolean.parseBoolean( value.trim() ) );
+                    break;
+                case "metricsSampleInterval":
+                    setMetricsSampleInterval( Integer.parseInt( value.trim() ) );
+                    break;
+                case "minimumCharacterTypes":
+                    setMinimumCharacterTypes( Integer.parseInt( value.trim() ) );
+                    break;
+                case "minimumDigits":
+                    setMinimumDigits( Integer.parseInt( value.trim() ) );
+                    break;
+                case "minimumLowerCharacters":
+                    setMinimumLowerCharacters( Integer.parseInt( value.trim() ) );
+                    break;
+                case "minimumSpecialCharacters":
+                    setMinimumSpecialCharacters( Integer.parseInt( value.trim() ) );
+                    break;
+                case "minimumStrengthScore":
+                    setMinimumStrengthScore( Integer.parseInt( value.trim() ) );
+                    break;
+                case "offloadQueueSize":
+                    setOffloadQueueSize( Integer.parseInt( value.trim() ) );
+                    break;
+                case "offloadThreads":
+                    setOffloadThreads( Integer.parseInt( value.trim() ) );
+                    break;
+                case "offloadTimeoutMillis":
+                    setOffloadTimeoutMillis( Long.parseLong( value.trim() ) );
+                    break;
+                case "minimumUpperCharacters":
+                    setMinimumUpper( Integer.parseInt( value.trim() ) );
+                    break;
+                case "repeatLength":
+                    setRepeatLength( Integer.parseInt( value.trim() ) );
+                    break;
+                case "sequenceLength":
+                    setSequenceLength( Integer.parseInt( value.trim() ) );
+                    break;
+                case "sequencesEnabled":
+                    setSequencesEnabled( Boolean.parseBoolean( value.trim() ) );
+                    break;
+                default:
+                    throw new IllegalArgumentException( "Unknown setting " + name );
+            }
+        }
+    }
+
+    /**
+     * Releases this validator's hold on its shared dictionary, which is
+     * dropped once no validator holds it, stops watching its sources and
+     * stops its offload threads. A validator used after it is closed
+     * acquires the dictionary again and validates on the calling thread.
+     */
+    @Override
+    public synchronized void close() {
+        settingsChanged();
+        releaseDictionary();
+        stopWatching();
+        if ( offload != null ) {
+            offload.shutdown();
+            offload = null;
+            metrics.setOffloadQueue( null );
+        }
+    }
 
     /**
-     * Returns a {@link edu.vt.middleware.password.PasswordValidator
-     * PasswordValidator} that satisfies Pastdev rules. Pastdev
-     * requires:
+     * Compiles the current settings into a {@link CompiledPasswordPolicy}
+     * that satisfies Pastdev rules. Pastdev requires:
      * 
      * Passwords must be a minimum of eight (8) characters and minimally contain
      * 3 of the 4 following character types;
@@ -82,226 +234,964 @@ public class PastdevPasswordValidator implements PasswordValidator {
      * account-related information.
      * 
      * <em>Note: password length is handled by apache directory password policy</em>
-     * 
-     * @throws IOException
-     */
-    edu.vt.middleware.password.PasswordValidator getValidator() {
-        if ( validator == null ) {
-            // lazy initialize to ensure injection occurs beforehand
-            List<Rule> ruleList = new ArrayList<Rule>();
-
-            // character complexity
-            PastdevCharacterCharacteristicsRule charRule = new PastdevCharacterCharacteristicsRule();
-            charRule.getRules().add( new PastdevUppercaseCharacterRule( minimumUpperCharacters ) );
-            charRule.getRules().add( new PastdevLowercaseCharacterRule( minimumLowerCharacters ) );
-            charRule.getRules().add( new PastdevDigitCharacterRule( minimumDigits ) );
-            charRule.getRules().add( new PastdevNonAlphanumericCharacterRule( minimumSpecialCharacters ) );
-            charRule.setNumberOfCharacteristics( minimumCharacterTypes );
-            ruleList.add( charRule );
-
-            // illegal characters
-            ruleList.add( new IllegalCharacterRule( illegalSpecials.toCharArray() ) );
-
-            // dictionary words and common names
-            if ( dictionaryEnabled ) {
-                try {
-                    DictionarySubstringRule dictRule = new DictionarySubstringRule(
-                            new WordListDictionary( getWordList() ) );
-                    dictRule.setWordLength( 4 );
-                    dictRule.setMatchBackwards( dictionaryMatchBackwards );
-                    ruleList.add( dictRule );
+     *
+     * @param dictionary
+     *            The lease on the dictionary, or null if dictionary words are
+     *            not checked
+     */
+    private CompiledPasswordPolicy compile( DictionaryRegistry.Lease dictionary ) {
+        List<PastdevRule> ruleList = new ArrayList<PastdevRule>();
+
+        // character complexity and illegal characters, in a single pass
+        ruleList.add( new PastdevCharacterRule( minimumUpperCharacters, minimumLowerCharacters,
+                minimumDigits, minimumSpecialCharacters, minimumCharacterTypes,
+                allowedSpecials, illegalSpecials ) );
+
+        // keyboard walks, runs and repeats, in a single pass
+        if ( sequencesEnabled ) {
+            ruleList.add( new PastdevSequenceRule( sequenceLength, repeatLength ) );
+        }
+
+        // username before the dictionary, which costs the most; collecting
+        // every detail keeps the original order, which decides the message
+        PastdevUsernameRule usernameRule = new PastdevUsernameRule( usernameMatchBackwards, !usernameCaseSensitive );
+        if ( failFast ) {
+            ruleList.add( usernameRule );
+        }
+
+        // the rules from here on are the costly ones
+        int inlineRuleCount = ruleList.size();
+
+        // dictionary words and common names, shared and loaded in the
+        // background; only this rule waits for the load
+        if ( dictionary != null ) {
+            ruleList.add( new PastdevDictionaryRule( dictionary ) );
+        }
+
+        if ( !failFast ) {
+            ruleList.add( usernameRule );
+        }
+
+        // guessability, a bounded search of ranked words and patterns
+        if ( minimumStrengthScore > 0 ) {
+            try {
+                FrequencyTable frequencies = FrequencyTable.load( getClass().getClassLoader(), PASSWORD_FREQUENCIES );
+                if ( frequencies == null ) {
+                    throw new IllegalStateException( "Password frequencies not found: " + PASSWORD_FREQUENCIES );
+                }
+                ruleList.add( new PastdevStrengthRule( new StrengthEstimator( frequencies ), minimumStrengthScore ) );
+            }
+            catch ( IOException e ) {
+                throw new IllegalStateException( "Unable to load password frequencies", e );
+            }
+        }
+
+        // known breached passwords, last as each lookup may fault in pages
+        if ( breachedPasswordCorpus != null ) {
+            try {
+                ruleList.add( new PastdevBreachedPasswordRule(
+                        BreachedPasswordCorpus.open( Paths.get( breachedPasswordCorpus ) ) ) );
+            }
+            catch ( IOException e ) {
+                throw new IllegalStateException( "Unable to open breached password corpus", e );
+            }
+        }
+
+        // account information, when validating against a user entry
+        PastdevAccountRule accountRule = null;
+        if ( accountInformationEnabled ) {
+            accountRule = new PastdevAccountRule( accountInformationAttributes, ACCOUNT_TOKEN_LENGTH,
+                    usernameMatchBackwards, !usernameCaseSensitive );
+        }
+
+        if ( metrics.isEnabled() ) {
+            for ( int i = 0; i < ruleList.size(); i++ ) {
+                PastdevRule rule = ruleList.get( i );
+                ruleList.set( i, new MeasuredRule( rule,
+                        metrics.getRuleMetrics( rule.getClass().getSimpleName() ) ) );
+            }
+        }
+
+        return new CompiledPasswordPolicy( ruleList, inlineRuleCount, accountRule, loadMessageTemplates(), failFast,
+                dictionary, metrics.isEnabled() ? metrics : null );
+    }
+
+    /**
+     * Compiles the current settings holding <code>dictionary</code>, which
+     * is released if compiling fails.
+     */
+    private CompiledPasswordPolicy compileOrRelease( DictionaryRegistry.Lease dictionary ) {
+        try {
+            return compile( dictionary );
+        }
+        catch ( RuntimeException e ) {
+            if ( dictionary != null ) {
+                dictionary.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the compiled policy, compiling it on first use. Compilation is
+     * lazy to ensure injection occurs beforehand, and happens at most once
+     * per set of settings; after that, this is a single volatile read.
+     */
+    CompiledPasswordPolicy getCompiledPolicy() {
+        CompiledPasswordPolicy policy = compiledPolicy.get();
+        if ( policy == null ) {
+            synchronized ( this ) {
+                policy = compiledPolicy.get();
+                if ( policy == null ) {
+                    policy = compileOrRelease( acquireDictionary() );
+                    publish( policy );
+                }
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Returns the filter screening dictionary searches, whose counters show
+     * how well it is sized, or null if there is none.
+     *
+     * @return The dictionary prefilter
+     * @see #setDictionaryPrefilterBitsPerPrefix(int)
+     */
+    public BloomFilter getDictionaryPrefilter() {
+        DictionaryRegistry.Lease dictionary = getCompiledPolicy().getDictionary();
+        return dictionary == null ? null : dictionary.getPrefilter();
+    }
+
+    /**
+     * Returns the offload pool, or null if validation runs on the calling
+     * thread.
+     */
+    ValidationExecutor getOffload() {
+        return offload;
+    }
 
+    /**
+     * Returns the per rule latencies and counts, and the counts per
+     * rejection error code, of this validator. They are only gathered once
+     * {@link #setMetricsSampleInterval(int)} enables them.
+     *
+     * @return The metrics
+     */
+    public PasswordPolicyMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static MessageTemplates loadMessageTemplates() {
+        Properties messages = loadProperties( PastdevPasswordValidator.class, MESSAGES_PROPERTIES );
+        if ( messages == null ) {
+            // accept default messages
+            messages = loadProperties( MessageResolver.class, MessageResolver.DEFAULT_MESSAGE_PATH );
+        }
+        return new MessageTemplates( messages == null ? new Properties() : messages );
+    }
+
+    private static Properties loadProperties( Class<?> type, String resource ) {
+        InputStream inputStream = null;
+        try {
+            inputStream = type.getResourceAsStream( resource );
+            if ( inputStream == null ) {
+                return null;
+            }
+            Properties messages = new Properties();
+            messages.load( inputStream );
+            return messages;
+        }
+        catch ( IOException e ) {
+            return null;
+        }
+        finally {
+            if ( inputStream != null ) {
+                try {
+                    inputStream.close();
                 }
                 catch ( IOException e ) {
-                    throw new IllegalStateException( "Unable to load dictionary", e );
+                    // ignore
                 }
             }
+        }
+    }
 
-            ruleList.add( new UsernameRule( usernameMatchBackwards, !usernameCaseSensitive ) );
+    private static long lastModified( Path file ) {
+        try {
+            return Files.getLastModifiedTime( file ).toMillis();
+        }
+        catch ( IOException e ) {
+            // deleted
+            return System.currentTimeMillis();
+        }
+    }
 
-            InputStream inputStream = null;
-            try {
-                inputStream = PastdevPasswordValidator.class.getResourceAsStream( MESSAGES_PROPERTIES );
-                Properties messages = new Properties();
-                messages.load( inputStream );
-                messageResolver = new MessageResolver( messages );
+    /**
+     * Reads the settings file at <code>path</code>, a properties file.
+     */
+    private static Properties loadSettings( String path ) {
+        try (InputStream inputStream = Files.newInputStream( Paths.get( path ) )) {
+            Properties settings = new Properties();
+            settings.load( inputStream );
+            return settings;
+        }
+        catch ( IOException e ) {
+            throw new IllegalStateException( "Unable to read settings " + path, e );
+        }
+    }
+
+    /**
+     * Returns the detail reported for <code>password</code>, checked against
+     * <code>user</code> if there is one, otherwise <code>username</code>.
+     * With an offload pool, and costly rules in the policy, the check runs
+     * on the pool; failing fast, the cheap rules run here first, so that a
+     * password they reject never waits for the pool.
+     */
+    private RuleResultDetail offloadCheck( final CompiledPasswordPolicy policy, final CharSequence password,
+            final CharSequence username, final Entry user ) throws PasswordPolicyException {
+        ValidationExecutor offload = this.offload;
+        if ( offload == null || policy.getInlineRuleCount() == policy.getRules().size() ) {
+            return user == null ? check( policy, password, username ) : check( policy, password, user );
+        }
+
+        if ( policy.isFailFast() ) {
+            CharSequence name = user == null
+                    ? username
+                    : (policy.getAccountRule() == null ? getUsername( user ) : null);
+            List<PastdevRule> rules = policy.getRules();
+            for ( int i = 0, size = policy.getInlineRuleCount(); i < size; i++ ) {
+                if ( !rules.get( i ).accepts( password, name ) ) {
+                    return reject( policy, rules.get( i ), password, name );
+                }
             }
-            catch ( IOException e ) {
-                // accept default messages
-                messageResolver = new MessageResolver();
+            if ( user != null && policy.getAccountRule() != null ) {
+                RuleResultDetail reported = checkAccount( policy, password, user );
+                if ( reported != null ) {
+                    return reported;
+                }
             }
-            finally {
-                if ( inputStream != null ) {
+        }
+        // the caller may wipe or reuse a password that is not a String once
+        // this returns, which on a timeout is while the pool may yet read
+        // it, so the pool gets a copy of its own. The pool wipes the copy
+        // when done with it, or if it never starts, the caller does.
+        final CharArraySequence copy = password instanceof String ? null : CharArraySequence.copyOf( password );
+        final AtomicBoolean started = new AtomicBoolean();
+        try {
+            // the pool checks the cheap rules again, which costs next to nothing
+            return offload.check( new Callable<RuleResultDetail>() {
+                @Override
+                public RuleResultDetail call() throws PasswordPolicyException {
+                    if ( !started.compareAndSet( false, true ) ) {
+                        // given up on before it started, and already wiped
+                        return null;
+                    }
+                    CharSequence checked = copy == null ? password : copy;
                     try {
-                        inputStream.close();
+                        return user == null ? check( policy, checked, username ) : check( policy, checked, user );
                     }
-                    catch ( IOException e ) {
-                        // ignore
+                    finally {
+                        if ( copy != null ) {
+                            copy.wipe();
+                        }
                     }
                 }
+            } );
+        }
+        finally {
+            if ( copy != null && started.compareAndSet( false, true ) ) {
+                copy.wipe();
             }
-            validator = new edu.vt.middleware.password.PasswordValidator( messageResolver, ruleList );
         }
+    }
 
-        return validator;
+    /**
+     * Makes <code>policy</code> the one validations use, holding its
+     * dictionary in place of the previous one. The new lease is acquired
+     * before the previous one is released, so a dictionary both use is not
+     * loaded again.
+     */
+    private void publish( CompiledPasswordPolicy policy ) {
+        releaseDictionary();
+        dictionaryLease = policy.getDictionary();
+        compiledPolicy.set( policy );
+        if ( reloadEnabled ) {
+            watchSources();
+        }
     }
 
-    private ArrayWordList getWordList() throws IOException {
-        return WordLists.createFromReader(
-                new Reader[] { new InputStreamReader( getClass().getClassLoader().getResourceAsStream( dictionary ) ) },
-                dictionaryCaseSensitive,
-                new ArraysSort() );
+    private void releaseDictionary() {
+        if ( dictionaryLease != null ) {
+            dictionaryLease.release();
+            dictionaryLease = null;
+        }
     }
 
-    public void setAllowedSpecial( String allowedSpecials ) {
+    /**
+     * Rebuilds the policy from its sources: re-reads the settings file, if
+     * there is one, then compiles the settings, the messages and the
+     * dictionary, and waits for the dictionary to load before swapping the
+     * new policy in. Until then validations use the current policy, and
+     * those in flight at the swap finish on it, so none waits on the
+     * rebuild. This is called when a watched source changes, and may be
+     * called by anything else that knows a source changed, such as a
+     * listener on the config partition.
+     *
+     * @throws IllegalArgumentException
+     *             If the settings file has an unknown setting or a bad value,
+     *             which leaves the current policy in place
+     * @throws IllegalStateException
+     *             If the settings file, the dictionary or another source
+     *             cannot be read, which leaves the current policy in place
+     * @see #setReloadEnabled(boolean)
+     */
+    public void reload() {
+        DictionaryRegistry.Lease dictionary;
+        long version;
+        synchronized ( this ) {
+            if ( settingsFile != null ) {
+                CompiledPasswordPolicy current = compiledPolicy.get();
+                applySettings( loadSettings( settingsFile ) );
+                compiledPolicy.set( current );
+            }
+            version = settingsVersion;
+            dictionary = acquireDictionary();
+        }
+
+        // the dictionary loads outside the lock, setters are not held up
+        if ( dictionary != null ) {
+            try {
+                dictionary.getMatcher();
+            }
+            catch ( IllegalStateException e ) {
+                dictionary.release();
+                throw e;
+            }
+        }
+
+        synchronized ( this ) {
+            if ( version != settingsVersion ) {
+                // set again meanwhile, the next validation compiles that
+                if ( dictionary != null ) {
+                    dictionary.release();
+                }
+                return;
+            }
+            publish( compileOrRelease( dictionary ) );
+            logger.info( "Reloaded password policy" );
+        }
+    }
+
+    /**
+     * Sets the attributes of the user entry whose values, and the words
+     * within them, a password must not contain when account information is
+     * checked. The default is <code>uid</code>, <code>cn</code>,
+     * <code>sn</code>, <code>givenName</code> and <code>mail</code>, of which
+     * only the local part is used.
+     *
+     * @param attributes
+     *            The attribute names
+     * @see #setAccountInformationEnabled(boolean)
+     */
+    public synchronized void setAccountInformationAttributes( String... attributes ) {
+        this.accountInformationAttributes = attributes.clone();
+        settingsChanged();
+    }
+
+    /**
+     * Checks passwords validated against a user entry for all of its
+     * account information, rather than just the username from its
+     * <code>mail</code>. An entry missing some or all of the attributes is
+     * then checked against those it has rather than rejected.
+     *
+     * @param enabled
+     *            True to check account information
+     * @see #setAccountInformationAttributes(String...)
+     */
+    public synchronized void setAccountInformationEnabled( boolean enabled ) {
+        this.accountInformationEnabled = enabled;
+        settingsChanged();
+    }
+
+    public synchronized void setAllowedSpecial( String allowedSpecials ) {
         this.allowedSpecials = allowedSpecials;
+        settingsChanged();
+    }
+
+    /**
+     * Sets the file of a {@link BreachedPasswordCorpus} whose passwords are
+     * rejected outright. It is a file rather than a resource as it may run
+     * to gigabytes, and it is mapped rather than read. Null, the default,
+     * disables the check.
+     *
+     * @param path
+     *            The corpus file, or null
+     */
+    public synchronized void setBreachedPasswordCorpus( String path ) {
+        this.breachedPasswordCorpus = path;
+        settingsChanged();
     }
     
-    public void setDictionaryEnabled( boolean enabled ) {
+    /**
+     * Sets the classpath resource of the dictionary word list, one word per
+     * line, optionally with a binary dictionary generated next to it.
+     *
+     * @param dictionary
+     *            The dictionary resource
+     */
+    public synchronized void setDictionary( String dictionary ) {
+        this.dictionary = dictionary;
+        settingsChanged();
+    }
+
+    public synchronized void setDictionaryEnabled( boolean enabled ) {
         this.dictionaryEnabled = enabled;
+        settingsChanged();
+    }
+
+    /**
+     * Sizes the Bloom filter that screens dictionary searches, in bits per
+     * distinct word prefix; 10 passes about one non-word window in a
+     * hundred. Zero, the default, disables it.
+     *
+     * @param bitsPerPrefix
+     *            The filter size, or 0
+     */
+    public synchronized void setDictionaryPrefilterBitsPerPrefix( int bitsPerPrefix ) {
+        if ( bitsPerPrefix < 0 ) {
+            throw new IllegalArgumentException( "bitsPerPrefix must be >= 0" );
+        }
+        this.dictionaryPrefilterBitsPerPrefix = bitsPerPrefix;
+        settingsChanged();
     }
 
-    public void setMinimumCharacterTypes( int minimumCharacterTypes ) {
+    /**
+     * Selects fail-fast validation: the rules run cheapest first, character
+     * classes and illegal characters, then sequences, then username, or
+     * account information when that is checked, then dictionary, then
+     * strength, then breached passwords, and validation stops at the first
+     * failure and renders only its message. Otherwise, the default, every
+     * rule contributes its details and the most telling one is reported.
+     *
+     * @param failFast
+     *            True to stop at the first failure
+     */
+    public synchronized void setFailFast( boolean failFast ) {
+        this.failFast = failFast;
+        settingsChanged();
+    }
+
+    /**
+     * Enables metrics: every rule check is counted, and one in
+     * <code>sampleInterval</code> is timed. Zero, the default, disables
+     * them, leaving the rules unwrapped.
+     *
+     * @param sampleInterval
+     *            The checks per timed check, or 0
+     * @see #getMetrics()
+     */
+    public synchronized void setMetricsSampleInterval( int sampleInterval ) {
+        metrics.setSampleInterval( sampleInterval );
+        settingsChanged();
+    }
+
+    public synchronized void setMinimumCharacterTypes( int minimumCharacterTypes ) {
         this.minimumCharacterTypes = minimumCharacterTypes;
+        settingsChanged();
     }
 
-    public void setMinimumLowerCharacters( int lowerCount ) {
+    public synchronized void setMinimumLowerCharacters( int lowerCount ) {
         this.minimumLowerCharacters = lowerCount;
+        settingsChanged();
     }
 
-    public void setMinimumDigits( int digitCount ) {
+    public synchronized void setMinimumDigits( int digitCount ) {
         this.minimumDigits = digitCount;
+        settingsChanged();
     }
 
-    public void setMinimumSpecialCharacters( int specialCount ) {
+    public synchronized void setMinimumSpecialCharacters( int specialCount ) {
         this.minimumSpecialCharacters = specialCount;
+        settingsChanged();
+    }
+
+    /**
+     * Sets the minimum strength score, from 0 to 4 as zxcvbn scores, of an
+     * estimate of the guesses a password would take given common passwords,
+     * words, names and patterns. Zero, the default, disables the estimate;
+     * 3 rejects passwords guessable in under 10^8 tries.
+     *
+     * @param minimumScore
+     *            The minimum score, or 0
+     */
+    public synchronized void setMinimumStrengthScore( int minimumScore ) {
+        if ( minimumScore < 0 || minimumScore > StrengthEstimator.MAX_SCORE ) {
+            throw new IllegalArgumentException( "minimumScore must be from 0 to " + StrengthEstimator.MAX_SCORE );
+        }
+        this.minimumStrengthScore = minimumScore;
+        settingsChanged();
     }
 
-    public void setMinimumUpper( int upperCount ) {
+    public synchronized void setMinimumUpper( int upperCount ) {
         this.minimumUpperCharacters = upperCount;
+        settingsChanged();
     }
 
-    @Override
-    public void validate( String password, Entry user ) throws PasswordPolicyException {
-        String username = null;
-        try {
-            String email = user.get( "mail" ).getString();
-            int atIndex = email.indexOf( '@' );
-            username = email.substring( 0, atIndex );
+    /**
+     * Watches the sources of the policy, and {@link #reload() reloads} it
+     * when one changes: the settings file, the messages and dictionary
+     * resources where they are plain files rather than inside a jar, and
+     * the breached password corpus. A dictionary that changed is loaded
+     * again rather than shared with the validators that loaded it before.
+     * Watching is off by default, and stops when the validator is closed.
+     *
+     * @param enabled
+     *            True to reload on changes
+     * @see #close()
+     */
+    public synchronized void setReloadEnabled( boolean enabled ) {
+        this.reloadEnabled = enabled;
+        if ( !enabled ) {
+            stopWatching();
         }
-        catch ( LdapInvalidAttributeValueException e ) {
-            throw new PasswordPolicyException( "Email not found for '" + user.getDn() + "'" );
+        else if ( compiledPolicy.get() != null ) {
+            watchSources();
         }
+    }
 
-        validate( password, username );
+    /**
+     * Sets the number of repeats of one character, ignoring case, that is
+     * rejected when sequences are checked; the default is 4.
+     *
+     * @param repeatLength
+     *            The rejected number of repeats
+     * @see #setSequencesEnabled(boolean)
+     */
+    public synchronized void setRepeatLength( int repeatLength ) {
+        if ( repeatLength < 2 ) {
+            throw new IllegalArgumentException( "repeatLength must be >= 2" );
+        }
+        this.repeatLength = repeatLength;
+        settingsChanged();
     }
 
-    void validate( String password, String username ) throws PasswordPolicyException {
-        PasswordData passwordData = new PasswordData( new Password( password ) );
-        passwordData.setUsername( username );
-        RuleResult result = getValidator().validate( passwordData );
+    /**
+     * Sets the length of keyboard walks and alphabetical and numerical runs
+     * that is rejected when sequences are checked; the default is 5.
+     *
+     * @param sequenceLength
+     *            The rejected length
+     * @see #setSequencesEnabled(boolean)
+     */
+    public synchronized void setSequenceLength( int sequenceLength ) {
+        if ( sequenceLength < 3 ) {
+            throw new IllegalArgumentException( "sequenceLength must be >= 3" );
+        }
+        this.sequenceLength = sequenceLength;
+        settingsChanged();
+    }
 
-        if ( !result.isValid() ) {
-            String detailMessage = null;
-            for ( RuleResultDetail detail : result.getDetails() ) {
-                String tempMessage = messageResolver.resolve( detail );
-                logger.debug( "Invalid password: {}", tempMessage );
+    /**
+     * Rejects passwords that contain keyboard walks, alphabetical or
+     * numerical runs, or repeated characters, such as <code>Qwerty123!</code>
+     * or <code>Aaaa1111!</code>.
+     *
+     * @param enabled
+     *            True to check sequences
+     * @see #setRepeatLength(int)
+     * @see #setSequenceLength(int)
+     */
+    public synchronized void setSequencesEnabled( boolean enabled ) {
+        this.sequencesEnabled = enabled;
+        settingsChanged();
+    }
 
-                String errorCode = detail.getErrorCode();
-                if ( CharacterCharacteristicsRule.ERROR_CODE.equals( errorCode ) ) {
-                    detailMessage = tempMessage;
-                }
-                else if ( detailMessage == null ) {
-                    detailMessage = tempMessage;
-                }
+    /**
+     * Sets the number of validations that may wait for an offload thread;
+     * the default is 100. One that finds the queue full fails.
+     *
+     * @param queueSize
+     *            The queue size
+     * @see #setOffloadThreads(int)
+     */
+    public synchronized void setOffloadQueueSize( int queueSize ) {
+        if ( queueSize < 1 ) {
+            throw new IllegalArgumentException( "queueSize must be >= 1" );
+        }
+        this.offloadQueueSize = queueSize;
+        startOffload();
+    }
+
+    /**
+     * Runs the costly rules, the dictionary, strength and breached
+     * passwords, on a pool of <code>threads</code> threads rather than the
+     * LDAP request thread, so that a burst of password changes cannot tie up
+     * every request thread for long. A validation that finds the queue
+     * full, or that is not done by the deadline, rejects the password
+     * rather than accepting it unchecked, with the
+     * <code>VALIDATION_TIMEOUT</code> message. Zero, the default, validates
+     * on the calling thread. The queue depth and the failed validations are
+     * reported by the {@link #getMetrics() metrics}.
+     *
+     * @param threads
+     *            The number of offload threads, or 0
+     * @see #setOffloadQueueSize(int)
+     * @see #setOffloadTimeoutMillis(long)
+     */
+    public synchronized void setOffloadThreads( int threads ) {
+        if ( threads < 0 ) {
+            throw new IllegalArgumentException( "threads must be >= 0" );
+        }
+        this.offloadThreads = threads;
+        startOffload();
+    }
+
+    /**
+     * Sets the time from handing a validation to the offload pool to its
+     * result, waiting in the queue included, after which it fails; the
+     * default is 500.
+     *
+     * @param timeoutMillis
+     *            The deadline in milliseconds
+     * @see #setOffloadThreads(int)
+     */
+    public synchronized void setOffloadTimeoutMillis( long timeoutMillis ) {
+        if ( timeoutMillis < 1 ) {
+            throw new IllegalArgumentException( "timeoutMillis must be >= 1" );
+        }
+        this.offloadTimeoutMillis = timeoutMillis;
+        startOffload();
+    }
+
+    /**
+     * Applies the settings in the properties file at <code>path</code>,
+     * each named for its setter, such as <code>allowedSpecials</code>,
+     * <code>dictionaryEnabled</code> or <code>minimumCharacterTypes</code>,
+     * and reads them again on each {@link #reload()}. Settings the file
+     * leaves out keep their values.
+     *
+     * @param path
+     *            The settings file
+     * @throws IllegalArgumentException
+     *             If the file has an unknown setting or a bad value
+     * @throws IllegalStateException
+     *             If the file cannot be read
+     */
+    public synchronized void setSettingsFile( String path ) {
+        applySettings( loadSettings( path ) );
+        this.settingsFile = path;
+        settingsChanged();
+    }
+
+    /**
+     * Drops the compiled policy, so the next validation compiles the changed
+     * settings, and any reload in progress leaves it to that.
+     */
+    private void settingsChanged() {
+        settingsVersion++;
+        compiledPolicy.set( null );
+    }
+
+    /**
+     * Replaces the offload pool to match the settings, unless it already
+     * does, as when a reload applies the same settings again. The one
+     * replaced finishes the validations already handed to it.
+     */
+    private void startOffload() {
+        ValidationExecutor previous = offload;
+        if ( settingsOnly || (previous == null
+                ? offloadThreads == 0
+                : previous.hasSettings( offloadThreads, offloadQueueSize, offloadTimeoutMillis )) ) {
+            return;
+        }
+        offload = offloadThreads > 0
+                ? new ValidationExecutor( offloadThreads, offloadQueueSize, offloadTimeoutMillis, metrics )
+                : null;
+        if ( previous != null ) {
+            previous.shutdown();
+        }
+        if ( offload == null ) {
+            metrics.setOffloadQueue( null );
+        }
+    }
+
+    private void stopWatching() {
+        if ( fileWatcher != null ) {
+            try {
+                fileWatcher.close();
             }
-            throw new PasswordPolicyException( detailMessage,
-                    PasswordPolicyErrorEnum.INSUFFICIENT_PASSWORD_QUALITY
-                            .getValue() );
+            catch ( IOException e ) {
+                logger.warn( "Unable to stop watching password policy sources", e );
+            }
+            fileWatcher = null;
         }
     }
 
-    private interface PastdevCharacterRule extends CharacterRule {
-        public String getCharacterType();
+    /**
+     * Returns the file that <code>resource</code> is, or null if it is in a
+     * jar or not found.
+     */
+    private static Path toFile( URL resource ) {
+        if ( resource == null || !"file".equals( resource.getProtocol() ) ) {
+            return null;
+        }
+        try {
+            return Paths.get( resource.toURI() );
+        }
+        catch ( URISyntaxException e ) {
+            return null;
+        }
     }
 
-    private class PastdevCharacterCharacteristicsRule extends CharacterCharacteristicsRule {
-        @Override
-        protected Map<String, ?> createRuleResultDetailParameters( final int success ) {
-            @SuppressWarnings( "unchecked" )
-            Map<String, Object> m = (Map<String, Object>) super.createRuleResultDetailParameters( success );
-            StringBuilder builder = null;
-            for ( CharacterRule rule : getRules() ) {
-                if ( builder == null ) {
-                    builder = new StringBuilder();
-                }
-                else {
-                    builder.append( ", " );
-                }
+    private void watchSources() {
+        List<Path> files = new ArrayList<Path>();
+        if ( settingsFile != null ) {
+            files.add( Paths.get( settingsFile ).toAbsolutePath() );
+        }
+        Path messages = toFile( PastdevPasswordValidator.class.getResource( MESSAGES_PROPERTIES ) );
+        if ( messages != null ) {
+            files.add( messages );
+        }
+        Path wordList = dictionaryEnabled ? toFile( getClass().getClassLoader().getResource( dictionary ) ) : null;
+        if ( wordList != null ) {
+            // the binary dictionary may not exist yet
+            files.add( wordList );
+            files.add( wordList.resolveSibling( wordList.getFileName() + BinaryDictionary.EXTENSION ) );
+        }
+        if ( breachedPasswordCorpus != null ) {
+            files.add( Paths.get( breachedPasswordCorpus ).toAbsolutePath() );
+        }
 
-                if ( rule instanceof PastdevCharacterRule ) {
-                    builder.append( ((PastdevCharacterRule) rule).getCharacterType() );
-                }
-                else {
-                    builder.append( rule.getClass().getName() );
+        try {
+            if ( fileWatcher == null ) {
+                fileWatcher = new FileWatcher( "password-policy-watcher", RELOAD_QUIET_MILLIS,
+                        new FileWatcher.Listener() {
+                            @Override
+                            public void changed( Set<Path> files ) {
+                                sourcesChanged( files );
+                            }
+                        } );
+            }
+            fileWatcher.watch( files );
+        }
+        catch ( IOException e ) {
+            logger.warn( "Unable to watch {}, changes to them need a restart", files, e );
+        }
+    }
+
+    private void sourcesChanged( Set<Path> files ) {
+        logger.debug( "Password policy sources changed: {}", files );
+        String dictionary;
+        Path wordList;
+        synchronized ( this ) {
+            dictionary = this.dictionary;
+            wordList = dictionaryEnabled ? toFile( getClass().getClassLoader().getResource( dictionary ) ) : null;
+        }
+        if ( wordList != null ) {
+            long modified = 0;
+            for ( Path file : new Path[] { wordList,
+                    wordList.resolveSibling( wordList.getFileName() + BinaryDictionary.EXTENSION ) } ) {
+                if ( files.contains( file ) ) {
+                    modified = Math.max( modified, lastModified( file ) );
                 }
             }
-            m.put( "characterSets", builder.toString() );
-            return m;
+            if ( modified > 0 ) {
+                // by when it changed rather than now, so validators sharing
+                // the dictionary do not each load it again
+                DictionaryRegistry.getInstance().invalidate( dictionary, modified );
+            }
         }
+        reload();
     }
 
-    private class PastdevDigitCharacterRule
-            extends DigitCharacterRule implements PastdevCharacterRule {
-        private PastdevDigitCharacterRule( int minimum ) {
-            super( minimum );
+    /**
+     * Returns the username of <code>user</code>, the local part of its
+     * <code>mail</code>.
+     */
+    static String getUsername( Entry user ) throws PasswordPolicyException {
+        try {
+            Attribute mail = user.get( "mail" );
+            if ( mail == null ) {
+                throw new PasswordPolicyException( "Email not found for '" + user.getDn() + "'" );
+            }
+            String email = mail.getString();
+            int atIndex = email.indexOf( '@' );
+            if ( atIndex < 0 ) {
+                throw new PasswordPolicyException( "Invalid email for '" + user.getDn() + "'" );
+            }
+            return email.substring( 0, atIndex );
         }
+        catch ( LdapInvalidAttributeValueException e ) {
+            throw new PasswordPolicyException( "Email not found for '" + user.getDn() + "'" );
+        }
+    }
 
-        @Override
-        public String getCharacterType() {
-            return super.getCharacterType();
+    /**
+     * Returns the detail reported for <code>password</code> under
+     * <code>policy</code>, or null if it is accepted. An accepted password
+     * creates no objects.
+     */
+    static RuleResultDetail check( CompiledPasswordPolicy policy, CharSequence password, CharSequence username ) {
+        List<PastdevRule> rules = policy.getRules();
+        for ( int i = 0, size = rules.size(); i < size; i++ ) {
+            if ( !rules.get( i ).accepts( password, username ) ) {
+                return reject( policy, rules.get( i ), password, username );
+            }
         }
+        return null;
     }
 
-    private class PastdevLowercaseCharacterRule
-            extends LowercaseCharacterRule implements PastdevCharacterRule {
-        private PastdevLowercaseCharacterRule( int minimum ) {
-            super( minimum );
+    /**
+     * Returns the detail reported for <code>password</code> of
+     * <code>user</code> under <code>policy</code>, or null if it is accepted.
+     * Failing fast, the account information of the entry is checked with the
+     * cheap rules, ahead of the costly ones; otherwise once the password
+     * passes the other rules, so it does not change the detail they report.
+     * Without an account rule, the entry only supplies the username.
+     */
+    static RuleResultDetail check( CompiledPasswordPolicy policy, CharSequence password, Entry user )
+            throws PasswordPolicyException {
+        if ( policy.getAccountRule() == null ) {
+            return check( policy, password, getUsername( user ) );
         }
 
-        @Override
-        public String getCharacterType() {
-            return super.getCharacterType();
+        List<PastdevRule> rules = policy.getRules();
+        int size = rules.size();
+        int accountRuleIndex = policy.isFailFast() ? policy.getInlineRuleCount() : size;
+        for ( int i = 0; i <= size; i++ ) {
+            if ( i == accountRuleIndex ) {
+                RuleResultDetail reported = checkAccount( policy, password, user );
+                if ( reported != null ) {
+                    return reported;
+                }
+            }
+            if ( i < size && !rules.get( i ).accepts( password, null ) ) {
+                return reject( policy, rules.get( i ), password, null );
+            }
         }
+        return null;
     }
 
-    private class PastdevNonAlphanumericCharacterRule
-            extends NonAlphanumericCharacterRule implements PastdevCharacterRule {
-        private PastdevNonAlphanumericCharacterRule( int minimum ) {
-            super( minimum );
+    private static RuleResultDetail checkAccount( CompiledPasswordPolicy policy, CharSequence password,
+            Entry user ) {
+        PastdevAccountRule accountRule = policy.getAccountRule();
+        RuleMetrics ruleMetrics = policy.getAccountRuleMetrics();
+        long start = ruleMetrics == null ? RuleMetrics.NOT_SAMPLED : ruleMetrics.start();
+        boolean accepted = accountRule.accepts( password, user );
+        if ( ruleMetrics != null ) {
+            ruleMetrics.record( start, accepted );
+        }
+        if ( accepted ) {
+            return null;
+        }
+        RuleResultDetail reported = accountRule.getReportedDetail( password, user );
+        if ( policy.getMetrics() != null ) {
+            policy.getMetrics().recordRejection( reported.getErrorCode() );
         }
+        return reported;
+    }
 
-        @Override
-        public String getCharacterType() {
-            return super.getCharacterType();
+    private static void raise( CompiledPasswordPolicy policy, RuleResultDetail reported )
+            throws PasswordPolicyException {
+        if ( reported != null ) {
+            throw new PasswordPolicyException( policy.getMessageTemplates().resolve( reported ),
+                    PasswordPolicyErrorEnum.INSUFFICIENT_PASSWORD_QUALITY.getValue() );
         }
+    }
 
-        /** {@inheritDoc} */
-        @Override
-        public String getValidCharacters() {
-            return allowedSpecials;
+    private static RuleResultDetail reject( CompiledPasswordPolicy policy, PastdevRule rejectingRule,
+            CharSequence password, CharSequence username ) {
+        RuleResultDetail reported;
+        if ( policy.isFailFast() ) {
+            reported = rejectingRule.getReportedDetail( password, username );
+        }
+        else {
+            reported = collectDetails( policy, password, username );
         }
+        if ( policy.getMetrics() != null && reported != null ) {
+            policy.getMetrics().recordRejection( reported.getErrorCode() );
+        }
+        return reported;
     }
 
-    private class PastdevUppercaseCharacterRule
-            extends UppercaseCharacterRule implements PastdevCharacterRule {
-        private PastdevUppercaseCharacterRule( int minimum ) {
-            super( minimum );
+    private static RuleResultDetail collectDetails( CompiledPasswordPolicy policy, CharSequence password,
+            CharSequence username ) {
+        List<RuleResultDetail> details = new ArrayList<RuleResultDetail>();
+        for ( PastdevRule rule : policy.getRules() ) {
+            rule.addDetails( password, username, details );
         }
+        if ( logger.isDebugEnabled() ) {
+            for ( RuleResultDetail detail : details ) {
+                logger.debug( "Invalid password: {}", policy.getMessageTemplates().resolve( detail ) );
+            }
+        }
+        return PastdevRule.select( details );
+    }
 
-        @Override
-        public String getCharacterType() {
-            return super.getCharacterType();
+    @Override
+    public void validate( String password, Entry user ) throws PasswordPolicyException {
+        CompiledPasswordPolicy policy = getCompiledPolicy();
+        raise( policy, offloadCheck( policy, password, null, user ) );
+    }
+
+    /**
+     * Validates a password held in an array, with the username taken from
+     * the local part of the <code>mail</code> of <code>user</code>, or
+     * against all of its account information if that is enabled.
+     *
+     * @see #validate(char[], CharSequence)
+     * @see #setAccountInformationEnabled(boolean)
+     */
+    public void validate( char[] password, Entry user ) throws PasswordPolicyException {
+        CompiledPasswordPolicy policy = getCompiledPolicy();
+        CharArraySequence sequence = PASSWORD_VIEWS.get();
+        try {
+            raise( policy, offloadCheck( policy, sequence.wrap( password ), null, user ) );
+        }
+        finally {
+            sequence.clear();
+        }
+    }
+
+    /**
+     * Validates a password held in an array. The array is read in place, so
+     * the caller can wipe it as soon as this returns; only with an offload
+     * pool is it copied, for the pool, which wipes the copy when done. Like
+     * {@link #validate(CharSequence, CharSequence)}, a password that passes
+     * creates no objects.
+     *
+     * @param password
+     *            The password
+     * @param username
+     *            The username, or null to skip the username rule
+     * @throws PasswordPolicyException
+     *             If the password is rejected
+     */
+    public void validate( char[] password, CharSequence username ) throws PasswordPolicyException {
+        CharArraySequence sequence = PASSWORD_VIEWS.get();
+        try {
+            validate( sequence.wrap( password ), username );
+        }
+        finally {
+            sequence.clear();
         }
     }
+
+    /**
+     * Validates <code>password</code>. Every rule first checks it without
+     * creating any objects, so a password that passes costs no garbage; only
+     * a rejected password has its details and message built.
+     *
+     * @param password
+     *            The password
+     * @param username
+     *            The username, or null to skip the username rule
+     * @throws PasswordPolicyException
+     *             If the password is rejected
+     */
+    public void validate( CharSequence password, CharSequence username ) throws PasswordPolicyException {
+        CompiledPasswordPolicy policy = getCompiledPolicy();
+        raise( policy, offloadCheck( policy, password, username, null ) );
+    }
 }
@@ -0,0 +1,98 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+import edu.vt.middleware.password.CharacterCharacteristicsRule;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.Rule;
+import edu.vt.middleware.password.RuleResult;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * A {@link Rule} that checks a password as a {@link CharSequence}, so it
+ * never needs a {@link PasswordData} or an immutable copy of the password.
+ * {@link #accepts(CharSequence, CharSequence)} must create no objects, so a
+ * password that passes every rule costs no garbage; the details of a
+ * rejection are only built by
+ * {@link #addDetails(CharSequence, CharSequence, List)}.
+ */
+abstract class PastdevRule implements Rule {
+    /**
+     * Returns true if <code>password</code> passes this rule, without
+     * creating any objects.
+     *
+     * @param password
+     *            The password
+     * @param username
+     *            The username, or null if there is none
+     * @return True if the password passes
+     */
+    abstract boolean accepts( CharSequence password, CharSequence username );
+
+    /**
+     * Adds the reasons <code>password</code> fails this rule to
+     * <code>details</code>, adding none if it passes.
+     *
+     * @param password
+     *            The password
+     * @param username
+     *            The username, or null if there is none
+     * @param details
+     *            The list to add to
+     */
+    abstract void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details );
+
+    /**
+     * Returns the one detail reported for <code>password</code> when
+     * validation stops at this rule, or null if it passes. Rules that can
+     * build only that detail should, this builds them all.
+     *
+     * @param password
+     *            The password
+     * @param username
+     *            The username, or null if there is none
+     * @return The reported detail
+     */
+    RuleResultDetail getReportedDetail( CharSequence password, CharSequence username ) {
+        List<RuleResultDetail> details = new ArrayList<RuleResultDetail>();
+        addDetails( password, username, details );
+        return select( details );
+    }
+
+    /**
+     * Returns the detail whose message is reported for <code>details</code>:
+     * the {@link CharacterCharacteristicsRule#ERROR_CODE} detail if there is
+     * one, which summarizes the character details before it, otherwise the
+     * first.
+     *
+     * @param details
+     *            The details of a rejected password
+     * @return The reported detail, or null if there are none
+     */
+    static RuleResultDetail select( List<RuleResultDetail> details ) {
+        for ( RuleResultDetail detail : details ) {
+            if ( CharacterCharacteristicsRule.ERROR_CODE.equals( detail.getErrorCode() ) ) {
+                return detail;
+            }
+        }
+        return details.isEmpty() ? null : details.get( 0 );
+    }
+
+    @Override
+    public final RuleResult validate( PasswordData passwordData ) {
+        String password = passwordData.getPassword().getText();
+        String username = passwordData.getUsername();
+        if ( accepts( password, username ) ) {
+            return new RuleResult( true );
+        }
+
+        RuleResult result = new RuleResult( true );
+        addDetails( password, username, result.getDetails() );
+        result.setValid( result.getDetails().isEmpty() );
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Rejects passwords that lean on a pattern to satisfy the character rules:
+ * keyboard walks such as <code>Qwerty</code> or <code>1qaz</code>,
+ * alphabetical and numerical runs such as <code>abcd</code> or
+ * <code>9876</code>, and repeated characters such as <code>Aaaa</code>. Case
+ * is ignored. A keyboard walk is a run of keys each adjacent to the one
+ * before, on one of the layouts of {@link KeyboardAdjacency}, that does not
+ * turn straight back; otherwise a word like <code>were</code> would be one.
+ * <p>
+ * The password is scanned once, tracking all three kinds of run together,
+ * with no regular expressions and no objects created unless it is
+ * rejected. Each run as long as the limit is reported in full.
+ */
+final class PastdevSequenceRule extends PastdevRule {
+    static final String ERROR_CODE_ALPHABETICAL = "ILLEGAL_ALPHABETICAL_SEQUENCE";
+    static final String ERROR_CODE_KEYBOARD = "ILLEGAL_KEYBOARD_SEQUENCE";
+    static final String ERROR_CODE_NUMERICAL = "ILLEGAL_NUMERICAL_SEQUENCE";
+    static final String ERROR_CODE_REPEATED = "ILLEGAL_REPEATED_CHARACTERS";
+
+    private final int repeatLength;
+    private final int sequenceLength;
+
+    /**
+     * @param sequenceLength
+     *            The length from which walks and runs are rejected
+     * @param repeatLength
+     *            The number of repeats of a character that is rejected
+     */
+    PastdevSequenceRule( int sequenceLength, int repeatLength ) {
+        this.sequenceLength = sequenceLength;
+        this.repeatLength = repeatLength;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        return scan( password, null );
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        scan( password, details );
+    }
+
+    private static RuleResultDetail createRuleResultDetail( String errorCode, CharSequence password, int start,
+            int end ) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "sequence", password.subSequence( start, end ).toString() );
+        return new RuleResultDetail( errorCode, parameters );
+    }
+
+    private static char fold( char c ) {
+        if ( c < 128 ) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase( c );
+    }
+
+    /**
+     * Scans <code>password</code>. If <code>details</code> is null, returns
+     * false at the end of the first run that is too long, otherwise adds a
+     * detail for every such run and returns true. Each kind of run is
+     * checked when it ends, the end of the password ending them all.
+     */
+    private boolean scan( CharSequence password, List<RuleResultDetail> details ) {
+        int length = password.length();
+        if ( length == 0 ) {
+            return true;
+        }
+
+        int repeatStart = 0;
+        int sequenceStart = 0;
+        int sequenceStep = 0;
+        int walkStart = 0;
+        int walkLayouts = 0;
+        char beforePrevious = 0;
+        char previous = fold( password.charAt( 0 ) );
+        for ( int i = 1; i <= length; i++ ) {
+            boolean end = i == length;
+            char c = end ? 0 : fold( password.charAt( i ) );
+
+            if ( end || c != previous ) {
+                if ( i - repeatStart >= repeatLength ) {
+                    if ( details == null ) {
+                        return false;
+                    }
+                    details.add( createRuleResultDetail( ERROR_CODE_REPEATED, password, repeatStart, i ) );
+                }
+                repeatStart = i;
+            }
+
+            int step = end ? 0 : step( previous, c );
+            if ( step == 0 || (i - sequenceStart > 1 && step != sequenceStep) ) {
+                if ( i - sequenceStart >= sequenceLength ) {
+                    if ( details == null ) {
+                        return false;
+                    }
+                    details.add( createRuleResultDetail( previous <= '9' ? ERROR_CODE_NUMERICAL
+                            : ERROR_CODE_ALPHABETICAL, password, sequenceStart, i ) );
+                }
+                sequenceStart = step == 0 ? i : i - 1;
+            }
+            sequenceStep = step;
+
+            int layouts = end ? 0 : KeyboardAdjacency.adjacent( previous, c );
+            if ( layouts != 0 && i - walkStart > 1 && (walkLayouts & layouts) != 0 && c != beforePrevious ) {
+                walkLayouts &= layouts;
+            }
+            else {
+                if ( i - walkStart >= sequenceLength ) {
+                    if ( details == null ) {
+                        return false;
+                    }
+                    details.add( createRuleResultDetail( ERROR_CODE_KEYBOARD, password, walkStart, i ) );
+                }
+                walkStart = layouts == 0 ? i : i - 1;
+                walkLayouts = layouts;
+            }
+
+            beforePrevious = previous;
+            previous = c;
+        }
+        return true;
+    }
+
+    /**
+     * Returns 1 or -1 if <code>c</code> follows or precedes
+     * <code>previous</code> in the alphabet or among the digits, otherwise
+     * 0.
+     */
+    private static int step( char previous, char c ) {
+        int step = c - previous;
+        if ( (step != 1 && step != -1)
+                || !((c >= 'a' && c <= 'z' && previous >= 'a' && previous <= 'z')
+                || (c >= '0' && c <= '9' && previous >= '0' && previous <= '9')) ) {
+            return 0;
+        }
+        return step;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::sequenceLength=%s,repeatLength=%s", getClass().getName(), hashCode(),
+                sequenceLength, repeatLength );
+    }
+}
@@ -0,0 +1,50 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * Rejects passwords whose {@link StrengthEstimator} score is below a
+ * minimum, however many character classes they have. The estimate is
+ * bounded in work, so a long or adversarial password cannot stall the
+ * operation validating it.
+ */
+final class PastdevStrengthRule extends PastdevRule {
+    static final String ERROR_CODE = "INSUFFICIENT_STRENGTH";
+
+    private final StrengthEstimator estimator;
+    private final int minimumScore;
+
+    PastdevStrengthRule( StrengthEstimator estimator, int minimumScore ) {
+        this.estimator = estimator;
+        this.minimumScore = minimumScore;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        return estimator.score( password ) >= minimumScore;
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        int score = estimator.score( password );
+        if ( score < minimumScore ) {
+            Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+            parameters.put( "score", score );
+            parameters.put( "minimumScore", minimumScore );
+            details.add( new RuleResultDetail( ERROR_CODE, parameters ) );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::estimator=%s,minimumScore=%s", getClass().getName(), hashCode(),
+                estimator, minimumScore );
+    }
+}
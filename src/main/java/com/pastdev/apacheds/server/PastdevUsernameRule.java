@@ -0,0 +1,92 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+import edu.vt.middleware.password.UsernameRule;
+
+
+/**
+ * Replaces a {@link UsernameRule}, searching the password for the username
+ * in place rather than lower casing and reversing copies of both. Case is
+ * ignored one character at a time with {@link Character#toLowerCase(char)},
+ * so unlike {@link String#toLowerCase()} the default locale plays no part.
+ * The details are the same as the rule it replaces.
+ */
+final class PastdevUsernameRule extends PastdevRule {
+    private final boolean ignoreCase;
+    private final boolean matchBackwards;
+
+    PastdevUsernameRule( boolean matchBackwards, boolean ignoreCase ) {
+        this.matchBackwards = matchBackwards;
+        this.ignoreCase = ignoreCase;
+    }
+
+    @Override
+    boolean accepts( CharSequence password, CharSequence username ) {
+        return username == null
+                || (!contains( password, username, false )
+                && !(matchBackwards && contains( password, username, true )));
+    }
+
+    @Override
+    void addDetails( CharSequence password, CharSequence username, List<RuleResultDetail> details ) {
+        if ( username == null ) {
+            return;
+        }
+        String parameter = ignoreCase ? toLowerCase( username ) : username.toString();
+        if ( contains( password, username, false ) ) {
+            details.add( new RuleResultDetail( UsernameRule.ERROR_CODE,
+                    createRuleResultDetailParameters( parameter ) ) );
+        }
+        if ( matchBackwards && contains( password, username, true ) ) {
+            details.add( new RuleResultDetail( UsernameRule.ERROR_CODE_REVERSED,
+                    createRuleResultDetailParameters( parameter ) ) );
+        }
+    }
+
+    private boolean contains( CharSequence password, CharSequence username, boolean reversed ) {
+        int length = username.length();
+        for ( int start = 0, last = password.length() - length; start <= last; start++ ) {
+            int i = 0;
+            while ( i < length && matches( password.charAt( start + i ),
+                    username.charAt( reversed ? length - 1 - i : i ) ) ) {
+                i++;
+            }
+            if ( i == length ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, ?> createRuleResultDetailParameters( String username ) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "username", username );
+        return parameters;
+    }
+
+    private boolean matches( char passwordCharacter, char usernameCharacter ) {
+        return passwordCharacter == usernameCharacter
+                || (ignoreCase && Character.toLowerCase( passwordCharacter ) == Character.toLowerCase( usernameCharacter ));
+    }
+
+    private static String toLowerCase( CharSequence text ) {
+        // folded as matches() does, so the default locale plays no part
+        char[] lowerCase = new char[text.length()];
+        for ( int i = 0; i < lowerCase.length; i++ ) {
+            lowerCase[i] = Character.toLowerCase( text.charAt( i ) );
+        }
+        return new String( lowerCase );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::ignoreCase=%s,matchBackwards=%s",
+                getClass().getName(), hashCode(), ignoreCase, matchBackwards );
+    }
+}
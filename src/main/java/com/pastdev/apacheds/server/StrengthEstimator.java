@@ -0,0 +1,327 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+
+import com.pastdev.apacheds.server.dictionary.FrequencyTable;
+
+
+/**
+ * Estimates how many guesses a password would take, in the manner of
+ * <a href="https://github.com/dropbox/zxcvbn">zxcvbn</a>: the password is
+ * covered by the cheapest sequence of ranked words, repeats, alphabetical
+ * and numerical runs, keyboard walks, recent years and brute forced
+ * characters, found by dynamic programming over its positions. Estimates are
+ * in log10 of guesses, so costs add rather than multiply.
+ * <p>
+ * The work is bounded whatever the input: only the first
+ * {@link #MAX_LENGTH} characters are matched, each further character
+ * counting as brute forced, and a word is at most
+ * {@link FrequencyTable#MAX_WORD_LENGTH} steps of the trie from each
+ * position. Runs are found by one backward pass rather than from every
+ * position. The arrays of the search are reused per thread, so an estimate
+ * creates no objects.
+ */
+final class StrengthEstimator {
+    static final int MAX_LENGTH = 64;
+    static final int MAX_SCORE = 4;
+
+    // log10 of the guesses of each kind of match
+    private static final double BRUTEFORCE_CHARACTER = 1;
+    private static final double DOUBLED = Math.log10( 2 );
+    private static final double KEYBOARD_BRANCHING = Math.log10( 94 * 4.6 );
+    private static final double MINIMUM_SINGLE_CHARACTER = 1;
+    private static final double MINIMUM_MULTIPLE_CHARACTERS = Math.log10( 50 );
+    private static final double REPEAT_CHARACTER = Math.log10( 11 );
+    private static final int MINIMUM_RUN_LENGTH = 3;
+    private static final int MINIMUM_YEAR_SPACE = 20;
+    private static final double[] SCORE_THRESHOLDS = { 3, 6, 8, 10 };
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int referenceYear;
+    private final FrequencyTable table;
+
+    StrengthEstimator( FrequencyTable table ) {
+        this( table, Calendar.getInstance().get( Calendar.YEAR ) );
+    }
+
+    StrengthEstimator( FrequencyTable table, int referenceYear ) {
+        this.table = table;
+        this.referenceYear = referenceYear;
+    }
+
+    /**
+     * Returns log10 of the guesses needed for <code>password</code>.
+     *
+     * @param password
+     *            The password
+     * @return The estimated guesses, as a power of 10
+     */
+    double estimate( CharSequence password ) {
+        int length = password.length();
+        int bounded = Math.min( length, MAX_LENGTH );
+        Scratch scratch = SCRATCH.get();
+        double[] best = scratch.best;
+        findRuns( password, bounded, scratch );
+
+        best[0] = 0;
+        Arrays.fill( best, 1, bounded + 1, Double.POSITIVE_INFINITY );
+        for ( int i = 0; i < bounded; i++ ) {
+            double base = best[i];
+            relax( best, i + 1, base + BRUTEFORCE_CHARACTER );
+            matchWords( password, i, bounded, base, best );
+
+            int end = scratch.repeatEnds[i];
+            if ( end - i >= MINIMUM_RUN_LENGTH ) {
+                relax( best, end, base + REPEAT_CHARACTER + Math.log10( end - i ) );
+            }
+            end = scratch.sequenceEnds[i];
+            if ( end - i >= MINIMUM_RUN_LENGTH ) {
+                relax( best, end, base + sequenceGuesses( password, i, end ) );
+            }
+            end = scratch.walkEnds[i];
+            if ( end - i >= MINIMUM_RUN_LENGTH ) {
+                relax( best, end, base + KEYBOARD_BRANCHING + Math.log10( end - i - 1 ) );
+            }
+            if ( i + 4 <= bounded ) {
+                int year = year( password, i );
+                if ( year >= 0 ) {
+                    relax( best, i + 4, base
+                            + Math.log10( Math.max( Math.abs( year - referenceYear ), MINIMUM_YEAR_SPACE ) ) );
+                }
+            }
+        }
+        return best[bounded] + (length - bounded) * BRUTEFORCE_CHARACTER;
+    }
+
+    /**
+     * Records, for every position, where the repeat, the alphabetical or
+     * numerical run and the keyboard walk starting there end. Each is found
+     * from the one after it, so this is a single backward pass.
+     */
+    private static void findRuns( CharSequence password, int length, Scratch scratch ) {
+        if ( length == 0 ) {
+            return;
+        }
+        int[] repeatEnds = scratch.repeatEnds;
+        int[] sequenceEnds = scratch.sequenceEnds;
+        int[] walkEnds = scratch.walkEnds;
+        repeatEnds[length - 1] = length;
+        sequenceEnds[length - 1] = length;
+        walkEnds[length - 1] = length;
+        int nextStep = 0;
+        int nextLayouts = 0;
+        char next = FrequencyTable.fold( password.charAt( length - 1 ) );
+        char afterNext = 0;
+        for ( int i = length - 2; i >= 0; i-- ) {
+            char c = FrequencyTable.fold( password.charAt( i ) );
+            repeatEnds[i] = c == next ? repeatEnds[i + 1] : i + 1;
+
+            int step = step( c, next );
+            sequenceEnds[i] = step == 0
+                    ? i + 1
+                    : (nextStep == step ? sequenceEnds[i + 1] : i + 2);
+
+            // the layouts of a walk are only compared pairwise here
+            int layouts = KeyboardAdjacency.adjacent( c, next );
+            walkEnds[i] = layouts == 0
+                    ? i + 1
+                    : ((layouts & nextLayouts) != 0 && afterNext != c ? walkEnds[i + 1] : i + 2);
+
+            nextStep = step;
+            nextLayouts = layouts;
+            afterNext = next;
+            next = c;
+        }
+    }
+
+    /**
+     * Returns the letter that <code>c</code> commonly stands in for, or 0.
+     */
+    private static char l33t( char c ) {
+        switch ( c ) {
+            case '4':
+            case '@':
+                return 'a';
+            case '8':
+                return 'b';
+            case '(':
+                return 'c';
+            case '3':
+                return 'e';
+            case '6':
+            case '9':
+                return 'g';
+            case '1':
+            case '!':
+            case '|':
+                return 'i';
+            case '0':
+                return 'o';
+            case '5':
+            case '$':
+                return 's';
+            case '7':
+            case '+':
+                return 't';
+            case '2':
+                return 'z';
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Walks the trie from <code>start</code>, relaxing the end of every
+     * ranked word found. A character with no child is tried as the letter
+     * it stands in for, once, rather than branching.
+     */
+    private void matchWords( CharSequence password, int start, int length, double base, double[] best ) {
+        int state = FrequencyTable.ROOT;
+        int substitutions = 0;
+        int upper = 0;
+        boolean firstUpper = false;
+        int end = Math.min( length, start + FrequencyTable.MAX_WORD_LENGTH );
+        for ( int j = start; j < end; j++ ) {
+            char raw = password.charAt( j );
+            char c = FrequencyTable.fold( raw );
+            int next = table.next( state, c );
+            if ( next < 0 ) {
+                char letter = l33t( c );
+                if ( letter == 0 || (next = table.next( state, letter )) < 0 ) {
+                    return;
+                }
+                substitutions++;
+            }
+            if ( raw != c ) {
+                upper++;
+                firstUpper |= j == start;
+            }
+            state = next;
+
+            int rank = table.rank( state );
+            if ( rank > 0 ) {
+                int wordLength = j + 1 - start;
+                double guesses = Math.log10( rank )
+                        + uppercaseVariations( upper, wordLength - upper, firstUpper )
+                        + substitutions * DOUBLED;
+                relax( best, j + 1, base + Math.max( guesses,
+                        wordLength == 1 ? MINIMUM_SINGLE_CHARACTER : MINIMUM_MULTIPLE_CHARACTERS ) );
+            }
+        }
+    }
+
+    private static void relax( double[] best, int end, double cost ) {
+        if ( cost < best[end] ) {
+            best[end] = cost;
+        }
+    }
+
+    /**
+     * Returns the score of an estimate, from 0, too guessable, to
+     * {@link #MAX_SCORE}, very unguessable, on the scale of zxcvbn.
+     *
+     * @param estimate
+     *            The estimate, as a power of 10
+     * @return The score
+     */
+    static int score( double estimate ) {
+        int score = 0;
+        while ( score < SCORE_THRESHOLDS.length && estimate >= SCORE_THRESHOLDS[score] ) {
+            score++;
+        }
+        return score;
+    }
+
+    int score( CharSequence password ) {
+        return score( estimate( password ) );
+    }
+
+    /**
+     * Returns the guesses of the run from <code>start</code> to
+     * <code>end</code>: fewer if it starts where runs usually do, more if it
+     * runs backwards.
+     */
+    private static double sequenceGuesses( CharSequence password, int start, int end ) {
+        char first = FrequencyTable.fold( password.charAt( start ) );
+        int base;
+        if ( first == 'a' || first == 'z' || first == '0' || first == '1' || first == '9' ) {
+            base = 4;
+        }
+        else {
+            base = first <= '9' ? 10 : 26;
+        }
+        boolean descending = FrequencyTable.fold( password.charAt( start + 1 ) ) < first;
+        return Math.log10( base * (descending ? 2 : 1) * (end - start) );
+    }
+
+    private static int step( char c, char next ) {
+        int step = next - c;
+        if ( (step != 1 && step != -1)
+                || !((c >= 'a' && c <= 'z' && next >= 'a' && next <= 'z')
+                || (c >= '0' && c <= '9' && next >= '0' && next <= '9')) ) {
+            return 0;
+        }
+        return step;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::table=%s,referenceYear=%s", getClass().getName(), hashCode(), table,
+                referenceYear );
+    }
+
+    /**
+     * Returns the log10 of the ways to capitalize a word of
+     * <code>upper</code> upper and <code>lower</code> lower case letters:
+     * none for all lower case, one bit for an initial capital or all upper
+     * case, otherwise the choices of up to the smaller count of letters.
+     */
+    private static double uppercaseVariations( int upper, int lower, boolean firstUpper ) {
+        if ( upper == 0 ) {
+            return 0;
+        }
+        if ( lower == 0 || (upper == 1 && firstUpper) ) {
+            return DOUBLED;
+        }
+        int letters = upper + lower;
+        double variations = 0;
+        double choose = 1;
+        for ( int k = 1; k <= Math.min( upper, lower ); k++ ) {
+            choose = choose * (letters - k + 1) / k;
+            variations += choose;
+        }
+        return Math.log10( variations );
+    }
+
+    /**
+     * Returns the year 1900 to 2099 spelled by the four digits at
+     * <code>start</code>, or -1.
+     */
+    private static int year( CharSequence password, int start ) {
+        int year = 0;
+        for ( int i = start; i < start + 4; i++ ) {
+            char c = password.charAt( i );
+            if ( c < '0' || c > '9' ) {
+                return -1;
+            }
+            year = year * 10 + (c - '0');
+        }
+        return year >= 1900 && year <= 2099 ? year : -1;
+    }
+
+    private static final class Scratch {
+        private final double[] best = new double[MAX_LENGTH + 1];
+        private final int[] repeatEnds = new int[MAX_LENGTH];
+        private final int[] sequenceEnds = new int[MAX_LENGTH];
+        private final int[] walkEnds = new int[MAX_LENGTH];
+    }
+}
@@ -0,0 +1,152 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+import com.pastdev.apacheds.server.metrics.PasswordPolicyMetrics;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+/**
+ * A fixed pool of threads with a bounded queue that runs the costly rules
+ * of a validation away from the LDAP request threads. The number of
+ * validations running at once is bounded by the pool, the number waiting by
+ * the queue, and the time a request thread waits by a deadline. A
+ * validation the queue has no room for, or that misses its deadline, fails
+ * closed: the password is rejected with {@link #ERROR_CODE}, as accepting a
+ * password that was not checked would be worse than asking for it again.
+ */
+final class ValidationExecutor {
+    static final String ERROR_CODE = "VALIDATION_TIMEOUT";
+
+    private static final Logger logger = LoggerFactory.getLogger( ValidationExecutor.class );
+    private static final AtomicInteger pools = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final PasswordPolicyMetrics metrics;
+    private final int queueSize;
+    private final long timeoutMillis;
+
+    /**
+     * @param threads
+     *            The number of validations run at once
+     * @param queueSize
+     *            The number of validations that may wait for a thread
+     * @param timeoutMillis
+     *            The time from submitting a validation to its result,
+     *            waiting included, after which it fails
+     * @param metrics
+     *            Counts refused and timed out validations
+     */
+    ValidationExecutor( int threads, int queueSize, long timeoutMillis, PasswordPolicyMetrics metrics ) {
+        final int pool = pools.incrementAndGet();
+        this.executor = new ThreadPoolExecutor( threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>( queueSize ), new ThreadFactory() {
+                    private final AtomicInteger threads = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread( Runnable runnable ) {
+                        Thread thread = new Thread( runnable,
+                                "password-validator-" + pool + "-" + threads.incrementAndGet() );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+        this.queueSize = queueSize;
+        this.timeoutMillis = timeoutMillis;
+        this.metrics = metrics;
+        metrics.setOffloadQueue( executor.getQueue() );
+    }
+
+    /**
+     * Runs <code>check</code> on the pool and returns its result, or the
+     * timeout detail if it could not be run in time.
+     *
+     * @param check
+     *            Returns the detail reported for a password, or null
+     * @return The reported detail, or null if the password is accepted
+     * @throws PasswordPolicyException
+     *             If <code>check</code> throws it
+     */
+    RuleResultDetail check( Callable<RuleResultDetail> check ) throws PasswordPolicyException {
+        Future<RuleResultDetail> future;
+        try {
+            future = executor.submit( check );
+        }
+        catch ( RejectedExecutionException e ) {
+            metrics.recordOffloadRejection();
+            logger.warn( "Password validation refused, {} are waiting", executor.getQueue().size() );
+            return timedOut();
+        }
+
+        try {
+            return future.get( timeoutMillis, TimeUnit.MILLISECONDS );
+        }
+        catch ( TimeoutException e ) {
+            metrics.recordOffloadTimeout();
+            logger.warn( "Password validation timed out after {}ms", timeoutMillis );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof PasswordPolicyException ) {
+                throw (PasswordPolicyException) cause;
+            }
+            if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        // gives up its place in the queue if it never started; rules do not
+        // check for interrupts, so one that started runs to its end
+        future.cancel( true );
+        executor.remove( (Runnable) future );
+        return timedOut();
+    }
+
+    /**
+     * Returns true if this pool was built with these settings.
+     */
+    boolean hasSettings( int threads, int queueSize, long timeoutMillis ) {
+        return executor.getCorePoolSize() == threads && this.queueSize == queueSize
+                && this.timeoutMillis == timeoutMillis;
+    }
+
+    /**
+     * Stops the threads once the validations already submitted are done.
+     * The metrics keep reporting the queue until another pool replaces it.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private static RuleResultDetail timedOut() {
+        return new RuleResultDetail( ERROR_CODE, Collections.<String, Object> emptyMap() );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::threads=%s,queueSize=%s,timeoutMillis=%s", getClass().getName(), hashCode(),
+                executor.getMaximumPoolSize(), queueSize, timeoutMillis );
+    }
+}
@@ -16,7 +16,7 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InstanceLayout;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.factory.DefaultDirectoryServiceFactory;
-import org.apache.directory.server.core.partition.ldif.LdifPartition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import com.pastdev.apacheds.server.core.factory.ResourceExtractor.FileNamer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,19 +25,31 @@ import org.slf4j.LoggerFactory;
 public class ConfigDirectoryServiceFactory extends DefaultDirectoryServiceFactory {
     /** A logger for this class */
     private static final Logger logger = LoggerFactory.getLogger( ConfigDirectoryServiceFactory.class );
+    static final String CONFIG_ARCHIVE = "/META-INF/apacheds-config.zip";
+    static final String CONFIG_INDEX = "/META-INF/apacheds-config.index";
     private static final Pattern CONFIG_INDEX_ENTRY = Pattern.compile( "^[/\\\\]conf[/\\\\](.*)$" );
+    private static final String CONFIG_MANIFEST = ".apacheds-config.manifest";
 
     public ConfigDirectoryServiceFactory() {}
 
-    @Override
-    public void init( String name ) throws Exception {
-        super.init( name );
-        DirectoryService directoryService = getDirectoryService();
-
+    /**
+     * Creates the partition the configuration is read from. This writes the
+     * config LDIF resources to the instance's conf directory, and reads them
+     * back into an LDIF partition.
+     * 
+     * @param directoryService
+     *            The directory service being configured
+     * @return The config partition
+     * @throws Exception
+     *             If the partition cannot be created
+     */
+    protected AbstractBTreePartition createConfigPartition( DirectoryService directoryService ) throws Exception {
         InstanceLayout instanceLayout = directoryService.getInstanceLayout();
         final File configDirectory = instanceLayout.getConfDirectory();
         ResourceExtractor.extractResources()
-                .fromIndex( "/META-INF/apacheds-config.index" )
+                .fromIndex( CONFIG_INDEX )
+                .incrementally( new File( configDirectory, CONFIG_MANIFEST ) )
+                .inParallel( Runtime.getRuntime().availableProcessors() )
                 .to( new FileNamer() {
                     @Override
                     public File name( String name ) {
@@ -49,17 +61,88 @@ public class ConfigDirectoryServiceFactory extends DefaultDirectoryServiceFactor
                     }
                 } );
 
-        // get all interceptors from config.ldif
-        LdifPartition configPartition =
-                new ConfigPartitionInitializer(
-                        instanceLayout,
-                        directoryService.getDnFactory(),
-                        directoryService.getCacheService(),
-                        directoryService.getSchemaManager() )
-                        .initConfigPartition();
+        return new ConfigPartitionInitializer(
+                instanceLayout,
+                directoryService.getDnFactory(),
+                directoryService.getCacheService(),
+                directoryService.getSchemaManager() )
+                .initConfigPartition();
+    }
+
+    /**
+     * Returns the folder snapshots of the config are kept in, or null, as
+     * by default, to read the config on every start. A snapshot is only used
+     * for the exact config it was written from, so one folder can be shared
+     * by any number of servers and configs run by the same user. The folder
+     * is created private to that user, and one that is not is refused, as
+     * reading a snapshot runs what it holds; one under the instance layout
+     * will do, for example
+     * <code>new File( directoryService.getInstanceLayout().getCacheDirectory(), "config-snapshots" )</code>.
+     * <p>
+     * A start that reads a snapshot skips {@link #createConfigPartition(DirectoryService)},
+     * so neither writes the config to the instance's conf directory nor
+     * reads anything changed there. Snapshots are not used by a subclass
+     * that overrides {@link #createConfigPartition(DirectoryService)}, as
+     * they could not tell its config from the one written here.
+     * 
+     * @param directoryService
+     *            The directory service being configured
+     * @return The snapshot folder, or null
+     */
+    protected File getConfigSnapshotDirectory( DirectoryService directoryService ) {
+        return null;
+    }
+
+    /**
+     * Returns true if a subclass replaces how the config partition is
+     * created.
+     */
+    private boolean isConfigPartitionOverridden() {
+        for ( Class<?> type = getClass(); type != ConfigDirectoryServiceFactory.class; type = type.getSuperclass() ) {
+            try {
+                type.getDeclaredMethod( "createConfigPartition", DirectoryService.class );
+                return true;
+            }
+            catch ( NoSuchMethodException e ) {
+                // not this one
+            }
+        }
+        return false;
+    }
+
+    private DirectoryServiceBean readDirectoryServiceBean( DirectoryService directoryService ) throws Exception {
+        File snapshotDirectory = getConfigSnapshotDirectory( directoryService );
+        if ( snapshotDirectory != null && isConfigPartitionOverridden() ) {
+            logger.debug( "not snapshotting config, {} creates its own config partition", getClass().getName() );
+            snapshotDirectory = null;
+        }
+        ConfigSnapshot snapshot = snapshotDirectory == null
+                ? null
+                : ConfigSnapshot.forIndex( CONFIG_INDEX, snapshotDirectory );
+        if ( snapshot != null ) {
+            DirectoryServiceBean directoryServiceBean = snapshot.read();
+            if ( directoryServiceBean != null ) {
+                return directoryServiceBean;
+            }
+        }
+
+        AbstractBTreePartition configPartition = createConfigPartition( directoryService );
         ConfigBean configBean = new ConfigPartitionReader( configPartition )
                 .readConfig();
         DirectoryServiceBean directoryServiceBean = configBean.getDirectoryServiceBean();
+        if ( snapshot != null ) {
+            snapshot.write( directoryServiceBean );
+        }
+        return directoryServiceBean;
+    }
+
+    @Override
+    public void init( String name ) throws Exception {
+        super.init( name );
+        DirectoryService directoryService = getDirectoryService();
+
+        // get all interceptors from config.ldif, or the snapshot of it
+        DirectoryServiceBean directoryServiceBean = readDirectoryServiceBean( directoryService );
         List<Interceptor> interceptors = ServiceBuilder
                 .createInterceptors( directoryServiceBean.getInterceptors() );
         for ( Interceptor interceptor : interceptors ) {
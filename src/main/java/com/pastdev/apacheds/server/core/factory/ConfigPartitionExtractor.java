@@ -0,0 +1,126 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Parses extracted LDIF resources into the entries of an in memory config
+ * partition, for {@link org.apache.directory.server.config.ConfigPartitionReader}
+ * to read without writing the config to disk and reading it back. Entries
+ * are collected as resources are extracted, in whatever order, and added to
+ * the partition parents first when it is created. Safe to extract with in
+ * parallel.
+ */
+public final class ConfigPartitionExtractor implements ResourceExtractor.Extractor {
+    private static final Logger logger = LoggerFactory.getLogger( ConfigPartitionExtractor.class );
+    private static final String CONFIG_PARTITION_ID = "config";
+    private static final String CONFIG_PARTITION_SUFFIX = "ou=config";
+
+    private final CacheService cacheService;
+    private final DnFactory dnFactory;
+    private final List<Entry> entries = Collections.synchronizedList( new ArrayList<Entry>() );
+    private final SchemaManager schemaManager;
+
+    public ConfigPartitionExtractor( SchemaManager schemaManager, DnFactory dnFactory, CacheService cacheService ) {
+        this.schemaManager = schemaManager;
+        this.dnFactory = dnFactory;
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * Creates and initializes a partition holding the entries extracted so
+     * far. Like the LDIF config partition, entries without an entryUUID or
+     * entryCSN are given one.
+     *
+     * @return The config partition
+     * @throws Exception
+     *             If the partition cannot be initialized or an entry added
+     */
+    public AvlPartition createPartition() throws Exception {
+        AvlPartition partition = new AvlPartition( schemaManager, dnFactory );
+        partition.setId( CONFIG_PARTITION_ID );
+        partition.setSuffixDn( new Dn( schemaManager, CONFIG_PARTITION_SUFFIX ) );
+        partition.setSchemaManager( schemaManager );
+        partition.setCacheService( cacheService );
+        partition.initialize();
+
+        List<Entry> sorted;
+        synchronized ( entries ) {
+            sorted = new ArrayList<>( entries );
+        }
+        Collections.sort( sorted, new Comparator<Entry>() {
+            @Override
+            public int compare( Entry first, Entry second ) {
+                return Integer.compare( first.getDn().size(), second.getDn().size() );
+            }
+        } );
+
+        CsnFactory csnFactory = new CsnFactory( 0 );
+        for ( Entry entry : sorted ) {
+            if ( !entry.containsAttribute( SchemaConstants.ENTRY_CSN_AT ) ) {
+                entry.put( SchemaConstants.ENTRY_CSN_AT, csnFactory.newInstance().toString() );
+            }
+            if ( !entry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) ) {
+                entry.put( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+            }
+            logger.trace( "adding [{}]", entry.getDn() );
+            partition.add( new AddOperationContext( null, entry ) );
+        }
+        return partition;
+    }
+
+    @Override
+    public void extract( String name, InputStream contents ) throws IOException {
+        List<LdifEntry> ldifEntries;
+        try (LdifReader reader = new LdifReader()) {
+            ldifEntries = reader.parseLdif(
+                    new BufferedReader( new InputStreamReader( contents, StandardCharsets.UTF_8 ) ) );
+        }
+        catch ( LdapException e ) {
+            throw new IOException( "Unable to parse [" + name + "]", e );
+        }
+
+        List<Entry> parsed = new ArrayList<>( ldifEntries.size() );
+        for ( LdifEntry ldifEntry : ldifEntries ) {
+            try {
+                parsed.add( new DefaultEntry( schemaManager, ldifEntry.getEntry() ) );
+            }
+            catch ( LdapException e ) {
+                throw new IOException( "Unable to parse [" + ldifEntry.getDn() + "] in [" + name + "]", e );
+            }
+        }
+        entries.addAll( parsed );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::entries=%s", getClass().getName(), hashCode(), entries.size() );
+    }
+}
@@ -0,0 +1,359 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import java.beans.DefaultPersistenceDelegate;
+import java.beans.Encoder;
+import java.beans.ExceptionListener;
+import java.beans.Expression;
+import java.beans.PersistenceDelegate;
+import java.beans.Statement;
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.CodeSource;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.config.beans.DirectoryServiceBean;
+import org.apache.directory.server.config.beans.HashInterceptorBean;
+import org.apache.directory.server.config.beans.KdcServerBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A snapshot of the {@link DirectoryServiceBean} read from a config, so
+ * later starts can skip extracting the config, loading it into a partition
+ * and reading the beans back out of it. A snapshot is keyed by a hash of
+ * the config index, which holds the hash of every config file, along with
+ * the snapshot format and the config beans' jar, so changing any config
+ * file, or upgrading the server, leads to a new snapshot rather than a
+ * stale one.
+ * <p>
+ * The beans are written with {@link XMLEncoder}, compressed. As that only
+ * keeps what the beans expose as properties, a snapshot is only written if
+ * decoding it gives back beans that describe themselves as the originals do.
+ * <p>
+ * Decoding a snapshot runs whatever it says to, so snapshots are only kept
+ * in a folder private to the user the server runs as, which this creates,
+ * or refuses to use if anyone else could write to it, and each carries an
+ * HMAC-SHA256 under a key kept in that folder, which is checked before it is
+ * decoded. A file system without POSIX permissions, where privacy cannot be
+ * checked, gets no snapshots.
+ */
+final class ConfigSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger( ConfigSnapshot.class );
+    private static final String KEY_FILE = "snapshot.key";
+    private static final int KEY_LENGTH = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString( "rwx------" );
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final byte[] key;
+
+    private ConfigSnapshot( File file, byte[] key ) {
+        this.file = file;
+        this.key = key;
+    }
+
+    private static DirectoryServiceBean decode( byte[] snapshot ) throws IOException {
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        try (XMLDecoder decoder = new XMLDecoder( new GZIPInputStream( new ByteArrayInputStream( snapshot ) ),
+                null, new ExceptionListener() {
+                    @Override
+                    public void exceptionThrown( Exception e ) {
+                        failure.compareAndSet( null, e );
+                    }
+                }, ConfigSnapshot.class.getClassLoader() )) {
+            Object bean = decoder.readObject();
+            if ( failure.get() != null ) {
+                throw new IOException( "Unable to decode snapshot", failure.get() );
+            }
+            if ( !(bean instanceof DirectoryServiceBean) ) {
+                throw new IOException( "Snapshot does not hold a DirectoryServiceBean" );
+            }
+            return (DirectoryServiceBean) bean;
+        }
+        catch ( ArrayIndexOutOfBoundsException e ) {
+            // XMLDecoder's way of saying there was nothing to read
+            throw new IOException( "Snapshot is empty", e );
+        }
+    }
+
+    private static byte[] encode( DirectoryServiceBean bean ) throws IOException {
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try (XMLEncoder encoder = new XMLEncoder( new GZIPOutputStream( snapshot ) )) {
+            encoder.setExceptionListener( new ExceptionListener() {
+                @Override
+                public void exceptionThrown( Exception e ) {
+                    failure.compareAndSet( null, e );
+                }
+            } );
+            encoder.setPersistenceDelegate( Dn.class, new PersistenceDelegate() {
+                @Override
+                protected Expression instantiate( Object oldInstance, Encoder out ) {
+                    return new Expression( oldInstance, Dn.class, "new",
+                            new Object[] { new String[] { ((Dn) oldInstance).getName() } } );
+                }
+            } );
+            encoder.setPersistenceDelegate( HashInterceptorBean.class,
+                    new AddingPersistenceDelegate( "getHashAttributes", "addHashAttributes" ) );
+            encoder.setPersistenceDelegate( KdcServerBean.class,
+                    new AddingPersistenceDelegate( "getKrbEncryptionTypes", "addKrbEncryptionTypes" ) );
+            encoder.writeObject( bean );
+        }
+        if ( failure.get() != null ) {
+            throw new IOException( "Unable to encode snapshot", failure.get() );
+        }
+        return snapshot.toByteArray();
+    }
+
+    /**
+     * Returns the snapshot for the config listed by <code>indexName</code>,
+     * or null if the index does not hold the hash of every file, as one
+     * written by hand does not, as then a changed file could not be told
+     * from an unchanged one, or if <code>directory</code> is not private.
+     *
+     * @param indexName
+     *            The config index resource
+     * @param directory
+     *            The folder snapshots are kept in, created if need be
+     * @return The snapshot, which need not exist yet, or null
+     * @throws IOException
+     *             If the index, or the folder, cannot be read
+     */
+    static ConfigSnapshot forIndex( String indexName, File directory ) throws IOException {
+        ByteArrayOutputStream key = new ByteArrayOutputStream();
+        CodeSource beans = DirectoryServiceBean.class.getProtectionDomain().getCodeSource();
+        key.write( (VERSION + "\n" + (beans == null ? null : beans.getLocation()) + "\n")
+                .getBytes( StandardCharsets.UTF_8 ) );
+        try (InputStream index = ConfigSnapshot.class.getResourceAsStream( indexName )) {
+            if ( index == null ) {
+                return null;
+            }
+            ResourceExtractor.copy( index, key );
+        }
+
+        for ( ResourceIndex.Entry entry : new ResourceExtractor.IndexSource( indexName ).entries() ) {
+            if ( entry.getHash() == null ) {
+                logger.debug( "not snapshotting config, [{}] has no hash for [{}]", indexName, entry.getName() );
+                return null;
+            }
+        }
+
+        Path folder = directory.toPath().toAbsolutePath();
+        if ( !isPrivate( folder ) ) {
+            return null;
+        }
+        return new ConfigSnapshot( new File( folder.toFile(), ResourceExtractor.Manifest.hash( key.toByteArray() )
+                + ".xml.gz" ), readKey( folder ) );
+    }
+
+    /**
+     * Creates <code>directory</code> open only to the user this process runs
+     * as, or checks that it already is: a folder, not a link, owned by that
+     * user, which nobody else may read, write or search.
+     */
+    private static boolean isPrivate( Path directory ) throws IOException {
+        if ( !directory.getFileSystem().supportedFileAttributeViews().contains( "posix" ) ) {
+            logger.warn( "Not snapshotting config, [{}] does not support POSIX permissions", directory );
+            return false;
+        }
+        if ( Files.notExists( directory, LinkOption.NOFOLLOW_LINKS ) ) {
+            Files.createDirectories( directory.getParent() );
+            try {
+                Files.createDirectory( directory, PosixFilePermissions.asFileAttribute( OWNER_ONLY ) );
+            }
+            catch ( FileAlreadyExistsException e ) {
+                // created by another server starting alongside, checked below
+            }
+        }
+
+        PosixFileAttributes attributes = Files.readAttributes( directory, PosixFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS );
+        UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName( System.getProperty( "user.name" ) );
+        if ( !attributes.isDirectory() || !attributes.owner().equals( user )
+                || !OWNER_ONLY.containsAll( attributes.permissions() ) ) {
+            logger.warn( "Not snapshotting config, [{}] is not a folder private to [{}]", directory, user.getName() );
+            return false;
+        }
+        return true;
+    }
+
+    private byte[] mac( byte[] bytes, int offset, int length ) throws IOException {
+        try {
+            Mac mac = Mac.getInstance( MAC_ALGORITHM );
+            mac.init( new SecretKeySpec( key, MAC_ALGORITHM ) );
+            mac.update( bytes, offset, length );
+            return mac.doFinal();
+        }
+        catch ( GeneralSecurityException e ) {
+            throw new IOException( "Unable to sign snapshot", e );
+        }
+    }
+
+    /**
+     * Returns the key snapshots in <code>directory</code> are signed with,
+     * making one if there is none yet. Two servers starting alongside may
+     * each make one; the key read back is the one that won, and a snapshot
+     * signed with the other only fails its check and is written again.
+     */
+    private static byte[] readKey( Path directory ) throws IOException {
+        Path keyFile = directory.resolve( KEY_FILE );
+        if ( Files.notExists( keyFile, LinkOption.NOFOLLOW_LINKS ) ) {
+            byte[] key = new byte[KEY_LENGTH];
+            new SecureRandom().nextBytes( key );
+            Path temp = Files.createTempFile( directory, KEY_FILE, ".tmp", PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString( "rw-------" ) ) );
+            try {
+                Files.write( temp, key );
+                Files.move( temp, keyFile );
+            }
+            catch ( FileAlreadyExistsException e ) {
+                // made by another server starting alongside
+            }
+            finally {
+                Files.deleteIfExists( temp );
+            }
+        }
+
+        if ( !Files.isRegularFile( keyFile, LinkOption.NOFOLLOW_LINKS ) ) {
+            throw new IOException( "Snapshot key " + keyFile + " is not a file" );
+        }
+        byte[] key = Files.readAllBytes( keyFile );
+        if ( key.length != KEY_LENGTH ) {
+            throw new IOException( "Snapshot key " + keyFile + " is not " + KEY_LENGTH + " bytes" );
+        }
+        return key;
+    }
+
+    /**
+     * Reads the snapshot. One that cannot be read, or whose signature does
+     * not check out, is deleted, to be written again.
+     *
+     * @return The beans, or null if there is no usable snapshot
+     */
+    DirectoryServiceBean read() {
+        if ( !file.exists() ) {
+            return null;
+        }
+        try {
+            byte[] signed = Files.readAllBytes( file.toPath() );
+            if ( signed.length < MAC_LENGTH || !MessageDigest.isEqual( Arrays.copyOf( signed, MAC_LENGTH ),
+                    mac( signed, MAC_LENGTH, signed.length - MAC_LENGTH ) ) ) {
+                throw new IOException( "Snapshot signature does not match" );
+            }
+            DirectoryServiceBean bean = decode( Arrays.copyOfRange( signed, MAC_LENGTH, signed.length ) );
+            logger.debug( "read config snapshot [{}]", file );
+            return bean;
+        }
+        catch ( IOException | RuntimeException e ) {
+            logger.warn( "Ignoring unreadable config snapshot [{}]: {}", file, e.toString() );
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of <code>bean</code>, unless it does not survive
+     * being written and read back. Failing to write a snapshot only costs
+     * the next start the time it would have saved, so is logged rather than
+     * thrown.
+     *
+     * @param bean
+     *            The beans read from the config
+     */
+    void write( DirectoryServiceBean bean ) {
+        try {
+            byte[] snapshot = encode( bean );
+            if ( !bean.toString().equals( decode( snapshot ).toString() ) ) {
+                logger.info( "Not snapshotting config, it does not survive being read back" );
+                return;
+            }
+
+            // written aside and moved over, so another server starting from
+            // the same config never reads half a snapshot
+            Path temp = Files.createTempFile( file.getParentFile().toPath(), file.getName(), ".tmp" );
+            try {
+                try (OutputStream outputStream = Files.newOutputStream( temp )) {
+                    outputStream.write( mac( snapshot, 0, snapshot.length ) );
+                    outputStream.write( snapshot );
+                }
+                Files.move( temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            finally {
+                Files.deleteIfExists( temp );
+            }
+            logger.debug( "wrote config snapshot [{}]", file );
+        }
+        catch ( IOException | RuntimeException e ) {
+            logger.warn( "Unable to write config snapshot [{}]: {}", file, e.toString() );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::file=%s", getClass().getName(), hashCode(), file );
+    }
+
+    /**
+     * Writes a bean's properties and then, for a collection of strings the
+     * bean only lets be added to, a call adding its contents.
+     */
+    private static final class AddingPersistenceDelegate extends DefaultPersistenceDelegate {
+        private final String adder;
+        private final String getter;
+
+        private AddingPersistenceDelegate( String getter, String adder ) {
+            this.getter = getter;
+            this.adder = adder;
+        }
+
+        @Override
+        protected void initialize( Class<?> type, Object oldInstance, Object newInstance, Encoder out ) {
+            super.initialize( type, oldInstance, newInstance, out );
+            try {
+                Collection<?> values = (Collection<?>) new Expression( oldInstance, getter, null ).getValue();
+                if ( values != null && !values.isEmpty() ) {
+                    out.writeStatement( new Statement( oldInstance, adder,
+                            new Object[] { values.toArray( new String[values.size()] ) } ) );
+                }
+            }
+            catch ( Exception e ) {
+                out.getExceptionListener().exceptionThrown( e );
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+
+
+/**
+ * A {@link ConfigDirectoryServiceFactory} that parses the config LDIF
+ * resources straight into an in memory partition rather than writing them to
+ * the instance's conf directory first, for short lived servers that have no
+ * use for a config on disk. The config is read from the single archive
+ * bundling it where there is one, and from the resources listed by the
+ * index otherwise.
+ */
+public class InMemoryConfigDirectoryServiceFactory extends ConfigDirectoryServiceFactory {
+    public InMemoryConfigDirectoryServiceFactory() {}
+
+    @Override
+    protected AbstractBTreePartition createConfigPartition( DirectoryService directoryService ) throws Exception {
+        ConfigPartitionExtractor extractor = new ConfigPartitionExtractor(
+                directoryService.getSchemaManager(),
+                directoryService.getDnFactory(),
+                directoryService.getCacheService() );
+        ResourceExtractor resourceExtractor = ResourceExtractor.extractResources();
+        if ( getClass().getResource( CONFIG_ARCHIVE ) == null ) {
+            resourceExtractor.fromIndex( CONFIG_INDEX )
+                    .inParallel( Runtime.getRuntime().availableProcessors() );
+        }
+        else {
+            resourceExtractor.fromArchive( CONFIG_ARCHIVE );
+        }
+        resourceExtractor.using( extractor );
+        return extractor.createPartition();
+    }
+}
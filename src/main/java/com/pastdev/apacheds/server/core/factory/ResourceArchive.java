@@ -0,0 +1,75 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Writes a tree of resources into a single zip archive, to be read through
+ * once by {@link ResourceExtractor.ArchiveSource} rather than looked up one
+ * resource at a time. Entries are named relative to the root of the class
+ * path, as the resources would be, and written in name order.
+ */
+public final class ResourceArchive {
+    private ResourceArchive() {}
+
+    /**
+     * Writes an archive of the files under <code>paths</code>.
+     *
+     * @param root
+     *            The folder the entry names are relative to
+     * @param paths
+     *            The files and folders, relative to <code>root</code>, to
+     *            archive
+     * @param archive
+     *            The archive to write
+     * @throws IOException
+     *             If a file cannot be read or the archive written
+     */
+    public static void generate( Path root, List<String> paths, Path archive ) throws IOException {
+        List<String> names = ResourceIndex.list( root, paths );
+        if ( archive.getParent() != null ) {
+            Files.createDirectories( archive.getParent() );
+        }
+        try (ZipOutputStream out = new ZipOutputStream(
+                new BufferedOutputStream( Files.newOutputStream( archive ) ) )) {
+            out.setLevel( 9 );
+            for ( String name : names ) {
+                Path file = root.resolve( name );
+                ZipEntry entry = new ZipEntry( name );
+                entry.setTime( Files.getLastModifiedTime( file ).toMillis() );
+                out.putNextEntry( entry );
+                Files.copy( file, out );
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Generates an archive at build time.
+     *
+     * <pre>
+     * ResourceArchive &lt;root&gt; &lt;archive&gt; &lt;path&gt;...
+     * </pre>
+     *
+     * @param args
+     *            The folder entry names are relative to, the archive to
+     *            write, and the files and folders to archive
+     * @throws IOException
+     *             If a file cannot be read or the archive written
+     */
+    public static void main( String[] args ) throws IOException {
+        if ( args.length < 3 ) {
+            throw new IllegalArgumentException( "usage: ResourceArchive <root> <archive> <path>..." );
+        }
+        generate( Paths.get( args[0] ), Arrays.asList( args ).subList( 2, args.length ), Paths.get( args[1] ) );
+    }
+}
@@ -1,20 +1,55 @@
 package com.pastdev.apacheds.server.core.factory;
 
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 
 import org.slf4j.Logger;
@@ -23,8 +58,17 @@ import org.slf4j.LoggerFactory;
 
 public class ResourceExtractor {
     private static final Logger logger = LoggerFactory.getLogger( ResourceExtractor.class );
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect( 16 * 1024 );
+        }
+    };
 
+    private boolean links;
+    private File manifest;
     private Source source;
+    private int threads = 1;
 
     private ResourceExtractor() {}
 
@@ -41,7 +85,8 @@ public class ResourceExtractor {
         ReadableByteChannel in = Channels.newChannel( from );
         WritableByteChannel out = Channels.newChannel( to );
 
-        final ByteBuffer buffer = ByteBuffer.allocateDirect( 16 * 1024 );
+        final ByteBuffer buffer = buffers.get();
+        buffer.clear();
         while ( in.read( buffer ) != -1 ) {
             buffer.flip();
             out.write( buffer );
@@ -54,11 +99,255 @@ public class ResourceExtractor {
     }
 
     private void extract( Extractor extractor ) throws IOException {
-        for ( String resource : source.resourceNames() ) {
-            logger.trace( "extracting [{}] using [{}]", resource, extractor );
-            try (InputStream contents = getClass().getResourceAsStream( resource )) {
+        if ( source instanceof ArchiveSource ) {
+            ((ArchiveSource) source).extract( extractor );
+            return;
+        }
+        extract( extractor, resourceNames() );
+    }
+
+    /**
+     * Looks up the first resource only, and takes the rest to live in the
+     * same place. If that is a jar, it is opened once and each resource is
+     * looked up in its central directory. If that is a folder, the
+     * resources are read from it as files. Resources not found there are
+     * looked up one at a time.
+     */
+    private void extract( Extractor extractor, List<String> resources ) throws IOException {
+        if ( resources.isEmpty() ) {
+            return;
+        }
+
+        Path root = null;
+        String first = resources.get( 0 );
+        URL location = getClass().getResource( first );
+        if ( location != null && first.startsWith( "/" ) ) {
+            if ( "jar".equals( location.getProtocol() ) ) {
+                resources = extractFromJar( extractor, location, resources );
+            }
+            else if ( "file".equals( location.getProtocol() ) ) {
+                root = root( location, first );
+            }
+        }
+
+        if ( threads > 1 && resources.size() > 1 ) {
+            extractInParallel( extractor, resources, root );
+            return;
+        }
+        for ( String resource : resources ) {
+            extract( extractor, resource, root );
+        }
+    }
+
+    private void extract( Extractor extractor, String resource, Path root ) throws IOException {
+        logger.trace( "extracting [{}] using [{}]", resource, extractor );
+        Path file = root == null || !resource.startsWith( "/" )
+                ? null
+                : root.resolve( resource.substring( 1 ) );
+        if ( file != null && Files.isRegularFile( file ) ) {
+            if ( extractor instanceof FileExtractor ) {
+                ((FileExtractor) extractor).extract( resource, file );
+                return;
+            }
+            try (InputStream contents = Files.newInputStream( file )) {
                 extractor.extract( resource, contents );
             }
+            return;
+        }
+        try (InputStream contents = getClass().getResourceAsStream( resource )) {
+            extractor.extract( resource, contents );
+        }
+    }
+
+    /**
+     * Extracts the entries of <code>archive</code> in the order it holds
+     * them.
+     */
+    private static void extractEntries( InputStream archive, Extractor extractor, Object from )
+            throws IOException {
+        try (ZipInputStream in = new ZipInputStream( new BufferedInputStream( archive ) )) {
+            // the extractor must not close the archive along with the entry
+            InputStream contents = new FilterInputStream( in ) {
+                @Override
+                public void close() {}
+            };
+            ZipEntry entry;
+            while ( (entry = in.getNextEntry()) != null ) {
+                String resource = "/" + entry.getName();
+                if ( !entry.isDirectory() ) {
+                    logger.trace( "extracting [{}] from [{}] using [{}]", resource, from, extractor );
+                    extractor.extract( resource, contents );
+                }
+            }
+        }
+    }
+
+    private void extractFiles( FileExtractor extractor ) throws IOException {
+        extractor.links = links;
+        if ( source instanceof ArchiveSource ) {
+            // the names only come with the contents, so neither the folders
+            // nor what is unchanged can be worked out beforehand
+            extractFiles( extractor, null, null );
+            return;
+        }
+
+        List<String> resources;
+        Map<String, ResourceIndex.Entry> indexed = new HashMap<>();
+        if ( source instanceof IndexSource ) {
+            resources = new ArrayList<>();
+            for ( ResourceIndex.Entry entry : ((IndexSource) source).entries() ) {
+                resources.add( entry.getName() );
+                if ( entry.getHash() != null ) {
+                    indexed.put( entry.getName(), entry );
+                }
+            }
+        }
+        else {
+            resources = resourceNames();
+        }
+        extractor.createFolders( resources );
+        extractFiles( extractor, resources, indexed );
+    }
+
+    private void extractFiles( FileExtractor extractor, List<String> resources,
+            Map<String, ResourceIndex.Entry> indexed ) throws IOException {
+        if ( manifest == null ) {
+            if ( resources == null ) {
+                extract( extractor );
+            }
+            else {
+                extract( extractor, resources );
+            }
+            return;
+        }
+
+        Manifest previous = Manifest.load( manifest );
+        extractor.previous = previous;
+        extractor.current = new Manifest();
+        if ( resources == null ) {
+            extract( extractor );
+        }
+        else {
+            extract( extractor, extractor.changed( resources, indexed ) );
+        }
+
+        // whatever the previous run extracted that this one did not is stale
+        int removed = 0;
+        for ( String path : previous.paths() ) {
+            if ( Files.deleteIfExists( new File( path ).toPath() ) ) {
+                removed++;
+            }
+        }
+        if ( extractor.written.get() > 0 || removed > 0 || !previous.paths().isEmpty() || !manifest.exists() ) {
+            extractor.current.save( manifest );
+        }
+        logger.debug( "extracted [{}], unchanged [{}], removed [{}] using [{}]",
+                extractor.written, extractor.unchanged, removed, manifest );
+    }
+
+    /**
+     * Opens the jar holding <code>location</code> and extracts the entries
+     * that are among <code>resources</code>, in their order. Each is found
+     * through the jar's central directory, so entries that are not wanted
+     * are neither read nor inflated.
+     * 
+     * @return The resources not found in the jar
+     */
+    private List<String> extractFromJar( Extractor extractor, URL location, List<String> resources )
+            throws IOException {
+        Path jar;
+        try {
+            URL jarFile = ((JarURLConnection) location.openConnection()).getJarFileURL();
+            if ( !"file".equals( jarFile.getProtocol() ) ) {
+                return resources;
+            }
+            jar = Paths.get( jarFile.toURI() );
+        }
+        catch ( URISyntaxException e ) {
+            return resources;
+        }
+
+        List<String> remaining = new ArrayList<>();
+        try (JarFile jarFile = new JarFile( jar.toFile() )) {
+            for ( String resource : resources ) {
+                JarEntry entry = resource.startsWith( "/" ) ? jarFile.getJarEntry( resource.substring( 1 ) ) : null;
+                if ( entry == null || entry.isDirectory() ) {
+                    remaining.add( resource );
+                    continue;
+                }
+                logger.trace( "extracting [{}] from [{}] using [{}]", resource, jar, extractor );
+                try (InputStream contents = jarFile.getInputStream( entry )) {
+                    extractor.extract( resource, contents );
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Runs <code>threads</code> workers that take resources from the source
+     * in turn until it is exhausted or one of them fails. The first failure
+     * stops the others taking more, and is thrown once those already
+     * started are done, so nothing is written after this returns.
+     */
+    private void extractInParallel( final Extractor extractor, final List<String> resources, final Path root )
+            throws IOException {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        int workers = Math.min( threads, resources.size() );
+        ExecutorService executor = Executors.newFixedThreadPool( workers, new ThreadFactory() {
+            private final AtomicInteger threads = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable runnable ) {
+                Thread thread = new Thread( runnable, "resource-extractor-" + threads.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        try {
+            List<Future<?>> futures = new ArrayList<>( workers );
+            for ( int i = 0; i < workers; i++ ) {
+                futures.add( executor.submit( new Runnable() {
+                    @Override
+                    public void run() {
+                        int index;
+                        while ( failure.get() == null && (index = next.getAndIncrement()) < resources.size() ) {
+                            try {
+                                extract( extractor, resources.get( index ), root );
+                            }
+                            catch ( IOException | RuntimeException | Error e ) {
+                                failure.compareAndSet( null, e );
+                            }
+                        }
+                    }
+                } ) );
+            }
+            for ( Future<?> future : futures ) {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet( null, new InterruptedIOException( "Interrupted extracting resources" ) );
+        }
+        catch ( ExecutionException e ) {
+            // workers catch what extraction throws, so this is unexpected
+            failure.compareAndSet( null, e.getCause() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Throwable cause = failure.get();
+        if ( cause instanceof IOException ) {
+            throw (IOException) cause;
+        }
+        else if ( cause instanceof RuntimeException ) {
+            throw (RuntimeException) cause;
+        }
+        else if ( cause instanceof Error ) {
+            throw (Error) cause;
         }
     }
 
@@ -66,6 +355,12 @@ public class ResourceExtractor {
         return new ResourceExtractor();
     }
 
+    public ResourceExtractor fromArchive( String archiveName ) {
+        checkSource( false );
+        this.source = new ArchiveSource( archiveName );
+        return this;
+    }
+
     public ResourceExtractor from( Source source ) {
         checkSource( false );
         this.source = source;
@@ -89,19 +384,137 @@ public class ResourceExtractor {
         this.source = new IndexSource( indexName );
         return this;
     }
+
+    /**
+     * Extracts resources that are files in a folder, rather than entries in
+     * a jar, as hard links to those files where the file system allows.
+     * Only suitable where the extracted files are not written to, as
+     * writing to one would write to the resource itself.
+     * 
+     * @return This extractor
+     */
+    public ResourceExtractor byLinking() {
+        this.links = true;
+        return this;
+    }
+
+    /**
+     * Extracts up to <code>threads</code> resources at once. An
+     * {@link Extractor} or {@link FileNamer} used this way must be safe to
+     * call from several threads. The first failure is thrown once the
+     * extractions already started have finished.
+     * 
+     * @param threads
+     *            The number of resources extracted at once, 1 to extract
+     *            them in turn on the calling thread
+     * @return This extractor
+     */
+    public ResourceExtractor inParallel( int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "threads must be at least 1" );
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Only writes files whose contents changed since the last extraction
+     * recorded in <code>manifest</code>, and deletes files that extraction
+     * wrote but that are no longer in the source. A file is rewritten if
+     * the hash of its resource changed, or if its size or modification time
+     * differ from the manifest, so a file changed on disk is restored.
+     * Applies to extraction to files only.
+     * 
+     * @param manifest
+     *            The file recording the last extraction, created if missing
+     * @return This extractor
+     */
+    public ResourceExtractor incrementally( File manifest ) {
+        this.manifest = manifest;
+        return this;
+    }
     
+    /**
+     * Returns the folder <code>resource</code> was found in, that is the
+     * file <code>location</code> less one level for each in the name.
+     */
+    private static Path root( URL location, String resource ) {
+        Path root;
+        try {
+            root = Paths.get( location.toURI() );
+        }
+        catch ( URISyntaxException | IllegalArgumentException e ) {
+            return null;
+        }
+        for ( int i = Paths.get( resource.substring( 1 ) ).getNameCount(); i > 0 && root != null; i-- ) {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    private List<String> resourceNames() {
+        List<String> resources = new ArrayList<>();
+        for ( String resource : source.resourceNames() ) {
+            resources.add( resource );
+        }
+        return resources;
+    }
+
     public void to( File folder ) throws IOException {
-        extract( new FileExtractor( folder ) );
+        extractFiles( new FileExtractor( folder ) );
     }
     
     public void to( FileNamer fileNamer ) throws IOException {
-        extract( new FileExtractor( fileNamer ) );
+        extractFiles( new FileExtractor( fileNamer ) );
     }
 
     public void using( Extractor extractor ) throws IOException {
         extract( extractor );
     }
 
+    /**
+     * A zip archive resource holding the resources to extract, as written by
+     * {@link ResourceArchive}. The archive is read through once, and its
+     * entries extracted in the order it holds them, named as they would be
+     * as separate resources.
+     */
+    public static final class ArchiveSource implements Source {
+        private String archiveName;
+
+        public ArchiveSource( String archiveName ) {
+            this.archiveName = archiveName;
+        }
+
+        private void extract( Extractor extractor ) throws IOException {
+            InputStream archive = ArchiveSource.class.getResourceAsStream( archiveName );
+            if ( archive == null ) {
+                throw new IllegalArgumentException( "Archive resource not found " + archiveName );
+            }
+            extractEntries( archive, extractor, archiveName );
+        }
+
+        /**
+         * Reads the whole archive to list its entries. Extracting from the
+         * archive does not use this.
+         */
+        @Override
+        public Iterable<String> resourceNames() {
+            final List<String> resources = new ArrayList<>();
+            try {
+                extract( new Extractor() {
+                    @Override
+                    public void extract( String name, InputStream contents ) {
+                        resources.add( name );
+                    }
+                } );
+            }
+            catch ( IOException e ) {
+                throw new IllegalArgumentException( "Unable to read from archive resource " + archiveName );
+            }
+            return resources;
+        }
+    }
+
     public static interface Extractor {
         public void extract( String name, InputStream contents ) throws IOException;
     }
@@ -111,8 +524,14 @@ public class ResourceExtractor {
     }
 
     public static final class FileExtractor implements Extractor {
+        private Manifest current;
         private File folder;
+        private boolean foldersCreated;
         private FileNamer fileNamer;
+        private boolean links;
+        private Manifest previous;
+        private final AtomicInteger unchanged = new AtomicInteger();
+        private final AtomicInteger written = new AtomicInteger();
 
         public FileExtractor( FileNamer fileNamer ) {
             this.fileNamer = fileNamer;
@@ -122,8 +541,111 @@ public class ResourceExtractor {
             this.folder = folder;
         }
 
+        /**
+         * Creates the folders of all of <code>names</code> at once, so each
+         * extraction need not check for its own.
+         */
+        private void createFolders( List<String> names ) throws IOException {
+            Set<File> parents = new HashSet<>();
+            for ( String name : names ) {
+                parents.add( file( name ).getParentFile() );
+            }
+            for ( File parent : parents ) {
+                Files.createDirectories( parent.toPath() );
+            }
+            foldersCreated = true;
+        }
+
+        /**
+         * Returns those of <code>names</code> that may have changed since
+         * the last extraction. Those the index gives the same hash and size
+         * for as the manifest, and whose files are as they were written, are
+         * recorded as unchanged without reading them.
+         */
+        private List<String> changed( List<String> names, Map<String, ResourceIndex.Entry> indexed ) {
+            if ( indexed.isEmpty() ) {
+                return names;
+            }
+            List<String> changed = new ArrayList<>( names.size() );
+            for ( String name : names ) {
+                ResourceIndex.Entry indexEntry = indexed.get( name );
+                if ( indexEntry != null ) {
+                    File file = file( name );
+                    String path = file.getAbsolutePath();
+                    Manifest.Entry entry = previous.get( path );
+                    if ( entry != null && entry.size == indexEntry.getSize()
+                            && entry.matches( indexEntry.getHash(), file ) ) {
+                        previous.remove( path );
+                        current.put( path, entry );
+                        unchanged.incrementAndGet();
+                        continue;
+                    }
+                }
+                changed.add( name );
+            }
+            return changed;
+        }
+
+        private void prepare( File file ) throws IOException {
+            if ( !foldersCreated ) {
+                File parent = file.getParentFile();
+                if ( !parent.exists() ) {
+                    parent.mkdirs();
+                }
+            }
+
+            // replaced rather than written to, as it may be a link to the
+            // resource from an earlier extraction
+            Files.deleteIfExists( file.toPath() );
+        }
+
         @Override
         public void extract( String name, InputStream contents ) throws IOException {
+            File file = file( name );
+            if ( current == null ) {
+                write( file, contents );
+                return;
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            copy( contents, buffer );
+            extractIncrementally( file, buffer.toByteArray(), null );
+        }
+
+        /**
+         * Extracts a resource that is a file, copying it within the kernel,
+         * or linking to it if enabled.
+         */
+        void extract( String name, Path resource ) throws IOException {
+            File file = file( name );
+            if ( current == null ) {
+                write( file, resource );
+                return;
+            }
+            extractIncrementally( file, Files.readAllBytes( resource ), resource );
+        }
+
+        private void extractIncrementally( File file, byte[] bytes, Path resource ) throws IOException {
+            String hash = Manifest.hash( bytes );
+            String path = file.getAbsolutePath();
+            Manifest.Entry entry = previous.remove( path );
+            if ( entry == null || !entry.matches( hash, file ) ) {
+                if ( resource == null ) {
+                    write( file, bytes );
+                }
+                else {
+                    write( file, resource );
+                }
+                entry = new Manifest.Entry( hash, bytes.length, file.lastModified() );
+                written.incrementAndGet();
+            }
+            else {
+                unchanged.incrementAndGet();
+            }
+            current.put( path, entry );
+        }
+
+        private File file( String name ) {
             File file = null;
             if ( fileNamer == null ) {
                 file = new File( folder, name );
@@ -134,16 +656,44 @@ public class ResourceExtractor {
             if ( file == null ) {
                 throw new IllegalStateException( "Unable to determine file name for [" + name + "]" );
             }
+            return file;
+        }
 
-            File parent = file.getParentFile();
-            if ( !parent.exists() ) {
-                parent.mkdirs();
+        private void write( File file, byte[] bytes ) throws IOException {
+            prepare( file );
+            try (FileOutputStream fileOutputStream = new FileOutputStream( file )) {
+                fileOutputStream.write( bytes );
             }
+        }
 
+        private void write( File file, InputStream contents ) throws IOException {
+            prepare( file );
             try (FileOutputStream fileOutputStream = new FileOutputStream( file )) {
                 copy( contents, fileOutputStream );
             }
         }
+
+        private void write( File file, Path resource ) throws IOException {
+            prepare( file );
+            if ( links ) {
+                try {
+                    Files.createLink( file.toPath(), resource );
+                    return;
+                }
+                catch ( IOException | UnsupportedOperationException e ) {
+                    logger.debug( "unable to link [{}] to [{}], copying instead: {}", file, resource, e.toString() );
+                }
+            }
+            try (FileChannel in = FileChannel.open( resource, StandardOpenOption.READ );
+                    FileChannel out = FileChannel.open( file.toPath(), StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE )) {
+                long size = in.size();
+                long position = 0;
+                while ( position < size ) {
+                    position += in.transferTo( position, size - position, out );
+                }
+            }
+        }
         
         @Override
         public String toString() {
@@ -158,19 +708,193 @@ public class ResourceExtractor {
             this.indexName = indexName;
         }
 
+        /**
+         * Reads the index a line at a time as it is iterated, closing it at
+         * the end. An iteration abandoned part way leaves closing it to the
+         * garbage collector.
+         * 
+         * @return The entries of the index
+         */
+        public Iterable<ResourceIndex.Entry> entries() {
+            return new Iterable<ResourceIndex.Entry>() {
+                @Override
+                public Iterator<ResourceIndex.Entry> iterator() {
+                    InputStream index = IndexSource.class.getResourceAsStream( indexName );
+                    if ( index == null ) {
+                        throw new IllegalArgumentException( "Index resource not found " + indexName );
+                    }
+                    final BufferedReader reader = new BufferedReader(
+                            new InputStreamReader( index, StandardCharsets.UTF_8 ) );
+                    return new Iterator<ResourceIndex.Entry>() {
+                        private String line = readLine();
+
+                        @Override
+                        public boolean hasNext() {
+                            return line != null;
+                        }
+
+                        @Override
+                        public ResourceIndex.Entry next() {
+                            if ( line == null ) {
+                                throw new NoSuchElementException();
+                            }
+                            ResourceIndex.Entry entry = ResourceIndex.parse( line );
+                            line = readLine();
+                            return entry;
+                        }
+
+                        private String readLine() {
+                            try {
+                                String line = reader.readLine();
+                                if ( line == null ) {
+                                    reader.close();
+                                }
+                                return line;
+                            }
+                            catch ( IOException e ) {
+                                throw new IllegalArgumentException( "Unable to read from index resource " + indexName );
+                            }
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
         @Override
         public Iterable<String> resourceNames() {
-            List<String> resources = new ArrayList<>();
-            try (BufferedReader reader = new BufferedReader( new InputStreamReader( getClass().getResourceAsStream( indexName ) ) )) {
-                String resource = null;
-                while ( (resource = reader.readLine()) != null ) {
-                    resources.add( "/" + resource );
+            final Iterable<ResourceIndex.Entry> entries = entries();
+            return new Iterable<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    final Iterator<ResourceIndex.Entry> iterator = entries.iterator();
+                    return new Iterator<String>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public String next() {
+                            return iterator.next().getName();
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
                 }
+            };
+        }
+    }
+
+    /**
+     * The files written by an incremental extraction, by absolute path, with
+     * the hash of the contents written and the size and modification time
+     * they were written with. Stored as one line per file:
+     * <code>hash size lastModified path</code>.
+     */
+    static final class Manifest {
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+        static String hash( byte[] bytes ) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance( "SHA-256" );
             }
-            catch ( IOException e ) {
-                throw new IllegalArgumentException( "Unable to read from index resource " + indexName );
+            catch ( NoSuchAlgorithmException e ) {
+                throw new IllegalStateException( "SHA-256 is not supported", e );
+            }
+            StringBuilder hash = new StringBuilder( 64 );
+            for ( byte b : digest.digest( bytes ) ) {
+                hash.append( Character.forDigit( (b >> 4) & 0xf, 16 ) )
+                        .append( Character.forDigit( b & 0xf, 16 ) );
+            }
+            return hash.toString();
+        }
+
+        static Manifest load( File file ) throws IOException {
+            Manifest manifest = new Manifest();
+            if ( !file.exists() ) {
+                return manifest;
+            }
+            try (BufferedReader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 )) {
+                String line = null;
+                while ( (line = reader.readLine()) != null ) {
+                    String[] fields = line.split( " ", 4 );
+                    manifest.entries.put( fields[3],
+                            new Entry( fields[0], Long.parseLong( fields[1] ), Long.parseLong( fields[2] ) ) );
+                }
+            }
+            catch ( NumberFormatException | ArrayIndexOutOfBoundsException e ) {
+                // extracting everything again replaces it
+                logger.warn( "Ignoring unreadable manifest [{}]", file );
+                manifest.entries.clear();
+            }
+            return manifest;
+        }
+
+        Set<String> paths() {
+            return entries.keySet();
+        }
+
+        void put( String path, Entry entry ) {
+            entries.put( path, entry );
+        }
+
+        Entry get( String path ) {
+            return entries.get( path );
+        }
+
+        Entry remove( String path ) {
+            return entries.remove( path );
+        }
+
+        void save( File file ) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if ( !parent.exists() ) {
+                parent.mkdirs();
+            }
+
+            // written aside and moved over, so an interrupted save leaves the
+            // old manifest rather than half of a new one
+            Path temp = Files.createTempFile( parent.toPath(), file.getName(), ".tmp" );
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter( temp, StandardCharsets.UTF_8 )) {
+                    for ( Map.Entry<String, Entry> entry : entries.entrySet() ) {
+                        writer.write( entry.getValue().hash + " " + entry.getValue().size + " "
+                                + entry.getValue().lastModified + " " + entry.getKey() );
+                        writer.newLine();
+                    }
+                }
+                Files.move( temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            finally {
+                Files.deleteIfExists( temp );
+            }
+        }
+
+        static final class Entry {
+            private final String hash;
+            private final long lastModified;
+            private final long size;
+
+            Entry( String hash, long size, long lastModified ) {
+                this.hash = hash;
+                this.size = size;
+                this.lastModified = lastModified;
+            }
+
+            boolean matches( String hash, File file ) {
+                return this.hash.equals( hash )
+                        && file.length() == size
+                        && file.lastModified() == lastModified;
             }
-            return resources;
         }
     }
 
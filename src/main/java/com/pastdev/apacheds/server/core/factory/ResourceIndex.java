@@ -0,0 +1,152 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * The format of a resource index, as read by
+ * {@link ResourceExtractor.IndexSource}: one resource per line, relative to
+ * the root of the class path, preceded by the SHA-256 of its contents and
+ * its size:
+ *
+ * <pre>
+ * &lt;sha-256 hex&gt; &lt;size&gt; conf/ou=config.ldif
+ * </pre>
+ *
+ * A line holding only a name, as in an index written by hand, is read as a
+ * resource of unknown size and hash.
+ */
+public final class ResourceIndex {
+    private static final Pattern LINE = Pattern.compile( "^([0-9a-f]{64}) ([0-9]+) (.+)$" );
+
+    private ResourceIndex() {}
+
+    /**
+     * Writes an index of the files under <code>paths</code>, in name order.
+     *
+     * @param root
+     *            The folder the resource names are relative to
+     * @param paths
+     *            The files and folders, relative to <code>root</code>, to
+     *            index
+     * @param index
+     *            The index to write
+     * @throws IOException
+     *             If a file cannot be read or the index written
+     */
+    public static void generate( Path root, List<String> paths, Path index ) throws IOException {
+        List<String> names = list( root, paths );
+        if ( index.getParent() != null ) {
+            Files.createDirectories( index.getParent() );
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter( index, StandardCharsets.UTF_8 )) {
+            for ( String name : names ) {
+                byte[] contents = Files.readAllBytes( root.resolve( name ) );
+                writer.write( ResourceExtractor.Manifest.hash( contents ) + " " + contents.length + " " + name );
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns the names, relative to <code>root</code> and separated by
+     * <code>/</code>, of the files under <code>paths</code>, in name order,
+     * which puts a config entry's file before the folder of its children.
+     */
+    static List<String> list( final Path root, List<String> paths ) throws IOException {
+        final List<String> names = new ArrayList<>();
+        for ( String path : paths ) {
+            Files.walkFileTree( root.resolve( path ), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+                    names.add( root.relativize( file ).toString().replace( '\\', '/' ) );
+                    return FileVisitResult.CONTINUE;
+                }
+            } );
+        }
+        Collections.sort( names );
+        return names;
+    }
+
+    /**
+     * Generates an index at build time.
+     *
+     * <pre>
+     * ResourceIndex &lt;root&gt; &lt;index&gt; &lt;path&gt;...
+     * </pre>
+     *
+     * @param args
+     *            The folder resource names are relative to, the index to
+     *            write, and the files and folders to index
+     * @throws IOException
+     *             If a file cannot be read or the index written
+     */
+    public static void main( String[] args ) throws IOException {
+        if ( args.length < 3 ) {
+            throw new IllegalArgumentException( "usage: ResourceIndex <root> <index> <path>..." );
+        }
+        generate( Paths.get( args[0] ), Arrays.asList( args ).subList( 2, args.length ), Paths.get( args[1] ) );
+    }
+
+    static Entry parse( String line ) {
+        Matcher matcher = LINE.matcher( line );
+        if ( matcher.matches() ) {
+            return new Entry( "/" + matcher.group( 3 ), Long.parseLong( matcher.group( 2 ) ), matcher.group( 1 ) );
+        }
+        return new Entry( "/" + line, -1, null );
+    }
+
+    public static final class Entry {
+        private final String hash;
+        private final String name;
+        private final long size;
+
+        Entry( String name, long size, String hash ) {
+            this.name = name;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        /**
+         * @return The SHA-256 of the contents in hex, or null if not known
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return The resource name, starting with <code>/</code>
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The size of the contents, or -1 if not known
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s@%h::name=%s,size=%s,hash=%s", getClass().getName(), hashCode(),
+                    name, size, hash );
+        }
+    }
+}
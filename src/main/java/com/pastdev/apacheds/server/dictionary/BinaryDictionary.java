@@ -0,0 +1,174 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * A dictionary precompiled at build time into the flat arrays of a
+ * {@link DictionaryAutomaton}, which are memory mapped and searched in
+ * place, so opening it parses and compiles nothing and the automaton lives
+ * off heap. See {@link DictionaryAutomaton} for the layout.
+ * <p>
+ * The automaton is compiled for one case sensitivity and one minimum word
+ * length, both recorded in the file, and with the reversed words, which
+ * {@link DictionaryAutomaton#forwardOnly()} leaves out of a search. A
+ * dictionary needed with other settings is compiled from its word list.
+ * <p>
+ * Files are written by {@link #main(String[])}, which the
+ * <code>dictionary</code> profile of the build runs.
+ *
+ * @author LTHEISEN
+ */
+public final class BinaryDictionary {
+    public static final String EXTENSION = ".dict";
+
+    private static final int DEFAULT_MINIMUM_LENGTH = 4;
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private BinaryDictionary() {}
+
+    /**
+     * Generates a binary dictionary from a text word list, one word per line.
+     *
+     * <pre>
+     * BinaryDictionary &lt;word list&gt; &lt;binary dictionary&gt; [caseInsensitive [minimumLength]]
+     * </pre>
+     *
+     * The dictionary is written aside and moved into place, so a server
+     * that has the previous one mapped keeps reading it intact.
+     *
+     * @param args
+     *            The word list, the file to write and, optionally,
+     *            <code>caseInsensitive</code> and the minimum word length
+     * @throws IOException
+     *             If the word list cannot be read or the dictionary written
+     */
+    public static void main( String[] args ) throws IOException {
+        if ( args.length < 2 ) {
+            throw new IllegalArgumentException(
+                    "usage: BinaryDictionary <word list> <binary dictionary> [caseInsensitive [minimumLength]]" );
+        }
+        boolean caseSensitive = args.length < 3 || !"caseInsensitive".equals( args[2] );
+        int minimumLength = args.length < 4 ? DEFAULT_MINIMUM_LENGTH : Integer.parseInt( args[3] );
+
+        List<String> words = new ArrayList<String>();
+        try (BufferedReader reader = Files.newBufferedReader( Paths.get( args[0] ), UTF_8 )) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                words.add( line );
+            }
+        }
+
+        Path output = Paths.get( args[1] ).toAbsolutePath();
+        Files.createDirectories( output.getParent() );
+        Path temp = Files.createTempFile( output.getParent(), output.getFileName().toString(), ".tmp" );
+        try {
+            try (OutputStream outputStream = Files.newOutputStream( temp )) {
+                write( words.iterator(), caseSensitive, minimumLength, outputStream );
+            }
+            Files.move( temp, output, StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally {
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    /**
+     * Maps the binary dictionary at <code>path</code> read only.
+     *
+     * @param path
+     *            The binary dictionary file
+     * @return The automaton, searched in the mapped file
+     * @throws IOException
+     *             If the file cannot be mapped or is not a binary dictionary
+     */
+    public static DictionaryAutomaton open( Path path ) throws IOException {
+        try (FileChannel channel = FileChannel.open( path, StandardOpenOption.READ )) {
+            return DictionaryAutomaton.map( channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+        }
+    }
+
+    /**
+     * Maps the binary dictionary at <code>url</code>. A dictionary that is
+     * not a plain file, one inside a jar for example, is read into a direct
+     * buffer, still off heap, rather than copied out to a file that would
+     * outlive it.
+     *
+     * @param url
+     *            The binary dictionary resource
+     * @return The automaton
+     * @throws IOException
+     *             If the resource cannot be read or is not a binary
+     *             dictionary
+     */
+    public static DictionaryAutomaton open( URL url ) throws IOException {
+        if ( "file".equals( url.getProtocol() ) ) {
+            try {
+                return open( Paths.get( url.toURI() ) );
+            }
+            catch ( URISyntaxException e ) {
+                throw new IOException( "Invalid dictionary url " + url, e );
+            }
+        }
+
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        try (InputStream inputStream = url.openStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( (read = inputStream.read( buffer )) >= 0 ) {
+                contents.write( buffer, 0, read );
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect( contents.size() );
+        buffer.put( contents.toByteArray() );
+        buffer.clear();
+        return DictionaryAutomaton.map( buffer );
+    }
+
+    /**
+     * Writes <code>words</code> as a binary dictionary. As with
+     * {@link edu.vt.middleware.dictionary.WordLists}, words are trimmed and
+     * empty ones skipped.
+     *
+     * @param words
+     *            The words, in any order
+     * @param caseSensitive
+     *            False to fold the words so that searches ignore case
+     * @param minimumLength
+     *            The length of the shortest word to find
+     * @param outputStream
+     *            The stream to write to, left open
+     * @throws IOException
+     *             If the dictionary cannot be written
+     */
+    public static void write( Iterator<String> words, boolean caseSensitive, int minimumLength,
+            OutputStream outputStream ) throws IOException {
+        List<String> trimmed = new ArrayList<String>();
+        while ( words.hasNext() ) {
+            String word = words.next().trim();
+            if ( !word.isEmpty() ) {
+                trimmed.add( word );
+            }
+        }
+        DictionaryAutomaton.compile( trimmed.iterator(), caseSensitive, minimumLength, true )
+                .write( outputStream );
+    }
+}
@@ -0,0 +1,247 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A <a href="https://en.wikipedia.org/wiki/Bloom_filter">Bloom filter</a>
+ * in front of a {@link DictionaryAutomaton}. It holds the first
+ * {@link DictionaryAutomaton#getMinimumLength() minimum length} characters
+ * of every word the automaton finds, reversed words included, and a word
+ * embedded in a text starts with one of them, so a text none of whose
+ * windows of that length is in the filter holds no word and is not scanned.
+ * It never skips a text that holds a word, and passes a window that starts
+ * no word at roughly {@link #getExpectedFalsePositiveRate()}.
+ * <p>
+ * The filter is built from the automaton's states at that depth, one per
+ * distinct prefix, so it needs neither the word list nor more than the top
+ * of a mapped dictionary. Windows are hashed with a polynomial hash rolled
+ * one character at a time.
+ * <p>
+ * The filter also counts how it performs, so it can be sized for a
+ * dictionary: {@link #getHitRatio()} is the share of searches it answered on
+ * its own and {@link #getFalsePositiveRate()} the share of texts holding no
+ * word that it still passed to the automaton.
+ *
+ * @author LTHEISEN
+ */
+public final class BloomFilter implements WordMatcher {
+    private static final long BASE = 0x100000001b3L;
+    private static final long MAXIMUM_BIT_COUNT = 1L << 32;
+
+    private final DictionaryAutomaton automaton;
+    private final long[] bits;
+    private final long bitCount;
+    private final boolean caseSensitive;
+    private final long factor;
+    private final int hashCount;
+    private final int prefixCount;
+    private final int prefixLength;
+
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+
+    private BloomFilter( DictionaryAutomaton automaton, int prefixCount, int bitsPerPrefix ) {
+        long size = Math.min( MAXIMUM_BIT_COUNT, (long) prefixCount * bitsPerPrefix );
+        this.automaton = automaton;
+        this.bits = new long[(int) Math.max( 1, (size + 63) / 64 )];
+        this.bitCount = bits.length * 64L;
+        this.caseSensitive = automaton.isCaseSensitive();
+        this.hashCount = Math.max( 1, (int) Math.round( bitsPerPrefix * Math.log( 2 ) ) );
+        this.prefixCount = prefixCount;
+        this.prefixLength = automaton.getMinimumLength();
+        long factor = 1;
+        for ( int i = 1; i < prefixLength; i++ ) {
+            factor *= BASE;
+        }
+        this.factor = factor;
+    }
+
+    void add( char[] prefix ) {
+        long hash = 0;
+        for ( char c : prefix ) {
+            hash = hash * BASE + c;
+        }
+        hash = mix( hash );
+        for ( int i = 0; i < hashCount; i++ ) {
+            long index = index( hash, i );
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * Builds a filter in front of <code>automaton</code>.
+     *
+     * @param automaton
+     *            The automaton to screen searches for
+     * @param bitsPerPrefix
+     *            The size of the filter, 10 bits per prefix pass about one
+     *            window in a hundred that starts no word
+     * @return The filter, searched in place of the automaton
+     */
+    public static BloomFilter build( DictionaryAutomaton automaton, int bitsPerPrefix ) {
+        if ( bitsPerPrefix < 1 ) {
+            throw new IllegalArgumentException( "bitsPerPrefix must be >= 1" );
+        }
+        BloomFilter filter = new BloomFilter( automaton, automaton.countPrefixes(), bitsPerPrefix );
+        automaton.addPrefixes( filter );
+        return filter;
+    }
+
+    private char fold( char c ) {
+        return caseSensitive ? c : Character.toLowerCase( Character.toUpperCase( c ) );
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Returns the false positive rate of a single window the filter was
+     * sized for. A text passes if any of its windows does, so longer texts
+     * pass more often.
+     *
+     * @return The expected false positive rate
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow( 1 - Math.exp( -(double) hashCount * prefixCount / bitCount ), hashCount );
+    }
+
+    /**
+     * Returns the number of texts the filter passed in which the automaton
+     * then found no word.
+     *
+     * @return The false positive count
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * Returns the share of texts holding no word that the filter passed.
+     *
+     * @return The observed false positive rate, or 0 before any search
+     */
+    public double getFalsePositiveRate() {
+        long falsePositives = this.falsePositives.get();
+        long negatives = rejections.get() + falsePositives;
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Returns the bytes held by the bits of this filter.
+     *
+     * @return The heap footprint
+     */
+    public long getHeapBytes() {
+        return bits.length * 8L;
+    }
+
+    /**
+     * Returns the share of searches the filter answered without the
+     * automaton.
+     *
+     * @return The prefilter hit ratio, or 0 before any search
+     */
+    public double getHitRatio() {
+        long searches = this.searches.get();
+        return searches == 0 ? 0 : (double) rejections.get() / searches;
+    }
+
+    public int getPrefixCount() {
+        return prefixCount;
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getSearches() {
+        return searches.get();
+    }
+
+    private long index( long hash, int i ) {
+        // double hashing, then a multiply and shift in place of a modulo
+        long probe = ((hash + i * (hash >>> 32)) & 0xffffffffL);
+        return (probe * bitCount) >>> 32;
+    }
+
+    /**
+     * Returns false if <code>text</code> certainly holds no word, true if
+     * it may. Does not update the counters.
+     *
+     * @param text
+     *            The text to screen
+     * @return False if the text holds no word
+     */
+    public boolean mightContain( CharSequence text ) {
+        int length = text.length();
+        long hash = 0;
+        for ( int i = 0; i < length; i++ ) {
+            if ( i >= prefixLength ) {
+                hash -= fold( text.charAt( i - prefixLength ) ) * factor;
+            }
+            hash = hash * BASE + fold( text.charAt( i ) );
+            if ( i >= prefixLength - 1 && mightContain( hash ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mightContain( long hash ) {
+        hash = mix( hash );
+        for ( int i = 0; i < hashCount; i++ ) {
+            long index = index( hash, i );
+            if ( (bits[(int) (index >>> 6)] & (1L << index)) == 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix( long hash ) {
+        // the murmur3 finalizer, so every bit of the hash depends on every
+        // character
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Screens <code>text</code>, and scans it with the automaton only if it
+     * may hold a word.
+     */
+    @Override
+    public WordMatch search( CharSequence text ) {
+        if ( text.length() < prefixLength ) {
+            return null;
+        }
+        searches.incrementAndGet();
+        if ( !mightContain( text ) ) {
+            rejections.incrementAndGet();
+            return null;
+        }
+        WordMatch match = automaton.search( text );
+        if ( match == null ) {
+            falsePositives.incrementAndGet();
+        }
+        return match;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::bits=%s,hashes=%s,prefixes=%s,searches=%s,hitRatio=%s,falsePositiveRate=%s",
+                getClass().getName(), hashCode(), bitCount, hashCount, prefixCount,
+                searches.get(), getHitRatio(), getFalsePositiveRate() );
+    }
+}
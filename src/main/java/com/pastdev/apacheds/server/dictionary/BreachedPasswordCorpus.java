@@ -0,0 +1,450 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+
+/**
+ * A corpus of breached passwords, such as the
+ * <a href="https://haveibeenpwned.com/Passwords">Pwned Passwords</a> list,
+ * held as the sorted SHA-1 hashes of the passwords in a binary file that is
+ * memory mapped rather than read, however many gigabytes it is. The file is
+ * laid out as:
+ *
+ * <pre>
+ * int     magic ("PDBH")
+ * int     version
+ * long    hash count (n)
+ * long[]  65537 fan-out entries, the index of the first hash starting
+ *         with each 16 bit prefix, then n
+ * byte[]  n 20 byte hashes, sorted as unsigned bytes
+ * </pre>
+ *
+ * The fan-out table, 512k on heap, narrows a lookup to the hashes that
+ * share its first two bytes; SHA-1 being uniform, an interpolation search
+ * then finds the hash in a few reads of the mapped file.
+ * <p>
+ * Files are written by {@link #main(String[])} from a sorted text list of
+ * hashes.
+ *
+ * @author LTHEISEN
+ */
+public final class BreachedPasswordCorpus {
+    public static final String EXTENSION = ".sha1";
+
+    private static final int MAGIC = 0x50444248;
+    private static final int VERSION = 1;
+    private static final int FANOUT_BITS = 16;
+    private static final int FANOUT_SIZE = (1 << FANOUT_BITS) + 1;
+    private static final int HASH_LENGTH = 20;
+    private static final long HEADER_SIZE = 16 + FANOUT_SIZE * 8L;
+    // the largest whole number of hashes in a mapping, which is limited to 2g
+    private static final int HASHES_PER_REGION = (1 << 30) / HASH_LENGTH;
+    private static final int INTERPOLATION_STEPS = 4;
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final ThreadLocal<Hasher> HASHERS = new ThreadLocal<Hasher>() {
+        @Override
+        protected Hasher initialValue() {
+            return new Hasher();
+        }
+    };
+
+    private final long[] fanout;
+    private final ByteBuffer[] regions;
+    private final long size;
+
+    private BreachedPasswordCorpus( FileChannel channel ) throws IOException {
+        long fileSize = channel.size();
+        if ( fileSize < HEADER_SIZE ) {
+            throw new IOException( "Not a breached password corpus" );
+        }
+        ByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE );
+        if ( header.getInt( 0 ) != MAGIC ) {
+            throw new IOException( "Not a breached password corpus" );
+        }
+        if ( header.getInt( 4 ) != VERSION ) {
+            throw new IOException( "Unsupported breached password corpus version " + header.getInt( 4 ) );
+        }
+        this.size = header.getLong( 8 );
+        if ( size < 0 || HEADER_SIZE + size * HASH_LENGTH > fileSize ) {
+            throw new IOException( "Truncated breached password corpus" );
+        }
+        this.fanout = new long[FANOUT_SIZE];
+        for ( int i = 0; i < FANOUT_SIZE; i++ ) {
+            fanout[i] = header.getLong( 16 + i * 8 );
+        }
+        if ( fanout[FANOUT_SIZE - 1] != size ) {
+            throw new IOException( "Corrupt breached password corpus fan-out" );
+        }
+
+        this.regions = new ByteBuffer[(int) ((size + HASHES_PER_REGION - 1) / HASHES_PER_REGION)];
+        for ( int i = 0; i < regions.length; i++ ) {
+            long first = (long) i * HASHES_PER_REGION;
+            long count = Math.min( HASHES_PER_REGION, size - first );
+            regions[i] = channel.map( FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * HASH_LENGTH,
+                    count * HASH_LENGTH );
+        }
+    }
+
+    private int compare( long index, byte[] hash ) {
+        ByteBuffer region = regions[(int) (index / HASHES_PER_REGION)];
+        int offset = (int) (index % HASHES_PER_REGION) * HASH_LENGTH;
+        for ( int i = 0; i < HASH_LENGTH; i++ ) {
+            int difference = (region.get( offset + i ) & 0xff) - (hash[i] & 0xff);
+            if ( difference != 0 ) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns true if <code>password</code>, encoded as UTF-8, is in the
+     * corpus. Neither the encoded password nor its hash is allocated, and
+     * the per-thread buffers holding them are zeroed once the hash is looked
+     * up.
+     *
+     * @param password
+     *            The password
+     * @return True if the password has been breached
+     */
+    public boolean contains( CharSequence password ) {
+        byte[] hash = HASHERS.get().hash( password );
+        try {
+            return containsHash( hash );
+        }
+        finally {
+            Arrays.fill( hash, (byte) 0 );
+        }
+    }
+
+    /**
+     * Returns true if the SHA-1 hash <code>hash</code> is in the corpus.
+     *
+     * @param hash
+     *            The 20 byte hash
+     * @return True if the hash is in the corpus
+     */
+    public boolean containsHash( byte[] hash ) {
+        int prefix = ((hash[0] & 0xff) << 8) | (hash[1] & 0xff);
+        long low = fanout[prefix];
+        long high = fanout[prefix + 1] - 1;
+        long target = key( hash, 0 );
+        int step = 0;
+        while ( low <= high ) {
+            long middle;
+            if ( step++ < INTERPOLATION_STEPS ) {
+                // guess where the hash falls between the ends of the range
+                long lowKey = key( low );
+                long highKey = key( high );
+                if ( target < lowKey || target > highKey ) {
+                    return false;
+                }
+                middle = highKey == lowKey
+                        ? (low + high) >>> 1
+                        : low + (long) ((double) (target - lowKey) / (highKey - lowKey) * (high - low));
+            }
+            else {
+                middle = (low + high) >>> 1;
+            }
+            int comparison = compare( middle, hash );
+            if ( comparison < 0 ) {
+                low = middle + 1;
+            }
+            else if ( comparison > 0 ) {
+                high = middle - 1;
+            }
+            else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the 47 bits after the fan-out prefix of the hash at
+     * <code>index</code> as a positive number, to interpolate with.
+     */
+    private long key( long index ) {
+        ByteBuffer region = regions[(int) (index / HASHES_PER_REGION)];
+        return (region.getLong( (int) (index % HASHES_PER_REGION) * HASH_LENGTH ) << FANOUT_BITS) >>> 1;
+    }
+
+    private static long key( byte[] hash, int offset ) {
+        long value = 0;
+        for ( int i = 0; i < 8; i++ ) {
+            value = (value << 8) | (hash[offset + i] & 0xff);
+        }
+        return (value << FANOUT_BITS) >>> 1;
+    }
+
+    /**
+     * Generates a corpus from a sorted text list of SHA-1 hashes, one per
+     * line, as the Pwned Passwords list ordered by hash is. A hash may be
+     * split by a colon into prefix and suffix, as in the range files, and
+     * anything after its 40 hex digits, such as <code>:count</code>, is
+     * ignored.
+     *
+     * <pre>
+     * BreachedPasswordCorpus &lt;hash list&gt; &lt;corpus&gt;
+     * </pre>
+     *
+     * @param args
+     *            The hash list and the file to write
+     * @throws IOException
+     *             If the list cannot be read, is not sorted, or the corpus
+     *             cannot be written
+     */
+    public static void main( String[] args ) throws IOException {
+        if ( args.length != 2 ) {
+            throw new IllegalArgumentException( "usage: BreachedPasswordCorpus <hash list> <corpus>" );
+        }
+        Path output = Paths.get( args[1] );
+        if ( output.getParent() != null ) {
+            Files.createDirectories( output.getParent() );
+        }
+        try (final BufferedReader reader = Files.newBufferedReader( Paths.get( args[0] ), UTF_8 )) {
+            write( new Iterator<String>() {
+                private String line = reader.readLine();
+
+                @Override
+                public boolean hasNext() {
+                    return line != null;
+                }
+
+                @Override
+                public String next() {
+                    String next = line;
+                    try {
+                        line = reader.readLine();
+                    }
+                    catch ( IOException e ) {
+                        throw new IllegalStateException( "Unable to read hash list", e );
+                    }
+                    return next;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            }, output );
+        }
+    }
+
+    /**
+     * Maps the corpus at <code>path</code> read only.
+     *
+     * @param path
+     *            The corpus file
+     * @return The corpus
+     * @throws IOException
+     *             If the file cannot be mapped or is not a corpus
+     */
+    public static BreachedPasswordCorpus open( Path path ) throws IOException {
+        try (FileChannel channel = FileChannel.open( path, StandardOpenOption.READ )) {
+            return new BreachedPasswordCorpus( channel );
+        }
+    }
+
+    private static void parse( String line, int lineNumber, byte[] hash ) throws IOException {
+        int digits = 0;
+        for ( int i = 0; i < line.length() && digits < HASH_LENGTH * 2; i++ ) {
+            char c = line.charAt( i );
+            if ( c == ':' ) {
+                continue;
+            }
+            int value = Character.digit( c, 16 );
+            if ( value < 0 ) {
+                break;
+            }
+            hash[digits / 2] = (byte) (digits % 2 == 0 ? value << 4 : hash[digits / 2] | value);
+            digits++;
+        }
+        if ( digits < HASH_LENGTH * 2 ) {
+            throw new IOException( "Invalid SHA-1 hash on line " + lineNumber );
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::size=%s,regions=%s", getClass().getName(), hashCode(), size, regions.length );
+    }
+
+    /**
+     * Writes the hashes of <code>lines</code>, in the format
+     * {@link #main(String[])} reads, as a corpus. The lines are streamed, so
+     * the list can be far larger than the heap, but must already be sorted;
+     * duplicates and blank lines are skipped.
+     *
+     * @param lines
+     *            The sorted hash list
+     * @param output
+     *            The file to write
+     * @throws IOException
+     *             If a line is not a hash, the lines are not sorted, or the
+     *             corpus cannot be written
+     */
+    public static void write( Iterator<String> lines, Path output ) throws IOException {
+        long[] fanout = new long[FANOUT_SIZE];
+        long count = 0;
+        byte[] previous = null;
+        byte[] hash = new byte[HASH_LENGTH];
+        try (FileChannel channel = FileChannel.open( output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING )) {
+            ByteBuffer buffer = ByteBuffer.allocate( HASH_LENGTH * 4096 );
+            channel.position( HEADER_SIZE );
+            int lineNumber = 0;
+            while ( lines.hasNext() ) {
+                String line = lines.next().trim();
+                lineNumber++;
+                if ( line.isEmpty() ) {
+                    continue;
+                }
+                parse( line, lineNumber, hash );
+                if ( previous != null ) {
+                    int comparison = compare( previous, hash );
+                    if ( comparison == 0 ) {
+                        continue;
+                    }
+                    if ( comparison > 0 ) {
+                        throw new IOException( "Hash list is not sorted at line " + lineNumber );
+                    }
+                }
+                else {
+                    previous = new byte[HASH_LENGTH];
+                }
+                System.arraycopy( hash, 0, previous, 0, HASH_LENGTH );
+
+                fanout[(((hash[0] & 0xff) << 8) | (hash[1] & 0xff)) + 1]++;
+                count++;
+                if ( !buffer.hasRemaining() ) {
+                    flip( channel, buffer );
+                }
+                buffer.put( hash );
+            }
+            flip( channel, buffer );
+
+            // counts per prefix to the index of each first hash
+            for ( int i = 1; i < FANOUT_SIZE; i++ ) {
+                fanout[i] += fanout[i - 1];
+            }
+            ByteBuffer header = ByteBuffer.allocate( (int) HEADER_SIZE );
+            header.putInt( MAGIC ).putInt( VERSION ).putLong( count );
+            for ( long index : fanout ) {
+                header.putLong( index );
+            }
+            header.flip();
+            channel.position( 0 );
+            while ( header.hasRemaining() ) {
+                channel.write( header );
+            }
+        }
+    }
+
+    private static int compare( byte[] a, byte[] b ) {
+        for ( int i = 0; i < HASH_LENGTH; i++ ) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if ( difference != 0 ) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private static void flip( FileChannel channel, ByteBuffer buffer ) throws IOException {
+        buffer.flip();
+        while ( buffer.hasRemaining() ) {
+            channel.write( buffer );
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Encodes passwords as UTF-8 and hashes them into reused arrays, wiping
+     * the encoding after each.
+     */
+    private static final class Hasher {
+        private final MessageDigest digest;
+        private byte[] encoded = new byte[64];
+        private final byte[] hash = new byte[HASH_LENGTH];
+
+        private Hasher() {
+            try {
+                digest = MessageDigest.getInstance( "SHA-1" );
+            }
+            catch ( NoSuchAlgorithmException e ) {
+                throw new IllegalStateException( "SHA-1 is required of every JVM", e );
+            }
+        }
+
+        private byte[] hash( CharSequence password ) {
+            int length = password.length();
+            if ( encoded.length < length * 3 ) {
+                Arrays.fill( encoded, (byte) 0 );
+                encoded = new byte[length * 3];
+            }
+
+            // as String.getBytes would, with ? for an unpaired surrogate
+            int count = 0;
+            for ( int i = 0; i < length; i++ ) {
+                char c = password.charAt( i );
+                if ( c < 0x80 ) {
+                    encoded[count++] = (byte) c;
+                }
+                else if ( c < 0x800 ) {
+                    encoded[count++] = (byte) (0xc0 | (c >> 6));
+                    encoded[count++] = (byte) (0x80 | (c & 0x3f));
+                }
+                else if ( Character.isSurrogate( c ) ) {
+                    if ( Character.isHighSurrogate( c ) && i + 1 < length
+                            && Character.isLowSurrogate( password.charAt( i + 1 ) ) ) {
+                        int codePoint = Character.toCodePoint( c, password.charAt( ++i ) );
+                        encoded[count++] = (byte) (0xf0 | (codePoint >> 18));
+                        encoded[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                        encoded[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                        encoded[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                    }
+                    else {
+                        encoded[count++] = '?';
+                    }
+                }
+                else {
+                    encoded[count++] = (byte) (0xe0 | (c >> 12));
+                    encoded[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    encoded[count++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+
+            try {
+                digest.update( encoded, 0, count );
+                digest.digest( hash, 0, HASH_LENGTH );
+            }
+            catch ( DigestException e ) {
+                throw new IllegalStateException( "Unable to hash password", e );
+            }
+            finally {
+                Arrays.fill( encoded, 0, count, (byte) 0 );
+            }
+            return hash;
+        }
+    }
+}
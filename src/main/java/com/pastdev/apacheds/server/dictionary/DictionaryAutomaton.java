@@ -0,0 +1,594 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * An <a href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm"
+ * >Aho-Corasick</a> automaton compiled from the words of a dictionary. A
+ * single scan of a password finds the same word that
+ * {@link edu.vt.middleware.password.DictionarySubstringRule} would, the
+ * shortest embedded word and the leftmost of those, and optionally the same
+ * reversed word, without a dictionary lookup per substring.
+ * <p>
+ * States are numbered in breadth first order, so the children of a state are
+ * consecutive and the automaton is stored as a handful of flat arrays rather
+ * than a node per state. Those arrays are also its file format: an automaton
+ * {@link #write(OutputStream) written} at build time is
+ * {@link #map(ByteBuffer) mapped} and searched in place, off heap, with
+ * nothing to parse or compile at startup. The file is laid out, little
+ * endian, as:
+ *
+ * <pre>
+ * int      magic ("PDWA")
+ * int      version
+ * int      flags (case sensitive, match backwards, dense root)
+ * int      minimum length
+ * int      state count (n)
+ * int[]    n failures
+ * int[]    n + 1 first children
+ * int[]    65536 children of the root by character, if dense root
+ * char[]   n labels
+ * short[]  n shortest forward words
+ * short[]  n shortest reversed words, if match backwards
+ * </pre>
+ *
+ * @author LTHEISEN
+ */
+public final class DictionaryAutomaton implements WordMatcher {
+    private static final int ROOT = 0;
+    private static final int DENSE_ROOT_CHILDREN = 64;
+    private static final int FLAG_CASE_SENSITIVE = 1;
+    private static final int FLAG_MATCH_BACKWARDS = 2;
+    private static final int FLAG_DENSE_ROOT = 4;
+    private static final int HEADER_SIZE = 20;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAGIC = 0x50445741;
+    private static final int ROOT_CHILDREN = Character.MAX_VALUE + 1;
+    private static final int VERSION = 1;
+
+    private final boolean caseSensitive;
+    private final IntBuffer failures;
+    private final IntBuffer firstChildren;
+    private final long heapBytes;
+    private final CharBuffer labels;
+    private final long mappedBytes;
+    private final int minimumLength;
+    private final IntBuffer rootChildren;
+    private final ShortBuffer shortestForward;
+    private final ShortBuffer shortestReversed;
+    private final int stateCount;
+
+    private DictionaryAutomaton( boolean caseSensitive, int minimumLength, int stateCount, IntBuffer failures,
+            IntBuffer firstChildren, IntBuffer rootChildren, CharBuffer labels, ShortBuffer shortestForward,
+            ShortBuffer shortestReversed, long heapBytes, long mappedBytes ) {
+        this.caseSensitive = caseSensitive;
+        this.minimumLength = minimumLength;
+        this.stateCount = stateCount;
+        this.failures = failures;
+        this.firstChildren = firstChildren;
+        this.rootChildren = rootChildren;
+        this.labels = labels;
+        this.shortestForward = shortestForward;
+        this.shortestReversed = shortestReversed;
+        this.heapBytes = heapBytes;
+        this.mappedBytes = mappedBytes;
+    }
+
+    private static DictionaryAutomaton fromBuilder( Builder builder, boolean matchBackwards ) {
+        int stateCount = builder.stateCount;
+        int[] firstChildren = Arrays.copyOf( builder.firstChildren, stateCount + 1 );
+        char[] labels = Arrays.copyOf( builder.labels, stateCount );
+
+        // a dense table for the root of a large dictionary, which has a child
+        // for most characters; a handful of words is not worth its 256k
+        int[] rootChildren = null;
+        if ( firstChildren[ROOT + 1] - firstChildren[ROOT] >= DENSE_ROOT_CHILDREN ) {
+            rootChildren = new int[ROOT_CHILDREN];
+            for ( int child = firstChildren[ROOT]; child < firstChildren[ROOT + 1]; child++ ) {
+                rootChildren[labels[child]] = child;
+            }
+        }
+
+        long heapBytes = (long) stateCount * (4 + 4 + 2 + 2 + (matchBackwards ? 2 : 0)) + 4
+                + (rootChildren == null ? 0 : rootChildren.length * 4L);
+        return new DictionaryAutomaton( builder.caseSensitive, builder.minimumLength, stateCount,
+                IntBuffer.wrap( Arrays.copyOf( builder.failures, stateCount ) ),
+                IntBuffer.wrap( firstChildren ),
+                rootChildren == null ? null : IntBuffer.wrap( rootChildren ),
+                CharBuffer.wrap( labels ),
+                ShortBuffer.wrap( Arrays.copyOf( builder.shortestForward, stateCount ) ),
+                matchBackwards ? ShortBuffer.wrap( Arrays.copyOf( builder.shortestReversed, stateCount ) ) : null,
+                heapBytes, 0 );
+    }
+
+    /**
+     * Adds the first {@link #getMinimumLength() minimum length} characters
+     * of every word, reversed words included, to <code>filter</code>, one
+     * per state at that depth.
+     */
+    void addPrefixes( BloomFilter filter ) {
+        addPrefixes( filter, ROOT, new char[minimumLength], 0 );
+    }
+
+    private void addPrefixes( BloomFilter filter, int state, char[] prefix, int depth ) {
+        if ( depth == prefix.length ) {
+            filter.add( prefix );
+            return;
+        }
+        int end = firstChildren.get( state + 1 );
+        for ( int child = firstChildren.get( state ); child < end; child++ ) {
+            prefix[depth] = labels.get( child );
+            addPrefixes( filter, child, prefix, depth + 1 );
+        }
+    }
+
+    private int child( int state, char c ) {
+        // children are numbered in label order
+        int low = firstChildren.get( state );
+        int high = firstChildren.get( state + 1 ) - 1;
+        while ( low <= high ) {
+            int middle = (low + high) >>> 1;
+            char label = labels.get( middle );
+            if ( label < c ) {
+                low = middle + 1;
+            }
+            else if ( label > c ) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static int child( int[] firstChildren, char[] labels, int state, char c ) {
+        int low = firstChildren[state];
+        int high = firstChildren[state + 1] - 1;
+        while ( low <= high ) {
+            int middle = (low + high) >>> 1;
+            char label = labels[middle];
+            if ( label < c ) {
+                low = middle + 1;
+            }
+            else if ( label > c ) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compiles an automaton from <code>words</code>. Words shorter than
+     * <code>minimumLength</code> can never be reported and are skipped.
+     *
+     * @param words
+     *            The dictionary words, in any order
+     * @param caseSensitive
+     *            False to match words ignoring case, as
+     *            {@link String#compareToIgnoreCase(String)} does
+     * @param minimumLength
+     *            The length of the shortest word to report
+     * @param matchBackwards
+     *            True to also find words that appear reversed
+     * @return The compiled automaton
+     */
+    public static DictionaryAutomaton compile( Iterator<String> words, boolean caseSensitive,
+            int minimumLength, boolean matchBackwards ) {
+        if ( minimumLength < 1 ) {
+            throw new IllegalArgumentException( "minimumLength must be >= 1" );
+        }
+        return new Builder( caseSensitive, minimumLength ).build( words, matchBackwards );
+    }
+
+    /**
+     * Returns the number of distinct prefixes {@link #addPrefixes} adds.
+     */
+    int countPrefixes() {
+        // states are numbered breadth first, so those at one depth are
+        // consecutive and their children are those at the next
+        int low = ROOT;
+        int high = ROOT + 1;
+        for ( int depth = 0; depth < minimumLength; depth++ ) {
+            low = firstChildren.get( low );
+            high = firstChildren.get( high );
+        }
+        return high - low;
+    }
+
+    private static char fold( char c, boolean caseSensitive ) {
+        return caseSensitive ? c : Character.toLowerCase( Character.toUpperCase( c ) );
+    }
+
+    /**
+     * Returns this automaton without the reversed words, sharing its arrays,
+     * for a mapped automaton written to match backwards that is searched
+     * for forward words only.
+     *
+     * @return The automaton that only finds forward words
+     */
+    public DictionaryAutomaton forwardOnly() {
+        if ( shortestReversed == null ) {
+            return this;
+        }
+        return new DictionaryAutomaton( caseSensitive, minimumLength, stateCount, failures, firstChildren,
+                rootChildren, labels, shortestForward, null,
+                mappedBytes > 0 ? 0 : heapBytes - stateCount * 2L, mappedBytes );
+    }
+
+    /**
+     * Returns the bytes held on the heap by the arrays of this automaton,
+     * not counting object headers, which for a mapped automaton is none.
+     *
+     * @return The heap footprint
+     */
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Returns the bytes this automaton is searched in place from, off heap:
+     * the mapped file, or the copy of one that is not a plain file. A
+     * compiled automaton has none.
+     *
+     * @return The off heap footprint
+     */
+    public long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    public int getMinimumLength() {
+        return minimumLength;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    public boolean isMatchBackwards() {
+        return shortestReversed != null;
+    }
+
+    /**
+     * Returns the automaton laid out in <code>buffer</code> as
+     * {@link #write(OutputStream)} writes it, searched in place. Only the
+     * header is read, so a buffer mapped from a file is paged in as it is
+     * searched; its contents are trusted to be what was written.
+     *
+     * @param buffer
+     *            The automaton, from position 0 to the limit
+     * @return The automaton
+     * @throws IOException
+     *             If the buffer does not hold an automaton, or is truncated
+     */
+    public static DictionaryAutomaton map( ByteBuffer buffer ) throws IOException {
+        ByteBuffer header = buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+        if ( header.limit() < HEADER_SIZE || header.getInt( 0 ) != MAGIC ) {
+            throw new IOException( "Not a compiled dictionary" );
+        }
+        if ( header.getInt( 4 ) != VERSION ) {
+            throw new IOException( "Unsupported compiled dictionary version " + header.getInt( 4 ) );
+        }
+        int flags = header.getInt( 8 );
+        int minimumLength = header.getInt( 12 );
+        int stateCount = header.getInt( 16 );
+        boolean denseRoot = (flags & FLAG_DENSE_ROOT) != 0;
+        boolean matchBackwards = (flags & FLAG_MATCH_BACKWARDS) != 0;
+        if ( stateCount < 1 || minimumLength < 1
+                || size( stateCount, denseRoot, matchBackwards ) > header.limit() ) {
+            throw new IOException( "Truncated compiled dictionary" );
+        }
+
+        int offset = HEADER_SIZE;
+        IntBuffer failures = section( header, offset, stateCount * 4 ).asIntBuffer();
+        offset += stateCount * 4;
+        IntBuffer firstChildren = section( header, offset, (stateCount + 1) * 4 ).asIntBuffer();
+        offset += (stateCount + 1) * 4;
+        IntBuffer rootChildren = null;
+        if ( denseRoot ) {
+            rootChildren = section( header, offset, ROOT_CHILDREN * 4 ).asIntBuffer();
+            offset += ROOT_CHILDREN * 4;
+        }
+        CharBuffer labels = section( header, offset, stateCount * 2 ).asCharBuffer();
+        offset += stateCount * 2;
+        ShortBuffer shortestForward = section( header, offset, stateCount * 2 ).asShortBuffer();
+        offset += stateCount * 2;
+        ShortBuffer shortestReversed = matchBackwards
+                ? section( header, offset, stateCount * 2 ).asShortBuffer()
+                : null;
+
+        long bytes = header.limit();
+        return new DictionaryAutomaton( (flags & FLAG_CASE_SENSITIVE) != 0, minimumLength, stateCount, failures,
+                firstChildren, rootChildren, labels, shortestForward, shortestReversed,
+                buffer.isDirect() ? 0 : bytes, buffer.isDirect() ? bytes : 0 );
+    }
+
+    private int next( int state, char c ) {
+        while ( state != ROOT ) {
+            int child = child( state, c );
+            if ( child >= 0 ) {
+                return child;
+            }
+            state = failures.get( state );
+        }
+        if ( rootChildren != null ) {
+            return rootChildren.get( c );
+        }
+        int child = child( ROOT, c );
+        return child < 0 ? ROOT : child;
+    }
+
+    /**
+     * Scans <code>text</code> once for dictionary words.
+     */
+    @Override
+    public WordMatch search( CharSequence text ) {
+        int length = text.length();
+        if ( length < minimumLength ) {
+            return null;
+        }
+
+        int forwardLength = Integer.MAX_VALUE;
+        int forwardStart = -1;
+        int reversedLength = Integer.MAX_VALUE;
+        int reversedStart = -1;
+        int state = ROOT;
+        for ( int i = 0; i < length; i++ ) {
+            state = next( state, fold( text.charAt( i ), caseSensitive ) );
+
+            // the shortest word ending here, the first one found wins a tie
+            int shortest = shortestForward.get( state );
+            if ( shortest != 0 && shortest < forwardLength ) {
+                forwardLength = shortest;
+                forwardStart = i - shortest + 1;
+            }
+
+            // scanning the reversed text, the last one found wins a tie
+            shortest = shortestReversed == null ? 0 : shortestReversed.get( state );
+            if ( shortest != 0 && shortest <= reversedLength ) {
+                reversedLength = shortest;
+                reversedStart = i - shortest + 1;
+            }
+        }
+
+        if ( forwardStart < 0 && reversedStart < 0 ) {
+            return null;
+        }
+        return new WordMatch(
+                forwardStart < 0 ? null : text.subSequence( forwardStart, forwardStart + forwardLength ).toString(),
+                reversedStart < 0 ? null : new StringBuilder( text.subSequence( reversedStart, reversedStart + reversedLength ) )
+                        .reverse().toString() );
+    }
+
+    private static ByteBuffer section( ByteBuffer buffer, int offset, int length ) {
+        ByteBuffer section = buffer.duplicate();
+        section.limit( offset + length );
+        section.position( offset );
+        return section.slice().order( ByteOrder.LITTLE_ENDIAN );
+    }
+
+    private static long size( int stateCount, boolean denseRoot, boolean matchBackwards ) {
+        return HEADER_SIZE + stateCount * 4L + (stateCount + 1) * 4L + (denseRoot ? ROOT_CHILDREN * 4L : 0)
+                + stateCount * 2L + stateCount * 2L + (matchBackwards ? stateCount * 2L : 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::caseSensitive=%s,matchBackwards=%s,minimumLength=%s,states=%s,mapped=%s",
+                getClass().getName(), hashCode(), caseSensitive, isMatchBackwards(), minimumLength, stateCount,
+                mappedBytes > 0 );
+    }
+
+    /**
+     * Writes this automaton in the layout {@link #map(ByteBuffer)} reads.
+     *
+     * @param outputStream
+     *            The stream to write to, left open
+     * @throws IOException
+     *             If the automaton cannot be written, or is too large to map
+     */
+    public void write( OutputStream outputStream ) throws IOException {
+        long size = size( stateCount, rootChildren != null, shortestReversed != null );
+        if ( size > Integer.MAX_VALUE ) {
+            throw new IOException( "Dictionary too large to map" );
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate( (int) size ).order( ByteOrder.LITTLE_ENDIAN );
+        buffer.putInt( MAGIC );
+        buffer.putInt( VERSION );
+        buffer.putInt( (caseSensitive ? FLAG_CASE_SENSITIVE : 0)
+                | (shortestReversed != null ? FLAG_MATCH_BACKWARDS : 0)
+                | (rootChildren != null ? FLAG_DENSE_ROOT : 0) );
+        buffer.putInt( minimumLength );
+        buffer.putInt( stateCount );
+        buffer.asIntBuffer().put( failures.duplicate() );
+        buffer.position( buffer.position() + stateCount * 4 );
+        buffer.asIntBuffer().put( firstChildren.duplicate() );
+        buffer.position( buffer.position() + (stateCount + 1) * 4 );
+        if ( rootChildren != null ) {
+            buffer.asIntBuffer().put( rootChildren.duplicate() );
+            buffer.position( buffer.position() + ROOT_CHILDREN * 4 );
+        }
+        buffer.asCharBuffer().put( labels.duplicate() );
+        buffer.position( buffer.position() + stateCount * 2 );
+        buffer.asShortBuffer().put( shortestForward.duplicate() );
+        buffer.position( buffer.position() + stateCount * 2 );
+        if ( shortestReversed != null ) {
+            buffer.asShortBuffer().put( shortestReversed.duplicate() );
+        }
+        outputStream.write( buffer.array() );
+    }
+
+    private static final class Builder {
+        private final boolean caseSensitive;
+        private final int minimumLength;
+
+        private int[] depths;
+        private int[] failures;
+        private int[] firstChildren;
+        private int[] highs;
+        private char[] labels;
+        private int[] lows;
+        private short[] shortestForward;
+        private short[] shortestReversed;
+        private int stateCount;
+
+        private Builder( boolean caseSensitive, int minimumLength ) {
+            this.caseSensitive = caseSensitive;
+            this.minimumLength = minimumLength;
+        }
+
+        private void allocate( int capacity ) {
+            depths = new int[capacity];
+            failures = new int[capacity];
+            firstChildren = new int[capacity + 1];
+            highs = new int[capacity];
+            labels = new char[capacity];
+            lows = new int[capacity];
+            shortestForward = new short[capacity];
+            shortestReversed = new short[capacity];
+        }
+
+        private int addState( char label, int low, int high, int depth ) {
+            if ( stateCount == labels.length ) {
+                int capacity = labels.length * 2;
+                depths = Arrays.copyOf( depths, capacity );
+                failures = Arrays.copyOf( failures, capacity );
+                firstChildren = Arrays.copyOf( firstChildren, capacity + 1 );
+                highs = Arrays.copyOf( highs, capacity );
+                labels = Arrays.copyOf( labels, capacity );
+                lows = Arrays.copyOf( lows, capacity );
+                shortestForward = Arrays.copyOf( shortestForward, capacity );
+                shortestReversed = Arrays.copyOf( shortestReversed, capacity );
+            }
+            labels[stateCount] = label;
+            lows[stateCount] = low;
+            highs[stateCount] = high;
+            depths[stateCount] = depth;
+            return stateCount++;
+        }
+
+        private DictionaryAutomaton build( Iterator<String> words, boolean matchBackwards ) {
+            List<String> forward = new ArrayList<String>();
+            List<String> reversed = new ArrayList<String>();
+            while ( words.hasNext() ) {
+                String word = words.next();
+                if ( word.length() < minimumLength || word.length() > Short.MAX_VALUE ) {
+                    continue;
+                }
+                char[] folded = word.toCharArray();
+                for ( int i = 0; i < folded.length; i++ ) {
+                    folded[i] = fold( folded[i], caseSensitive );
+                }
+                forward.add( new String( folded ) );
+                if ( matchBackwards ) {
+                    reversed.add( new StringBuilder( folded.length ).append( folded ).reverse().toString() );
+                }
+            }
+
+            String[] forwardWords = sortedUnique( forward );
+            String[] reversedWords = sortedUnique( reversed );
+            forward.addAll( reversed );
+            reversed = null;
+            String[] allWords = sortedUnique( forward );
+            forward = null;
+
+            // there is at most a state per character, which for a handful of
+            // words, such as the account information of one user, is exact
+            long characterCount = 0;
+            for ( String word : allWords ) {
+                characterCount += word.length();
+            }
+            allocate( (int) Math.min( INITIAL_CAPACITY, characterCount + 1 ) );
+
+            // breadth first, so each state's children are numbered consecutively
+            addState( (char) 0, 0, allWords.length, 0 );
+            for ( int state = 0; state < stateCount; state++ ) {
+                firstChildren[state] = stateCount;
+                int depth = depths[state];
+                int high = highs[state];
+                int low = lows[state];
+                while ( low < high && allWords[low].length() == depth ) {
+                    // the word that ends at this state sorts first
+                    low++;
+                }
+                while ( low < high ) {
+                    char c = allWords[low].charAt( depth );
+                    int end = low + 1;
+                    while ( end < high && allWords[end].charAt( depth ) == c ) {
+                        end++;
+                    }
+                    int child = addState( c, low, end, depth + 1 );
+                    int failure = state == ROOT ? ROOT : transition( failures[state], c );
+                    failures[child] = failure;
+                    boolean terminal = allWords[low].length() == depth + 1;
+                    shortestForward[child] = shortest( shortestForward[failure],
+                            terminal && Arrays.binarySearch( forwardWords, allWords[low] ) >= 0, depth + 1 );
+                    shortestReversed[child] = shortest( shortestReversed[failure],
+                            terminal && Arrays.binarySearch( reversedWords, allWords[low] ) >= 0, depth + 1 );
+                    low = end;
+                }
+            }
+            firstChildren[stateCount] = stateCount;
+
+            depths = null;
+            highs = null;
+            lows = null;
+            return fromBuilder( this, matchBackwards );
+        }
+
+        private short shortest( short suffixShortest, boolean terminal, int length ) {
+            // a suffix is always shorter than the word itself
+            if ( suffixShortest != 0 ) {
+                return suffixShortest;
+            }
+            return terminal ? (short) length : 0;
+        }
+
+        private String[] sortedUnique( List<String> words ) {
+            String[] sorted = words.toArray( new String[words.size()] );
+            Arrays.sort( sorted );
+            int count = 0;
+            for ( int i = 0; i < sorted.length; i++ ) {
+                if ( count == 0 || !sorted[i].equals( sorted[count - 1] ) ) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf( sorted, count );
+        }
+
+        private int transition( int state, char c ) {
+            // only called for states shallower than the one being expanded,
+            // whose children are all numbered already
+            while ( true ) {
+                int child = child( firstChildren, labels, state, c );
+                if ( child >= 0 ) {
+                    return child;
+                }
+                if ( state == ROOT ) {
+                    return ROOT;
+                }
+                state = failures[state];
+            }
+        }
+    }
+}
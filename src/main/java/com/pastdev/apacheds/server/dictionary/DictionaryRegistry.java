@@ -0,0 +1,455 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+import edu.vt.middleware.dictionary.WordLists;
+import edu.vt.middleware.dictionary.sort.ArraysSort;
+
+
+/**
+ * Holds the dictionaries of every validator in the JVM, so that validators
+ * with the same dictionary settings share one loaded dictionary rather than
+ * each holding a copy. A dictionary is kept while any {@link Lease} on it is
+ * unreleased, and dropped with the last one.
+ * <p>
+ * Dictionaries load in the background. {@link #acquire} returns at once,
+ * and a lease only waits for the load when it is first searched, so
+ * whatever a validator checks before the dictionary is not held up by it.
+ * <p>
+ * A dictionary is the {@link DictionaryAutomaton} mapped from the binary
+ * dictionary generated next to its word list, which is searched in place
+ * off heap, or if there is none for its settings, the automaton compiled
+ * from the word list itself, optionally screened by a {@link BloomFilter}.
+ * Its footprint is reported by
+ * {@link #getDictionaries()}, or over JMX once {@link #register()} is
+ * called.
+ */
+public final class DictionaryRegistry implements DictionaryRegistryMXBean {
+    private static final String DOMAIN = "com.pastdev.apacheds.server";
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final Logger logger = LoggerFactory.getLogger( DictionaryRegistry.class );
+
+    private static final DictionaryRegistry INSTANCE = new DictionaryRegistry(
+            Executors.newCachedThreadPool( new ThreadFactory() {
+                private final AtomicInteger threads = new AtomicInteger();
+
+                @Override
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "dictionary-loader-" + threads.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } ) );
+
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+    private final Executor executor;
+    private ObjectName objectName;
+
+    DictionaryRegistry( Executor executor ) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns a lease on the dictionary with these settings, starting to
+     * load it unless it is already held. Every setting is part of what is
+     * shared, as each is built into the loaded dictionary. A dictionary that
+     * failed to load is loaded again.
+     *
+     * @param classLoader
+     *            The loader of the dictionary resources
+     * @param resource
+     *            The word list resource, one word per line
+     * @param caseSensitive
+     *            False to match words ignoring case
+     * @param minimumLength
+     *            The length of the shortest word to match
+     * @param matchBackwards
+     *            True to also match reversed words
+     * @return The lease, to release once no longer used
+     */
+    public Lease acquire( ClassLoader classLoader, String resource, boolean caseSensitive,
+            int minimumLength, boolean matchBackwards ) {
+        return acquire( classLoader, resource, caseSensitive, minimumLength, matchBackwards, 0 );
+    }
+
+    /**
+     * Returns a lease on the dictionary with these settings, screened by a
+     * {@link BloomFilter} of <code>prefilterBitsPerPrefix</code> bits per
+     * prefix, or by none if that is 0.
+     *
+     * @param classLoader
+     *            The loader of the dictionary resources
+     * @param resource
+     *            The word list resource, one word per line
+     * @param caseSensitive
+     *            False to match words ignoring case
+     * @param minimumLength
+     *            The length of the shortest word to match
+     * @param matchBackwards
+     *            True to also match reversed words
+     * @param prefilterBitsPerPrefix
+     *            The size of the prefilter, or 0
+     * @return The lease, to release once no longer used
+     * @see #acquire(ClassLoader, String, boolean, int, boolean)
+     */
+    public synchronized Lease acquire( ClassLoader classLoader, String resource, boolean caseSensitive,
+            int minimumLength, boolean matchBackwards, int prefilterBitsPerPrefix ) {
+        if ( prefilterBitsPerPrefix < 0 ) {
+            throw new IllegalArgumentException( "prefilterBitsPerPrefix must be >= 0" );
+        }
+        Key key = new Key( resource, caseSensitive, minimumLength, matchBackwards, prefilterBitsPerPrefix );
+        Entry entry = entries.get( key );
+        if ( entry == null || entry.isFailed() ) {
+            entry = new Entry( key, classLoader );
+            entries.put( key, entry );
+            executor.execute( entry.task );
+        }
+        entry.references++;
+        return new Lease( entry );
+    }
+
+    @Override
+    public synchronized List<DictionaryStatistics> getDictionaries() {
+        List<DictionaryStatistics> statistics = new ArrayList<DictionaryStatistics>();
+        for ( Entry entry : entries.values() ) {
+            statistics.add( entry.getStatistics() );
+        }
+        return statistics;
+    }
+
+    @Override
+    public synchronized long getHeapBytes() {
+        long bytes = 0;
+        for ( Entry entry : entries.values() ) {
+            bytes += entry.heapBytes;
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized long getMappedBytes() {
+        long bytes = 0;
+        for ( Entry entry : entries.values() ) {
+            bytes += entry.mappedBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the registry shared by every validator in the JVM.
+     *
+     * @return The registry
+     */
+    public static DictionaryRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Drops the dictionaries loaded from <code>resource</code> before
+     * <code>modifiedMillis</code>, so that the next lease on one loads the
+     * changed resource. Unreleased leases keep the dictionary they have.
+     * Those loaded since are kept, so a change seen by several validators
+     * loads the resource once.
+     *
+     * @param resource
+     *            The word list resource
+     * @param modifiedMillis
+     *            When the word list or its binary dictionary changed
+     */
+    public synchronized void invalidate( String resource, long modifiedMillis ) {
+        for ( Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if ( entry.key.resource.equals( resource ) && entry.created < modifiedMillis ) {
+                iterator.remove();
+                logger.debug( "Invalidated dictionary {}", resource );
+            }
+        }
+    }
+
+    /**
+     * Registers this registry with the platform MBean server, as
+     * <code>com.pastdev.apacheds.server:type=DictionaryRegistry</code>.
+     *
+     * @return The name registered under
+     * @throws JMException
+     *             If the name is taken
+     */
+    public synchronized ObjectName register() throws JMException {
+        ObjectName objectName = new ObjectName( DOMAIN + ":type=DictionaryRegistry" );
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+        this.objectName = objectName;
+        return objectName;
+    }
+
+    private synchronized void release( Entry entry ) {
+        if ( --entry.references == 0 && entries.get( entry.key ) == entry ) {
+            // a load still running finishes, but nothing will wait for it
+            entries.remove( entry.key );
+            logger.debug( "Released dictionary {}", entry.key.resource );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::dictionaries=%s", getClass().getName(), hashCode(), entries.size() );
+    }
+
+    /**
+     * Unregisters this registry if {@link #register()} registered it.
+     *
+     * @throws JMException
+     *             If it was unregistered by other means
+     */
+    public synchronized void unregister() throws JMException {
+        if ( objectName != null ) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+            objectName = null;
+        }
+    }
+
+    /**
+     * A dictionary of the registry and its load, guarded by the registry
+     * but for the fields the load publishes.
+     */
+    private static final class Entry implements Callable<WordMatcher> {
+        private final ClassLoader classLoader;
+        private final long created = System.currentTimeMillis();
+        private final Key key;
+        private final FutureTask<WordMatcher> task = new FutureTask<WordMatcher>( this );
+        private volatile long heapBytes;
+        private volatile long loadMillis;
+        private volatile long mappedBytes;
+        private volatile WordMatcher matcher;
+        private volatile BloomFilter prefilter;
+        private int references;
+
+        private Entry( Key key, ClassLoader classLoader ) {
+            this.key = key;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public WordMatcher call() throws IOException {
+            long start = System.nanoTime();
+            DictionaryAutomaton automaton = loadBinaryDictionary();
+            if ( automaton == null ) {
+                automaton = DictionaryAutomaton.compile( loadWordList(), key.caseSensitive, key.minimumLength,
+                        key.matchBackwards );
+            }
+            long heapBytes = automaton.getHeapBytes();
+            mappedBytes = automaton.getMappedBytes();
+            WordMatcher matcher = automaton;
+            if ( key.prefilterBitsPerPrefix > 0 ) {
+                BloomFilter prefilter = BloomFilter.build( automaton, key.prefilterBitsPerPrefix );
+                heapBytes += prefilter.getHeapBytes();
+                matcher = prefilter;
+                this.prefilter = prefilter;
+            }
+            this.heapBytes = heapBytes;
+            loadMillis = Math.max( 1, (System.nanoTime() - start) / 1000000 );
+            logger.debug( "Loaded dictionary {} in {}ms as {}", key.resource, loadMillis, matcher );
+            this.matcher = matcher;
+            return matcher;
+        }
+
+        /**
+         * Returns the loaded matcher, waiting for the load if need be. Once
+         * loaded this is a single volatile read.
+         */
+        private WordMatcher get() {
+            WordMatcher matcher = this.matcher;
+            if ( matcher != null ) {
+                return matcher;
+            }
+            try {
+                return task.get();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted loading dictionary " + key.resource, e );
+            }
+            catch ( ExecutionException e ) {
+                throw new IllegalStateException( "Unable to load dictionary", e.getCause() );
+            }
+        }
+
+        private DictionaryStatistics getStatistics() {
+            String state;
+            if ( !task.isDone() ) {
+                state = "LOADING";
+            }
+            else {
+                state = isFailed() ? "FAILED" : "LOADED";
+            }
+            BloomFilter prefilter = this.prefilter;
+            return new DictionaryStatistics( key.resource, key.caseSensitive, key.matchBackwards,
+                    references, state, loadMillis, heapBytes, mappedBytes, key.prefilterBitsPerPrefix,
+                    prefilter == null ? 0 : prefilter.getHitRatio(),
+                    prefilter == null ? 0 : prefilter.getFalsePositiveRate() );
+        }
+
+        private boolean isFailed() {
+            return task.isDone() && matcher == null;
+        }
+
+        /**
+         * Returns the automaton mapped from the binary dictionary generated
+         * at build time next to the word list, or null, so that the word
+         * list is compiled instead, if there is none or it was compiled with
+         * other settings.
+         */
+        private DictionaryAutomaton loadBinaryDictionary() throws IOException {
+            URL binary = classLoader.getResource( key.resource + BinaryDictionary.EXTENSION );
+            if ( binary == null ) {
+                return null;
+            }
+            DictionaryAutomaton automaton = BinaryDictionary.open( binary );
+            if ( automaton.isCaseSensitive() != key.caseSensitive
+                    || automaton.getMinimumLength() != key.minimumLength
+                    || (key.matchBackwards && !automaton.isMatchBackwards()) ) {
+                logger.warn( "Binary dictionary {} is {}, falling back to {}", binary, automaton, key.resource );
+                return null;
+            }
+            logger.debug( "Using binary dictionary {}", binary );
+            return key.matchBackwards ? automaton : automaton.forwardOnly();
+        }
+
+        private Iterator<String> loadWordList() throws IOException {
+            InputStream inputStream = classLoader.getResourceAsStream( key.resource );
+            if ( inputStream == null ) {
+                throw new IOException( "Dictionary not found: " + key.resource );
+            }
+            try (Reader reader = new InputStreamReader( inputStream, UTF_8 )) {
+                return WordLists.createFromReader( new Reader[] { reader }, key.caseSensitive, new ArraysSort() )
+                        .iterator();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final boolean caseSensitive;
+        private final boolean matchBackwards;
+        private final int minimumLength;
+        private final int prefilterBitsPerPrefix;
+        private final String resource;
+
+        private Key( String resource, boolean caseSensitive, int minimumLength, boolean matchBackwards,
+                int prefilterBitsPerPrefix ) {
+            this.resource = resource;
+            this.caseSensitive = caseSensitive;
+            this.minimumLength = minimumLength;
+            this.matchBackwards = matchBackwards;
+            this.prefilterBitsPerPrefix = prefilterBitsPerPrefix;
+        }
+
+        @Override
+        public boolean equals( Object object ) {
+            if ( !(object instanceof Key) ) {
+                return false;
+            }
+            Key other = (Key) object;
+            return resource.equals( other.resource ) && caseSensitive == other.caseSensitive
+                    && minimumLength == other.minimumLength && matchBackwards == other.matchBackwards
+                    && prefilterBitsPerPrefix == other.prefilterBitsPerPrefix;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = resource.hashCode();
+            hash = hash * 31 + (caseSensitive ? 1 : 0);
+            hash = hash * 31 + minimumLength;
+            hash = hash * 31 + (matchBackwards ? 1 : 0);
+            return hash * 31 + prefilterBitsPerPrefix;
+        }
+    }
+
+    /**
+     * A validator's hold on a shared dictionary, searched as the dictionary
+     * itself once it is loaded. Searching before then waits for the load,
+     * and throws an {@link IllegalStateException} if it failed.
+     */
+    public final class Lease implements WordMatcher {
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease( Entry entry ) {
+            this.entry = entry;
+        }
+
+        /**
+         * Returns the loaded dictionary, waiting for the load if need be.
+         *
+         * @return The dictionary
+         */
+        public WordMatcher getMatcher() {
+            return entry.get();
+        }
+
+        /**
+         * Returns the filter screening the loaded dictionary, whose counters
+         * show how well it is sized, or null if it has none. Waits for the
+         * load if need be.
+         *
+         * @return The prefilter
+         */
+        public BloomFilter getPrefilter() {
+            entry.get();
+            return entry.prefilter;
+        }
+
+        public boolean isLoaded() {
+            return entry.matcher != null;
+        }
+
+        /**
+         * Gives up this lease. The dictionary is dropped from the registry
+         * with its last lease, though a validation still using it is not
+         * affected. Releasing again does nothing.
+         */
+        public void release() {
+            if ( released.compareAndSet( false, true ) ) {
+                DictionaryRegistry.this.release( entry );
+            }
+        }
+
+        @Override
+        public WordMatch search( CharSequence text ) {
+            return entry.get().search( text );
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s@%h::resource=%s,loaded=%s", getClass().getName(), hashCode(),
+                    entry.key.resource, isLoaded() );
+        }
+    }
+}
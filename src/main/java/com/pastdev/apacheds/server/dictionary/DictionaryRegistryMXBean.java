@@ -0,0 +1,31 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.util.List;
+
+
+/**
+ * The JMX view of the {@link DictionaryRegistry}.
+ */
+public interface DictionaryRegistryMXBean {
+    /**
+     * Returns the statistics of each dictionary currently held.
+     *
+     * @return The dictionary statistics
+     */
+    public List<DictionaryStatistics> getDictionaries();
+
+    /**
+     * Returns the heap bytes of every loaded dictionary together.
+     *
+     * @return The heap footprint
+     */
+    public long getHeapBytes();
+
+    /**
+     * Returns the off heap bytes of every mapped dictionary together.
+     *
+     * @return The mapped footprint
+     */
+    public long getMappedBytes();
+}
@@ -0,0 +1,126 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+/**
+ * A point in time view of one dictionary held by the
+ * {@link DictionaryRegistry}: what it was loaded from, how many validators
+ * share it, and what it costs. Heap bytes count the arrays of an automaton
+ * compiled from a word list, mapped bytes those of one mapped from a binary
+ * dictionary, which live off heap; both are 0 until it is loaded. Heap
+ * bytes include the {@link BloomFilter} screening it, if any, whose hit
+ * ratio and false positive rate show how well it is sized.
+ */
+public final class DictionaryStatistics {
+    private final boolean caseSensitive;
+    private final long heapBytes;
+    private final long loadMillis;
+    private final long mappedBytes;
+    private final boolean matchBackwards;
+    private final int prefilterBitsPerPrefix;
+    private final double prefilterFalsePositiveRate;
+    private final double prefilterHitRatio;
+    private final int references;
+    private final String resource;
+    private final String state;
+
+    DictionaryStatistics( String resource, boolean caseSensitive, boolean matchBackwards, int references,
+            String state, long loadMillis, long heapBytes, long mappedBytes, int prefilterBitsPerPrefix,
+            double prefilterHitRatio, double prefilterFalsePositiveRate ) {
+        this.resource = resource;
+        this.caseSensitive = caseSensitive;
+        this.matchBackwards = matchBackwards;
+        this.references = references;
+        this.state = state;
+        this.loadMillis = loadMillis;
+        this.heapBytes = heapBytes;
+        this.mappedBytes = mappedBytes;
+        this.prefilterBitsPerPrefix = prefilterBitsPerPrefix;
+        this.prefilterHitRatio = prefilterHitRatio;
+        this.prefilterFalsePositiveRate = prefilterFalsePositiveRate;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Returns how long the dictionary took to load, or 0 while it loads.
+     *
+     * @return The load time in milliseconds
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * Returns the size of the prefilter in bits per prefix, or 0 if there
+     * is none.
+     *
+     * @return The prefilter size
+     */
+    public int getPrefilterBitsPerPrefix() {
+        return prefilterBitsPerPrefix;
+    }
+
+    /**
+     * @return The prefilter false positive rate
+     * @see BloomFilter#getFalsePositiveRate()
+     */
+    public double getPrefilterFalsePositiveRate() {
+        return prefilterFalsePositiveRate;
+    }
+
+    /**
+     * @return The prefilter hit ratio
+     * @see BloomFilter#getHitRatio()
+     */
+    public double getPrefilterHitRatio() {
+        return prefilterHitRatio;
+    }
+
+    /**
+     * Returns the number of unreleased leases on the dictionary, one per
+     * validator using it.
+     *
+     * @return The reference count
+     */
+    public int getReferences() {
+        return references;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * Returns <code>LOADING</code>, <code>LOADED</code> or
+     * <code>FAILED</code>.
+     *
+     * @return The load state
+     */
+    public String getState() {
+        return state;
+    }
+
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    public boolean isMatchBackwards() {
+        return matchBackwards;
+    }
+
+    @Override
+    public String toString() {
+        return "{DictionaryStatistics:{resource:" + resource + ",caseSensitive:" + caseSensitive
+                + ",matchBackwards:" + matchBackwards
+                + ",references:" + references + ",state:" + state + ",loadMillis:" + loadMillis
+                + ",heapBytes:" + heapBytes + ",mappedBytes:" + mappedBytes
+                + ",prefilterBitsPerPrefix:" + prefilterBitsPerPrefix + ",prefilterHitRatio:" + prefilterHitRatio
+                + ",prefilterFalsePositiveRate:" + prefilterFalsePositiveRate + "}}";
+    }
+}
@@ -0,0 +1,363 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+
+/**
+ * The frequency ranks of common passwords and words, 1 being the most
+ * common, held as a trie so that every ranked word starting at a position
+ * of a password is found by walking forward from it one character at a
+ * time. Words are folded to lower case, and limited to
+ * {@link #MAX_WORD_LENGTH} characters, which bounds each walk.
+ * <p>
+ * The trie is built at build time by {@link #main(String[])} from a text
+ * list, one word per line, most common first, and written as:
+ *
+ * <pre>
+ * int     magic ("PDFT")
+ * int     version
+ * int     state count (n), the root being state 0
+ * char[]  n labels, the character leading to each state
+ * int[]   n first children, or -1
+ * int[]   n next siblings, in label order, or -1
+ * int[]   n ranks, or 0 if the state ends no word
+ * </pre>
+ *
+ * so loading it is a bulk copy into arrays rather than a parse and sort of
+ * the list.
+ *
+ * @author LTHEISEN
+ */
+public final class FrequencyTable {
+    public static final String EXTENSION = ".rank";
+    public static final int MAX_WORD_LENGTH = 32;
+    public static final int ROOT = 0;
+
+    private static final int MAGIC = 0x50444654;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int NONE = -1;
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final int[] firstChildren;
+    private final char[] labels;
+    private final int[] nextSiblings;
+    private final int[] ranks;
+    private final int[] rootChildren = new int[128];
+    private final int size;
+
+    private FrequencyTable( char[] labels, int[] firstChildren, int[] nextSiblings, int[] ranks ) {
+        this.labels = labels;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.ranks = ranks;
+
+        Arrays.fill( rootChildren, NONE );
+        for ( int child = firstChildren[ROOT]; child != NONE; child = nextSiblings[child] ) {
+            if ( labels[child] < rootChildren.length ) {
+                rootChildren[labels[child]] = child;
+            }
+        }
+        int words = 0;
+        for ( int rank : ranks ) {
+            if ( rank > 0 ) {
+                words++;
+            }
+        }
+        this.size = words;
+    }
+
+    /**
+     * Builds a table from <code>words</code>, most common first. Words are
+     * trimmed and folded, and blank, repeated and overlong ones are
+     * skipped, a repeat keeping its first rank.
+     *
+     * @param words
+     *            The ranked word list
+     * @return The table
+     * @throws IOException
+     *             If the list cannot be read
+     */
+    public static FrequencyTable compile( Reader words ) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader reader = words instanceof BufferedReader
+                ? (BufferedReader) words
+                : new BufferedReader( words );
+        int rank = 0;
+        String line;
+        while ( (line = reader.readLine()) != null ) {
+            String word = line.trim();
+            if ( !word.isEmpty() && word.length() <= MAX_WORD_LENGTH && builder.add( word, rank + 1 ) ) {
+                rank++;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Folds <code>c</code> as the words of a table are folded.
+     *
+     * @param c
+     *            The character
+     * @return The folded character
+     */
+    public static char fold( char c ) {
+        return c < 128
+                ? (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c)
+                : Character.toLowerCase( Character.toUpperCase( c ) );
+    }
+
+    /**
+     * Reads the ranked word list resource <code>name</code>, preferring the
+     * table generated next to it, <code>name</code> with an
+     * {@link #EXTENSION} suffix.
+     *
+     * @param classLoader
+     *            The loader of the resources
+     * @param name
+     *            The word list resource
+     * @return The table, or null if there is neither resource
+     * @throws IOException
+     *             If a resource cannot be read
+     */
+    public static FrequencyTable load( ClassLoader classLoader, String name ) throws IOException {
+        URL table = classLoader.getResource( name + EXTENSION );
+        if ( table != null ) {
+            return open( table );
+        }
+        URL list = classLoader.getResource( name );
+        if ( list == null ) {
+            return null;
+        }
+        try (InputStream inputStream = list.openStream()) {
+            return compile( new InputStreamReader( inputStream, UTF_8 ) );
+        }
+    }
+
+    /**
+     * Generates a table from a text list, one word per line, most common
+     * first.
+     *
+     * <pre>
+     * FrequencyTable &lt;ranked word list&gt; &lt;table&gt;
+     * </pre>
+     *
+     * @param args
+     *            The word list and the file to write
+     * @throws IOException
+     *             If the list cannot be read or the table written
+     */
+    public static void main( String[] args ) throws IOException {
+        if ( args.length != 2 ) {
+            throw new IllegalArgumentException( "usage: FrequencyTable <ranked word list> <table>" );
+        }
+        FrequencyTable table;
+        try (Reader reader = Files.newBufferedReader( Paths.get( args[0] ), UTF_8 )) {
+            table = compile( reader );
+        }
+
+        Path output = Paths.get( args[1] );
+        if ( output.getParent() != null ) {
+            Files.createDirectories( output.getParent() );
+        }
+        try (OutputStream outputStream = Files.newOutputStream( output )) {
+            table.write( outputStream );
+        }
+    }
+
+    /**
+     * Returns the state reached from <code>state</code> by the folded
+     * character <code>c</code>, or -1 if no word continues that way.
+     *
+     * @param state
+     *            The current state
+     * @param c
+     *            The next character, already folded
+     * @return The next state, or -1
+     */
+    public int next( int state, char c ) {
+        if ( state == ROOT && c < rootChildren.length ) {
+            return rootChildren[c];
+        }
+        for ( int child = firstChildren[state]; child != NONE && labels[child] <= c; child = nextSiblings[child] ) {
+            if ( labels[child] == c ) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Loads the table written at <code>url</code> by
+     * {@link #write(OutputStream)}.
+     *
+     * @param url
+     *            The table resource
+     * @return The table
+     * @throws IOException
+     *             If the resource cannot be read or is not a table
+     */
+    public static FrequencyTable open( URL url ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream inputStream = url.openStream()) {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ( (read = inputStream.read( chunk )) >= 0 ) {
+                bytes.write( chunk, 0, read );
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap( bytes.toByteArray() );
+        if ( buffer.capacity() < HEADER_SIZE || buffer.getInt( 0 ) != MAGIC ) {
+            throw new IOException( "Not a frequency table" );
+        }
+        if ( buffer.getInt( 4 ) != VERSION ) {
+            throw new IOException( "Unsupported frequency table version " + buffer.getInt( 4 ) );
+        }
+        int states = buffer.getInt( 8 );
+        if ( states < 1 || HEADER_SIZE + states * 14L != buffer.capacity() ) {
+            throw new IOException( "Truncated frequency table" );
+        }
+        buffer.position( HEADER_SIZE );
+        char[] labels = new char[states];
+        buffer.asCharBuffer().get( labels );
+        buffer.position( buffer.position() + states * 2 );
+        int[][] arrays = new int[3][states];
+        for ( int[] array : arrays ) {
+            buffer.asIntBuffer().get( array );
+            buffer.position( buffer.position() + states * 4 );
+        }
+        return new FrequencyTable( labels, arrays[0], arrays[1], arrays[2] );
+    }
+
+    /**
+     * Returns the rank of the word ending at <code>state</code>, or 0 if
+     * none does.
+     *
+     * @param state
+     *            The state
+     * @return The rank, or 0
+     */
+    public int rank( int state ) {
+        return ranks[state];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::size=%s,states=%s", getClass().getName(), hashCode(), size, labels.length );
+    }
+
+    /**
+     * Writes this table in the format {@link #open(URL)} reads.
+     *
+     * @param outputStream
+     *            The stream to write to, left open
+     * @throws IOException
+     *             If the table cannot be written
+     */
+    public void write( OutputStream outputStream ) throws IOException {
+        DataOutputStream output = new DataOutputStream( new BufferedOutputStream( outputStream ) );
+        output.writeInt( MAGIC );
+        output.writeInt( VERSION );
+        output.writeInt( labels.length );
+        for ( char label : labels ) {
+            output.writeChar( label );
+        }
+        for ( int[] array : new int[][] { firstChildren, nextSiblings, ranks } ) {
+            for ( int value : array ) {
+                output.writeInt( value );
+            }
+        }
+        output.flush();
+    }
+
+    private static final class Builder {
+        private int[] firstChildren = new int[1024];
+        private char[] labels = new char[1024];
+        private int[] nextSiblings = new int[1024];
+        private int[] ranks = new int[1024];
+        private int states = 1;
+
+        private Builder() {
+            firstChildren[ROOT] = NONE;
+            nextSiblings[ROOT] = NONE;
+        }
+
+        /**
+         * Adds <code>word</code> with <code>rank</code>, returning false if
+         * it is already ranked.
+         */
+        private boolean add( String word, int rank ) {
+            int state = ROOT;
+            for ( int i = 0; i < word.length(); i++ ) {
+                state = child( state, fold( word.charAt( i ) ) );
+            }
+            if ( ranks[state] != 0 ) {
+                return false;
+            }
+            ranks[state] = rank;
+            return true;
+        }
+
+        private FrequencyTable build() {
+            return new FrequencyTable( Arrays.copyOf( labels, states ), Arrays.copyOf( firstChildren, states ),
+                    Arrays.copyOf( nextSiblings, states ), Arrays.copyOf( ranks, states ) );
+        }
+
+        /**
+         * Returns the child of <code>state</code> labelled <code>c</code>,
+         * adding it in label order if there is none.
+         */
+        private int child( int state, char c ) {
+            int previous = NONE;
+            int child = firstChildren[state];
+            while ( child != NONE && labels[child] < c ) {
+                previous = child;
+                child = nextSiblings[child];
+            }
+            if ( child != NONE && labels[child] == c ) {
+                return child;
+            }
+
+            if ( states == labels.length ) {
+                int capacity = states * 2;
+                labels = Arrays.copyOf( labels, capacity );
+                firstChildren = Arrays.copyOf( firstChildren, capacity );
+                nextSiblings = Arrays.copyOf( nextSiblings, capacity );
+                ranks = Arrays.copyOf( ranks, capacity );
+            }
+            int added = states++;
+            labels[added] = c;
+            firstChildren[added] = NONE;
+            nextSiblings[added] = child;
+            ranks[added] = 0;
+            if ( previous == NONE ) {
+                firstChildren[state] = added;
+            }
+            else {
+                nextSiblings[previous] = added;
+            }
+            return added;
+        }
+    }
+}
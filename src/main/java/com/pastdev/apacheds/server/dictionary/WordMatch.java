@@ -0,0 +1,39 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+/**
+ * The dictionary words found in a text by a {@link WordMatcher}.
+ */
+public final class WordMatch {
+    private final String reversedWord;
+    private final String word;
+
+    public WordMatch( String word, String reversedWord ) {
+        this.word = word;
+        this.reversedWord = reversedWord;
+    }
+
+    /**
+     * Returns the word found in the reversed text, as it appears in the
+     * reversed text, or null.
+     *
+     * @return The reversed word
+     */
+    public String getReversedWord() {
+        return reversedWord;
+    }
+
+    /**
+     * Returns the word found, as it appears in the text, or null.
+     *
+     * @return The word
+     */
+    public String getWord() {
+        return word;
+    }
+
+    @Override
+    public String toString() {
+        return "{WordMatch:{word:" + word + ",reversedWord:" + reversedWord + "}}";
+    }
+}
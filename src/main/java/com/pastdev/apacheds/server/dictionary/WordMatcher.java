@@ -0,0 +1,19 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+/**
+ * Finds dictionary words embedded in a text the way
+ * {@link edu.vt.middleware.password.DictionarySubstringRule} does: the
+ * shortest word, and the leftmost of those, both in the text and, optionally,
+ * in the reversed text. Implementations must be safe for concurrent use.
+ */
+public interface WordMatcher {
+    /**
+     * Searches <code>text</code> for dictionary words.
+     *
+     * @param text
+     *            The text to search
+     * @return The words found, or null if there are none
+     */
+    public WordMatch search( CharSequence text );
+}
@@ -0,0 +1,120 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A lock free histogram of latencies in nanoseconds, with buckets laid out
+ * as in an <a href="http://hdrhistogram.org/">HdrHistogram</a>: each power
+ * of two is split into {@value #SUB_BUCKETS} linear buckets, so any recorded
+ * value is reported within 1/{@value #SUB_BUCKETS} of itself, from a
+ * nanosecond up to the full range of a <code>long</code>, in a fixed 960
+ * buckets.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+    private final AtomicLong maximum = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Returns the largest value that shares the bucket at <code>index</code>.
+     */
+    static long highestEquivalentValue( int index ) {
+        if ( index < 2 * SUB_BUCKETS ) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index - shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    static int index( long value ) {
+        if ( value < 2 * SUB_BUCKETS ) {
+            return (int) Math.max( 0, value );
+        }
+        int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    void record( long nanos ) {
+        counts.incrementAndGet( index( nanos ) );
+        sum.addAndGet( Math.max( 0, nanos ) );
+        long current = maximum.get();
+        while ( nanos > current && !maximum.compareAndSet( current, nanos ) ) {
+            current = maximum.get();
+        }
+    }
+
+    void reset() {
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            counts.set( i, 0 );
+        }
+        maximum.set( 0 );
+        sum.set( 0 );
+    }
+
+    /**
+     * Returns a copy of the histogram to read percentiles from. Values
+     * recorded while it is taken may or may not be in it.
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            copy[i] = counts.get( i );
+            total += copy[i];
+        }
+        return new Snapshot( copy, total, sum.get(), maximum.get() );
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        private final long maximum;
+        private final long sum;
+        private final long total;
+
+        private Snapshot( long[] counts, long total, long sum, long maximum ) {
+            this.counts = counts;
+            this.total = total;
+            this.sum = sum;
+            this.maximum = maximum;
+        }
+
+        long getCount() {
+            return total;
+        }
+
+        long getMaximum() {
+            return maximum;
+        }
+
+        double getMean() {
+            return total == 0 ? 0 : (double) sum / total;
+        }
+
+        /**
+         * Returns the value that <code>percentile</code> percent of the
+         * recorded values are at or below, or 0 if there are none.
+         */
+        long getValueAtPercentile( double percentile ) {
+            if ( total == 0 ) {
+                return 0;
+            }
+            long rank = Math.max( 1, (long) Math.ceil( percentile / 100 * total ) );
+            long seen = 0;
+            for ( int i = 0; i < counts.length; i++ ) {
+                seen += counts[i];
+                if ( seen >= rank ) {
+                    return Math.min( highestEquivalentValue( i ), maximum );
+                }
+            }
+            return maximum;
+        }
+    }
+}
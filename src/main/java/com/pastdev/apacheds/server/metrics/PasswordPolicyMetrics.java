@@ -0,0 +1,213 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * The per rule latencies and counts, and the counts per rejection error
+ * code, of a password validator. They outlive recompiling the policy, so
+ * they cover every validation since the last {@link #reset()}. Read them
+ * with {@link #getRuleStatistics()} and {@link #getRejectionCounts()}, or
+ * over JMX once {@link #register(String)} is called.
+ * <p>
+ * Nothing is measured while the sample interval is 0, the default; the
+ * validator then leaves its rules unwrapped, so there is no overhead at all.
+ * Validations refused or timed out by the offload pool are counted anyway,
+ * as they are rare and each one fails a password change.
+ */
+public final class PasswordPolicyMetrics implements PasswordPolicyMetricsMXBean {
+    private static final String DOMAIN = "com.pastdev.apacheds.server";
+
+    private final AtomicLong offloadRejections = new AtomicLong();
+    private final AtomicLong offloadTimeouts = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> rejectionCounts = new ConcurrentHashMap<String, AtomicLong>();
+    private final Map<String, RuleMetrics> ruleMetrics = new LinkedHashMap<String, RuleMetrics>();
+    private ObjectName objectName;
+    private volatile BlockingQueue<?> offloadQueue;
+    private volatile int sampleInterval;
+
+    @Override
+    public int getOffloadQueueDepth() {
+        BlockingQueue<?> queue = offloadQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public long getOffloadRejections() {
+        return offloadRejections.get();
+    }
+
+    @Override
+    public long getOffloadTimeouts() {
+        return offloadTimeouts.get();
+    }
+
+    @Override
+    public Map<String, Long> getRejectionCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for ( Map.Entry<String, AtomicLong> entry : rejectionCounts.entrySet() ) {
+            counts.put( entry.getKey(), entry.getValue().get() );
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the metrics of the rule called <code>name</code>, creating
+     * them the first time.
+     *
+     * @param name
+     *            The rule name
+     * @return The rule metrics
+     */
+    public synchronized RuleMetrics getRuleMetrics( String name ) {
+        RuleMetrics metrics = ruleMetrics.get( name );
+        if ( metrics == null ) {
+            metrics = new RuleMetrics( this, name );
+            ruleMetrics.put( name, metrics );
+        }
+        return metrics;
+    }
+
+    @Override
+    public List<RuleStatistics> getRuleStatistics() {
+        List<RuleMetrics> rules;
+        synchronized ( this ) {
+            rules = new ArrayList<RuleMetrics>( ruleMetrics.values() );
+        }
+        List<RuleStatistics> statistics = new ArrayList<RuleStatistics>( rules.size() );
+        for ( RuleMetrics rule : rules ) {
+            statistics.add( rule.snapshot() );
+        }
+        return statistics;
+    }
+
+    @Override
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public boolean isEnabled() {
+        return sampleInterval > 0;
+    }
+
+    /**
+     * Counts a validation the offload pool refused, its queue being full.
+     */
+    public void recordOffloadRejection() {
+        offloadRejections.incrementAndGet();
+    }
+
+    /**
+     * Counts a validation the offload pool did not finish by its deadline.
+     */
+    public void recordOffloadTimeout() {
+        offloadTimeouts.incrementAndGet();
+    }
+
+    /**
+     * Counts a rejected password by the error code it was reported with.
+     *
+     * @param errorCode
+     *            The reported error code
+     */
+    public void recordRejection( String errorCode ) {
+        AtomicLong count = rejectionCounts.get( errorCode );
+        if ( count == null ) {
+            AtomicLong existing = rejectionCounts.putIfAbsent( errorCode, count = new AtomicLong() );
+            if ( existing != null ) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, as
+     * <code>com.pastdev.apacheds.server:type=PasswordPolicyMetrics,name=</code><em>name</em>.
+     *
+     * @param name
+     *            Tells apart the validators of one JVM
+     * @return The name registered under
+     * @throws JMException
+     *             If the name is taken or invalid
+     */
+    public synchronized ObjectName register( String name ) throws JMException {
+        ObjectName objectName = new ObjectName( DOMAIN + ":type=PasswordPolicyMetrics,name="
+                + ObjectName.quote( name ) );
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+        this.objectName = objectName;
+        return objectName;
+    }
+
+    @Override
+    public void reset() {
+        List<RuleMetrics> rules;
+        synchronized ( this ) {
+            rules = new ArrayList<RuleMetrics>( ruleMetrics.values() );
+        }
+        for ( RuleMetrics rule : rules ) {
+            rule.reset();
+        }
+        rejectionCounts.clear();
+        offloadRejections.set( 0 );
+        offloadTimeouts.set( 0 );
+    }
+
+    /**
+     * Sets the queue of the offload pool, whose size is reported as the
+     * queue depth, or null if validation is not offloaded.
+     *
+     * @param queue
+     *            The queue, or null
+     */
+    public void setOffloadQueue( BlockingQueue<?> queue ) {
+        this.offloadQueue = queue;
+    }
+
+    /**
+     * Times one in <code>sampleInterval</code> rule checks, 1 to time them
+     * all, or 0 to measure nothing.
+     *
+     * @param sampleInterval
+     *            The sample interval
+     */
+    public void setSampleInterval( int sampleInterval ) {
+        if ( sampleInterval < 0 ) {
+            throw new IllegalArgumentException( "sampleInterval must be >= 0" );
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s@%h::sampleInterval=%s,rules=%s,rejections=%s",
+                getClass().getName(), hashCode(), sampleInterval, getRuleStatistics(), getRejectionCounts() );
+    }
+
+    /**
+     * Unregisters these metrics if {@link #register(String)} registered them.
+     *
+     * @throws JMException
+     *             If they were unregistered by other means
+     */
+    public synchronized void unregister() throws JMException {
+        if ( objectName != null ) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The JMX view of {@link PasswordPolicyMetrics}.
+ */
+public interface PasswordPolicyMetricsMXBean {
+    /**
+     * Returns the number of validations waiting for an offload thread.
+     *
+     * @return The queue depth
+     */
+    public int getOffloadQueueDepth();
+
+    /**
+     * Returns the number of validations failed because the offload queue
+     * was full.
+     *
+     * @return The rejection count
+     */
+    public long getOffloadRejections();
+
+    /**
+     * Returns the number of validations failed because the offload pool did
+     * not finish them by the deadline.
+     *
+     * @return The timeout count
+     */
+    public long getOffloadTimeouts();
+
+    /**
+     * Returns the number of rejected passwords per reported error code.
+     *
+     * @return The rejection counts
+     */
+    public Map<String, Long> getRejectionCounts();
+
+    /**
+     * Returns the counts and latencies of each rule, in evaluation order.
+     *
+     * @return The rule statistics
+     */
+    public List<RuleStatistics> getRuleStatistics();
+
+    /**
+     * Returns how many rule checks there are per timed one, or 0 if nothing
+     * is measured.
+     *
+     * @return The sample interval
+     */
+    public int getSampleInterval();
+
+    /**
+     * Zeroes every counter and histogram.
+     */
+    public void reset();
+}
@@ -0,0 +1,77 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * The counters and latency histogram of one password rule. A rule asks
+ * {@link #start()} before it checks a password and passes what it got to
+ * {@link #record(long, boolean)} after; every check is counted, but only one
+ * in {@link PasswordPolicyMetrics#getSampleInterval()} is timed.
+ */
+public final class RuleMetrics {
+    /**
+     * What {@link #start()} returns for a check that is not timed.
+     */
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final StripedCounter failed = new StripedCounter();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final PasswordPolicyMetrics metrics;
+    private final String name;
+    private final StripedCounter passed = new StripedCounter();
+
+    RuleMetrics( PasswordPolicyMetrics metrics, String name ) {
+        this.metrics = metrics;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the outcome of a check, and its latency if it was timed.
+     *
+     * @param start
+     *            What {@link #start()} returned before the check
+     * @param accepted
+     *            True if the rule passed the password
+     */
+    public void record( long start, boolean accepted ) {
+        if ( start != NOT_SAMPLED ) {
+            latencies.record( System.nanoTime() - start );
+        }
+        (accepted ? passed : failed).increment();
+    }
+
+    void reset() {
+        passed.reset();
+        failed.reset();
+        latencies.reset();
+    }
+
+    RuleStatistics snapshot() {
+        return new RuleStatistics( name, passed.sum(), failed.sum(), latencies.snapshot() );
+    }
+
+    /**
+     * Returns the time to pass to {@link #record(long, boolean)} if this
+     * check is sampled, otherwise {@link #NOT_SAMPLED}.
+     *
+     * @return The start time of a timed check
+     */
+    public long start() {
+        int interval = metrics.getSampleInterval();
+        if ( interval == 1 || (interval > 1 && ThreadLocalRandom.current().nextInt( interval ) == 0) ) {
+            return System.nanoTime();
+        }
+        return NOT_SAMPLED;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
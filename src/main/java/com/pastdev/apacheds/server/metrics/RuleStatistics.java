@@ -0,0 +1,79 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+/**
+ * A point in time copy of the {@link RuleMetrics} of a rule. Latencies are
+ * in nanoseconds and come from the sampled checks only, the counts from
+ * every check.
+ */
+public final class RuleStatistics {
+    private final long failed;
+    private final long maximum;
+    private final double mean;
+    private final String name;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long passed;
+    private final long samples;
+
+    RuleStatistics( String name, long passed, long failed, LatencyHistogram.Snapshot latencies ) {
+        this.name = name;
+        this.passed = passed;
+        this.failed = failed;
+        this.samples = latencies.getCount();
+        this.mean = latencies.getMean();
+        this.maximum = latencies.getMaximum();
+        this.p50 = latencies.getValueAtPercentile( 50 );
+        this.p99 = latencies.getValueAtPercentile( 99 );
+        this.p999 = latencies.getValueAtPercentile( 99.9 );
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getPassed() {
+        return passed;
+    }
+
+    /**
+     * Returns the number of timed checks the latencies come from.
+     *
+     * @return The sample count
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "{RuleStatistics:{name:" + name + ",passed:" + passed + ",failed:" + failed
+                + ",samples:" + samples + ",p50:" + p50 + ",p99:" + p99 + ",p999:" + p999
+                + ",maximum:" + maximum + "}}";
+    }
+}
@@ -0,0 +1,43 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A counter spread over a cache line per stripe, so threads that count at
+ * the same time rarely contend on the same one. Reading sums the stripes,
+ * so it is cheap to add to and dear to read, the trade
+ * <code>java.util.concurrent.atomic.LongAdder</code> makes on later JDKs.
+ */
+final class StripedCounter {
+    // 8 longs, a 64 byte cache line, between stripes
+    private static final int PADDING = 8;
+    private static final int STRIPES = Integer.highestOneBit(
+            Math.max( 1, Runtime.getRuntime().availableProcessors() * 2 - 1 ) ) << 1;
+
+    private final AtomicLongArray cells = new AtomicLongArray( STRIPES * PADDING );
+
+    void increment() {
+        cells.incrementAndGet( ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING );
+    }
+
+    void reset() {
+        for ( int i = 0; i < STRIPES; i++ ) {
+            cells.set( i * PADDING, 0 );
+        }
+    }
+
+    long sum() {
+        long sum = 0;
+        for ( int i = 0; i < STRIPES; i++ ) {
+            sum += cells.get( i * PADDING );
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString( sum() );
+    }
+}
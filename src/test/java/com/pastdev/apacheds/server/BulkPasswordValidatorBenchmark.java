@@ -0,0 +1,107 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures how bulk validation of a batch of mixed accepted and rejected
+ * passwords scales with the parallelism of the pool, through both the list
+ * and the streaming entry points, against validating the batch one password
+ * at a time on the calling thread.
+ * <p>
+ * Run with
+ * <code>mvn -P benchmark verify -Dbenchmark=BulkPasswordValidator</code>;
+ * the batch time should fall with the parallelism up to the number of
+ * processors.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class BulkPasswordValidatorBenchmark {
+    private static final int BATCH_SIZE = 10000;
+
+    @Param( { "1", "2", "4", "8" } )
+    private int parallelism;
+
+    private BulkPasswordValidator bulkValidator;
+    private List<PasswordCandidate> candidates;
+    private ForkJoinPool pool;
+    private PastdevPasswordValidator validator;
+
+    @Setup
+    public void setup() {
+        Random random = new Random( 42 );
+        String characters = "abcdefABCDEF0123%()~";
+        candidates = new ArrayList<PasswordCandidate>( BATCH_SIZE );
+        for ( int i = 0; i < BATCH_SIZE; i++ ) {
+            StringBuilder password = new StringBuilder();
+            for ( int j = 8 + random.nextInt( 24 ); j > 0; j-- ) {
+                password.append( characters.charAt( random.nextInt( characters.length() ) ) );
+            }
+            candidates.add( new PasswordCandidate( password.toString(), "user" + i ) );
+        }
+
+        validator = new PastdevPasswordValidator();
+        pool = new ForkJoinPool( parallelism );
+        bulkValidator = new BulkPasswordValidator( validator, pool );
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<PasswordValidationResult> list() {
+        return bulkValidator.validate( candidates );
+    }
+
+    @Benchmark
+    public int sequential() {
+        CompiledPasswordPolicy policy = validator.getCompiledPolicy();
+        int rejected = 0;
+        for ( PasswordCandidate candidate : candidates ) {
+            if ( PastdevPasswordValidator.check( policy, candidate.getPassword(), candidate.getUsername() ) != null ) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    @Benchmark
+    public int streaming() {
+        final AtomicInteger rejected = new AtomicInteger();
+        bulkValidator.validate( candidates.iterator(), new PasswordValidationListener() {
+            @Override
+            public void validated( PasswordValidationResult result ) {
+                if ( !result.isValid() ) {
+                    rejected.incrementAndGet();
+                }
+            }
+        } );
+        return rejected.get();
+    }
+}
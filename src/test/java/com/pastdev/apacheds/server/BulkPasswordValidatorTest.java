@@ -0,0 +1,126 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class BulkPasswordValidatorTest {
+    private static final Logger logger = LoggerFactory.getLogger( BulkPasswordValidatorTest.class );
+
+    private BulkPasswordValidator bulkValidator;
+    private ForkJoinPool pool;
+    private PastdevPasswordValidator validator;
+
+    @Before
+    public void before() {
+        pool = new ForkJoinPool( 4 );
+        validator = new PastdevPasswordValidator();
+        bulkValidator = new BulkPasswordValidator( validator, pool );
+    }
+
+    @After
+    public void after() {
+        pool.shutdown();
+    }
+
+    private static List<PasswordCandidate> candidates( int count ) {
+        Random random = new Random( 42 );
+        String characters = "abAB12%~";
+        List<PasswordCandidate> candidates = new ArrayList<PasswordCandidate>( count );
+        for ( int i = 0; i < count; i++ ) {
+            StringBuilder password = new StringBuilder();
+            for ( int j = 6 + random.nextInt( 8 ); j > 0; j-- ) {
+                password.append( characters.charAt( random.nextInt( characters.length() ) ) );
+            }
+            if ( random.nextInt( 10 ) == 0 ) {
+                password.append( "user" ).append( i % 7 );
+            }
+            candidates.add( new PasswordCandidate( password, "user" + (i % 7) ) );
+        }
+        return candidates;
+    }
+
+    private String validate( PasswordCandidate candidate ) {
+        try {
+            validator.validate( candidate.getPassword(), candidate.getUsername() );
+            return null;
+        }
+        catch ( PasswordPolicyException e ) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void testValidateList() {
+        List<PasswordCandidate> candidates = candidates( 5000 );
+        List<PasswordValidationResult> results = bulkValidator.validate( candidates );
+        assertEquals( candidates.size(), results.size() );
+        int rejected = 0;
+        for ( int i = 0; i < candidates.size(); i++ ) {
+            PasswordValidationResult result = results.get( i );
+            assertEquals( i, result.getIndex() );
+            assertEquals( validate( candidates.get( i ) ), result.getMessage() );
+            assertEquals( result.getMessage() == null, result.isValid() );
+            if ( !result.isValid() ) {
+                rejected++;
+            }
+        }
+        logger.debug( "rejected {} of {}", rejected, candidates.size() );
+        assertTrue( rejected > 0 && rejected < candidates.size() );
+    }
+
+    @Test
+    public void testValidateIterator() {
+        final List<PasswordCandidate> candidates = candidates( 10000 );
+        final AtomicReferenceArray<PasswordValidationResult> results =
+                new AtomicReferenceArray<PasswordValidationResult>( candidates.size() );
+        bulkValidator.validate( candidates.iterator(), new PasswordValidationListener() {
+            @Override
+            public void validated( PasswordValidationResult result ) {
+                assertNull( results.getAndSet( result.getIndex(), result ) );
+            }
+        } );
+        for ( int i = 0; i < candidates.size(); i++ ) {
+            assertEquals( validate( candidates.get( i ) ), results.get( i ).getMessage() );
+        }
+    }
+
+    @Test
+    public void testValidateUser() throws Exception {
+        Entry user = new DefaultEntry( "uid=testuser,ou=people,dc=example,dc=com",
+                "uid", "testuser",
+                "mail", "testuser@example.com" );
+        Entry noMail = new DefaultEntry( "uid=nomail,ou=people,dc=example,dc=com",
+                "uid", "nomail" );
+        List<PasswordCandidate> candidates = new ArrayList<PasswordCandidate>();
+        candidates.add( new PasswordCandidate( "set%Daw()d", user ) );
+        candidates.add( new PasswordCandidate( "1testuserA", user ) );
+        candidates.add( new PasswordCandidate( "set%Daw()d", noMail ) );
+
+        List<PasswordValidationResult> results = bulkValidator.validate( candidates );
+        assertTrue( results.get( 0 ).isValid() );
+        assertEquals( "ILLEGAL_USERNAME", results.get( 1 ).getErrorCode() );
+        assertFalse( results.get( 2 ).isValid() );
+        assertEquals( PasswordValidationResult.ERROR_CODE_USER, results.get( 2 ).getErrorCode() );
+    }
+}
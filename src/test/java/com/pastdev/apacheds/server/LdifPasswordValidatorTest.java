@@ -0,0 +1,118 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class LdifPasswordValidatorTest {
+    private static final Logger logger = LoggerFactory.getLogger( LdifPasswordValidatorTest.class );
+
+    private static LdifPasswordValidator newLdifValidator() {
+        return new LdifPasswordValidator( new BulkPasswordValidator( new PastdevPasswordValidator() ) );
+    }
+
+    private static List<String> lines( StringWriter report ) {
+        if ( report.getBuffer().length() == 0 ) {
+            return Collections.emptyList();
+        }
+        List<String> lines = Arrays.asList( report.toString().split( "\n" ) );
+        Collections.sort( lines );
+        return lines;
+    }
+
+    @Test
+    public void testValidateTestData() throws Exception {
+        StringWriter report = new StringWriter();
+        LdifPasswordValidator.Summary summary;
+        try (Reader ldif = new InputStreamReader(
+                getClass().getClassLoader().getResourceAsStream( "conf/schema/test_data.ldif" ),
+                StandardCharsets.UTF_8 )) {
+            summary = newLdifValidator().validate( ldif, report );
+        }
+        logger.debug( "{}: {}", summary, report );
+        assertEquals( 1, summary.getEntries() );
+        assertEquals( 1, summary.getPasswords() );
+        assertEquals( 1, summary.getRejected() );
+        assertTrue( report.toString().startsWith(
+                "uid=test_user, ou=people, dc=example, dc=com\tINSUFFICIENT_CHARACTERISTICS\t" ) );
+    }
+
+    @Test
+    public void testValidate() throws Exception {
+        StringBuilder ldif = new StringBuilder( "version: 1\n" );
+        for ( int i = 0; i < 1000; i++ ) {
+            ldif.append( "\ndn: uid=user" ).append( i ).append( ",ou=people,dc=example,dc=com\n" )
+                    .append( "objectClass: inetOrgPerson\n" )
+                    .append( "uid: user" ).append( i ).append( "\n" )
+                    .append( "mail: user" ).append( i ).append( "@example.com\n" )
+                    .append( "userPassword: " ).append( i == 500 ? "1user500A" : "set%Daw()d" ).append( "\n" );
+        }
+        ldif.append( "\ndn: uid=hashed,ou=people,dc=example,dc=com\n" )
+                .append( "uid: hashed\n" )
+                .append( "mail: hashed@example.com\n" )
+                .append( "userPassword: {SSHA}DkMTwBl+a/3DQTxCYEApdUtNXGgdUac3cvDMNQ==\n" )
+                .append( "userPassword:: c2V0NERhdzAwZA==\n" );
+        ldif.append( "\ndn: uid=nomail,ou=people,dc=example,dc=com\n" )
+                .append( "uid: nomail\n" )
+                .append( "userPassword: set%Daw()d\n" );
+
+        StringWriter report = new StringWriter();
+        LdifPasswordValidator.Summary summary = newLdifValidator().validate(
+                new StringReader( ldif.toString() ), report );
+        logger.debug( "{}: {}", summary, report );
+        assertEquals( 1002, summary.getEntries() );
+        assertEquals( 1002, summary.getPasswords() );
+        assertEquals( 1, summary.getHashed() );
+        assertEquals( 2, summary.getRejected() );
+        assertEquals( Arrays.asList(
+                "uid=nomail,ou=people,dc=example,dc=com\tINVALID_USER\tEmail not found for 'uid=nomail,ou=people,dc=example,dc=com'",
+                "uid=user500,ou=people,dc=example,dc=com\tILLEGAL_USERNAME\t{{ILLEGAL_USERNAME|Password contains the user id 'user500'.|user500}}" ),
+                lines( report ) );
+    }
+
+    @Test
+    public void testValidateChanges() throws Exception {
+        String ldif = "version: 1\n"
+                + "\ndn: uid=added,ou=people,dc=example,dc=com\n"
+                + "changetype: add\n"
+                + "uid: added\n"
+                + "mail: added@example.com\n"
+                + "userPassword: FOObarBAZ\n"
+                + "\ndn: uid=modified,ou=people,dc=example,dc=com\n"
+                + "changetype: modify\n"
+                + "replace: userPassword\n"
+                + "userPassword: weak\n"
+                + "-\n";
+
+        StringWriter report = new StringWriter();
+        LdifPasswordValidator.Summary summary = newLdifValidator().validate( new StringReader( ldif ), report );
+        assertEquals( 2, summary.getEntries() );
+        assertEquals( 1, summary.getPasswords() );
+        assertEquals( 1, summary.getRejected() );
+        assertTrue( report.toString().startsWith(
+                "uid=added,ou=people,dc=example,dc=com\tINSUFFICIENT_CHARACTERISTICS\t" ) );
+    }
+
+    @Test( expected = LdapException.class )
+    public void testValidateMalformed() throws Exception {
+        newLdifValidator().validate( new StringReader( "version: 1\n\ndn: not a dn\nuid: x\n" ),
+                new StringWriter() );
+    }
+}
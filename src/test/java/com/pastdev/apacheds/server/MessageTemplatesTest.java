@@ -0,0 +1,60 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+
+import org.junit.Test;
+
+
+import edu.vt.middleware.password.MessageResolver;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+public class MessageTemplatesTest {
+    private static Properties load( Class<?> type, String resource ) throws IOException {
+        try (InputStream inputStream = type.getResourceAsStream( resource )) {
+            Properties properties = new Properties();
+            properties.load( inputStream );
+            return properties;
+        }
+    }
+
+    private static void assertResolvesLikeMessageResolver( Properties messages ) {
+        MessageResolver resolver = new MessageResolver( messages );
+        MessageTemplates templates = new MessageTemplates( messages );
+        for ( String errorCode : messages.stringPropertyNames() ) {
+            Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+            parameters.put( "a", 3 );
+            parameters.put( "b", "lowercase" );
+            parameters.put( "c", '~' );
+            parameters.put( "d", "uppercase, lowercase" );
+            RuleResultDetail detail = new RuleResultDetail( errorCode, parameters );
+            assertEquals( errorCode, resolver.resolve( detail ), templates.resolve( detail ) );
+        }
+    }
+
+    @Test
+    public void testResolve() throws IOException {
+        assertResolvesLikeMessageResolver( load( PastdevPasswordValidator.class,
+                "/conf/password_policy_validator_messages.properties" ) );
+        assertResolvesLikeMessageResolver( load( MessageResolver.class, MessageResolver.DEFAULT_MESSAGE_PATH ) );
+
+        Properties messages = new Properties();
+        messages.setProperty( "ORDINARY", "%s then %s, 100%% %2$s" );
+        messages.setProperty( "FORMATTED", "%1$5s|%2$S" );
+        assertResolvesLikeMessageResolver( messages );
+
+        MessageTemplates templates = new MessageTemplates( messages );
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put( "word", "secret" );
+        assertEquals( "UNKNOWN:{word=secret}", templates.resolve( new RuleResultDetail( "UNKNOWN", parameters ) ) );
+    }
+}
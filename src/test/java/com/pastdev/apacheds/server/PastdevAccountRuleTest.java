@@ -0,0 +1,176 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Random;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.junit.Test;
+
+
+import com.pastdev.apacheds.server.dictionary.DictionaryAutomaton;
+import com.pastdev.apacheds.server.dictionary.WordMatch;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+public class PastdevAccountRuleTest {
+    private static final String[] ATTRIBUTES = { "uid", "cn", "sn", "givenName", "mail" };
+
+    private static List<String> describe( PastdevAccountRule rule, CharSequence password, Entry user ) {
+        List<RuleResultDetail> details = new ArrayList<RuleResultDetail>();
+        rule.addDetails( password, user, details );
+        List<String> described = new ArrayList<String>();
+        described.add( Boolean.toString( rule.accepts( password, user ) ) );
+        for ( RuleResultDetail detail : details ) {
+            described.add( detail.getErrorCode() + Arrays.toString( detail.getValues() ) );
+        }
+        return described;
+    }
+
+    private static Entry newUser() throws Exception {
+        return new DefaultEntry(
+                "uid=jsmith,ou=people,dc=example,dc=com",
+                "uid", "jsmith",
+                "cn", "John Q. Smith",
+                "sn", "Smith",
+                "givenName", "John",
+                "mail", "john.smith@example.com" );
+    }
+
+    /**
+     * The tokens of {@link #newUser()}, folded, each with the attribute it
+     * is first found in.
+     */
+    private static Map<String, String> newUserTokens() {
+        Map<String, String> tokens = new LinkedHashMap<String, String>();
+        tokens.put( "jsmith", "uid" );
+        tokens.put( "john q. smith", "cn" );
+        tokens.put( "john", "cn" );
+        tokens.put( "smith", "cn" );
+        tokens.put( "john.smith", "mail" );
+        return tokens;
+    }
+
+    @Test
+    public void testAccountInformation() throws Exception {
+        PastdevAccountRule rule = new PastdevAccountRule( ATTRIBUTES, 3, true, true );
+        Entry user = newUser();
+
+        for ( String token : newUserTokens().keySet() ) {
+            assertFalse( token, rule.accepts( "#" + token.toUpperCase( Locale.ROOT ) + "#", user ) );
+        }
+        assertEquals( Arrays.asList( "true" ), describe( rule, "set%Daw()d", user ) );
+        assertEquals( Arrays.asList( "false", "ILLEGAL_ACCOUNT_INFO[smith, cn]" ),
+                describe( rule, "1SMITH#a", user ) );
+        assertEquals( Arrays.asList( "false", "ILLEGAL_ACCOUNT_INFO_REVERSED[john, cn]" ),
+                describe( rule, "1nhoJ#a", user ) );
+        // the shortest token found is reported
+        assertEquals( Arrays.asList( "false", "ILLEGAL_ACCOUNT_INFO[smith, cn]" ),
+                describe( rule, "x#jsmith9", user ) );
+    }
+
+    @Test
+    public void testMissingAttributes() throws Exception {
+        PastdevAccountRule rule = new PastdevAccountRule( ATTRIBUTES, 3, true, true );
+        assertTrue( rule.accepts( "anything", new DefaultEntry( "cn=nobody,dc=example,dc=com" ) ) );
+
+        Entry user = new DefaultEntry( "uid=x,dc=example,dc=com",
+                "uid", "x",
+                "mail", "no-at-sign" );
+        assertTrue( rule.accepts( "x1Xx#", user ) );
+        assertFalse( rule.accepts( "1no-at-sign#", user ) );
+        assertEquals( Arrays.asList( "false", "ILLEGAL_ACCOUNT_INFO_REVERSED[sign, mail]" ),
+                describe( rule, "1ngis#", user ) );
+    }
+
+    @Test
+    public void testEntriesShareNothing() throws Exception {
+        PastdevAccountRule rule = new PastdevAccountRule( ATTRIBUTES, 3, true, true );
+        StringBuilder description = new StringBuilder();
+        for ( int i = 0; i < 200; i++ ) {
+            description.append( "word" ).append( i ).append( ' ' );
+        }
+        // enough tokens to grow the arrays the automaton is built in
+        Entry large = new DefaultEntry( "uid=large,dc=example,dc=com",
+                "uid", "large",
+                "cn", description.toString() );
+        Entry user = newUser();
+
+        assertFalse( rule.accepts( "1word199#", large ) );
+        assertTrue( rule.accepts( "1word199#", user ) );
+        assertEquals( Arrays.asList( "false", "ILLEGAL_ACCOUNT_INFO[smith, cn]" ),
+                describe( rule, "1SMITH#a", user ) );
+        assertTrue( rule.accepts( "1SMITH#a", large ) );
+        assertEquals( Arrays.asList( "false", "ILLEGAL_ACCOUNT_INFO_REVERSED[word7, cn]" ),
+                describe( rule, "x7drow#", large ) );
+    }
+
+    @Test
+    public void testMatchesEveryToken() throws Exception {
+        Random random = new Random( 42 );
+        Entry user = newUser();
+        Map<String, String> tokens = newUserTokens();
+        for ( boolean matchBackwards : new boolean[] { true, false } ) {
+            for ( boolean ignoreCase : new boolean[] { true, false } ) {
+                PastdevAccountRule rule = new PastdevAccountRule( ATTRIBUTES, 3, matchBackwards, ignoreCase );
+                // case sensitive, the tokens are as they appear in the entry
+                Map<String, String> caseSensitiveTokens = new LinkedHashMap<String, String>();
+                for ( String attribute : ATTRIBUTES ) {
+                    String value = user.get( attribute ).getString();
+                    value = value.indexOf( '@' ) < 0 ? value : value.substring( 0, value.indexOf( '@' ) );
+                    for ( String token : (value + " " + value.replaceAll( "[^A-Za-z0-9]+", " " )).split( " " ) ) {
+                        if ( token.length() >= 3 && !caseSensitiveTokens.containsKey( token ) ) {
+                            caseSensitiveTokens.put( token, attribute );
+                        }
+                    }
+                    if ( value.length() >= 3 && !caseSensitiveTokens.containsKey( value ) ) {
+                        caseSensitiveTokens.put( value, attribute );
+                    }
+                }
+                Map<String, String> expectedTokens = ignoreCase ? tokens : caseSensitiveTokens;
+
+                // an automaton compiled from the tokens reports the same token
+                DictionaryAutomaton automaton = DictionaryAutomaton.compile( expectedTokens.keySet().iterator(),
+                        !ignoreCase, 3, matchBackwards );
+                for ( int i = 0; i < 5000; i++ ) {
+                    StringBuilder password = new StringBuilder();
+                    for ( int j = random.nextInt( 16 ); j > 0; j-- ) {
+                        password.append( "joHNsmIt#.q ".charAt( random.nextInt( 12 ) ) );
+                    }
+                    WordMatch match = automaton.search( password );
+                    List<String> expected = new ArrayList<String>();
+                    expected.add( Boolean.toString( match == null ) );
+                    if ( match != null && match.getWord() != null ) {
+                        String token = fold( match.getWord(), ignoreCase );
+                        expected.add( "ILLEGAL_ACCOUNT_INFO[" + token + ", " + expectedTokens.get( token ) + "]" );
+                    }
+                    if ( match != null && match.getReversedWord() != null ) {
+                        String token = fold( match.getReversedWord(), ignoreCase );
+                        expected.add( "ILLEGAL_ACCOUNT_INFO_REVERSED[" + token + ", " + expectedTokens.get( token )
+                                + "]" );
+                    }
+                    assertEquals( password + " ignoreCase=" + ignoreCase + " matchBackwards=" + matchBackwards,
+                            expected, describe( rule, password, user ) );
+                }
+            }
+        }
+    }
+
+    private static String fold( String word, boolean ignoreCase ) {
+        return ignoreCase ? word.toLowerCase( Locale.ROOT ) : word;
+    }
+}
@@ -0,0 +1,103 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+import org.junit.Test;
+
+
+import edu.vt.middleware.password.CharacterCharacteristicsRule;
+import edu.vt.middleware.password.DigitCharacterRule;
+import edu.vt.middleware.password.IllegalCharacterRule;
+import edu.vt.middleware.password.LowercaseCharacterRule;
+import edu.vt.middleware.password.NonAlphanumericCharacterRule;
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.PasswordValidator;
+import edu.vt.middleware.password.Rule;
+import edu.vt.middleware.password.RuleResult;
+import edu.vt.middleware.password.RuleResultDetail;
+import edu.vt.middleware.password.UppercaseCharacterRule;
+
+
+public class PastdevCharacterRuleTest {
+    private static final String ALLOWED_SPECIALS = "!@#$%*()-=+{}:',.?/";
+    private static final String ILLEGAL_SPECIALS = "`~§";
+    private static final String ALPHABET = "aB3!`~ \téÉ§中٥_";
+
+    private static PasswordValidator legacyValidator( int minimumCharacterTypes ) {
+        CharacterCharacteristicsRule charRule = new CharacterCharacteristicsRule() {
+            @Override
+            protected Map<String, ?> createRuleResultDetailParameters( final int success ) {
+                @SuppressWarnings( "unchecked" )
+                Map<String, Object> m = (Map<String, Object>) super.createRuleResultDetailParameters( success );
+                m.put( "characterSets", "uppercase, lowercase, digit, non-alphanumeric" );
+                return m;
+            }
+        };
+        charRule.getRules().add( new UppercaseCharacterRule( 1 ) );
+        charRule.getRules().add( new LowercaseCharacterRule( 1 ) );
+        charRule.getRules().add( new DigitCharacterRule( 1 ) );
+        charRule.getRules().add( new NonAlphanumericCharacterRule( 1 ) {
+            @Override
+            public String getValidCharacters() {
+                return ALLOWED_SPECIALS;
+            }
+        } );
+        charRule.setNumberOfCharacteristics( minimumCharacterTypes );
+
+        List<Rule> rules = new ArrayList<Rule>();
+        rules.add( charRule );
+        rules.add( new IllegalCharacterRule( ILLEGAL_SPECIALS.toCharArray() ) );
+        return new PasswordValidator( rules );
+    }
+
+    private static List<String> describe( RuleResult result ) {
+        List<String> details = new ArrayList<String>();
+        details.add( Boolean.toString( result.isValid() ) );
+        for ( RuleResultDetail detail : result.getDetails() ) {
+            details.add( detail.getErrorCode() + Arrays.toString( detail.getValues() ) );
+        }
+        return details;
+    }
+
+    @Test
+    public void testMatchesLegacyRules() {
+        Random random = new Random( 42 );
+        for ( int minimumCharacterTypes = 1; minimumCharacterTypes <= 4; minimumCharacterTypes++ ) {
+            PasswordValidator legacy = legacyValidator( minimumCharacterTypes );
+            List<Rule> rules = new ArrayList<Rule>();
+            rules.add( new PastdevCharacterRule( 1, 1, 1, 1, minimumCharacterTypes, ALLOWED_SPECIALS, ILLEGAL_SPECIALS ) );
+            PasswordValidator pastdev = new PasswordValidator( rules );
+
+            for ( int i = 0; i < 5000; i++ ) {
+                char[] password = new char[random.nextInt( 16 )];
+                for ( int j = 0; j < password.length; j++ ) {
+                    password[j] = ALPHABET.charAt( random.nextInt( ALPHABET.length() ) );
+                }
+                PasswordData passwordData = new PasswordData( new Password( new String( password ) ) );
+                assertEquals( new String( password ),
+                        describe( legacy.validate( passwordData ) ),
+                        describe( pastdev.validate( passwordData ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testReportsFirstConfiguredIllegalCharacter() {
+        int[] counts = new int[CharacterClassifier.CLASS_COUNT];
+        CharacterClassifier classifier = new CharacterClassifier( ILLEGAL_SPECIALS );
+        assertEquals( 0, classifier.classify( "a~b`c§", counts ) );
+        assertEquals( 1, classifier.classify( "a§b~", counts ) );
+        assertEquals( 2, classifier.classify( "a§b", counts ) );
+        assertEquals( -1, classifier.classify( "abc", counts ) );
+    }
+}
@@ -0,0 +1,160 @@
+package com.pastdev.apacheds.server;
+
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.PasswordValidator;
+import edu.vt.middleware.password.Rule;
+import edu.vt.middleware.password.RuleResult;
+
+
+/**
+ * Compares validating an accepted password through the allocation free
+ * <code>char[]</code> and {@link CharSequence} entry points with the
+ * {@link PasswordData} based vt-password validator over the same rules.
+ * The rejected benchmarks measure a rejected password, collecting every
+ * detail and failing fast. The entry benchmarks compare checking only the
+ * username from a user entry's <code>mail</code> with checking all of its
+ * account information. The measured benchmark times one rule check in 64,
+ * to compare with the unmeasured ones. The sequences benchmark adds the
+ * keyboard walk, run and repeat scan. The strength benchmark adds the guess
+ * estimate of a minimum strength.
+ * <p>
+ * Run with
+ * <code>mvn -P benchmark verify -Dbenchmark=PastdevPasswordValidator "-Dbenchmark.args=-prof gc"</code>;
+ * <code>gc.alloc.rate.norm</code> should be 0 B/op for the accepted entry
+ * points.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class PastdevPasswordValidatorBenchmark {
+    private static final String ACCEPTED = "set%Daw()d";
+    private static final String REJECTED = "FOObarBAZ";
+    private static final String USERNAME = "testuser";
+
+    private PastdevPasswordValidator accountValidator;
+    private char[] acceptedChars;
+    private PastdevPasswordValidator failFastValidator;
+    private PasswordValidator legacy;
+    private PastdevPasswordValidator measuredValidator;
+    private PastdevPasswordValidator sequenceValidator;
+    private PastdevPasswordValidator strengthValidator;
+    private Entry user;
+    private PastdevPasswordValidator validator;
+
+    @Setup
+    public void setup() throws LdapException {
+        validator = new PastdevPasswordValidator();
+        legacy = new PasswordValidator( new ArrayList<Rule>( validator.getCompiledPolicy().getRules() ) );
+        acceptedChars = ACCEPTED.toCharArray();
+        failFastValidator = new PastdevPasswordValidator();
+        failFastValidator.setFailFast( true );
+        measuredValidator = new PastdevPasswordValidator();
+        measuredValidator.setMetricsSampleInterval( 64 );
+        sequenceValidator = new PastdevPasswordValidator();
+        sequenceValidator.setSequencesEnabled( true );
+        strengthValidator = new PastdevPasswordValidator();
+        strengthValidator.setMinimumStrengthScore( 3 );
+        accountValidator = new PastdevPasswordValidator();
+        accountValidator.setAccountInformationEnabled( true );
+        user = new DefaultEntry( "uid=" + USERNAME + ",ou=people,dc=example,dc=com",
+                "uid", USERNAME,
+                "cn", "Test Awesome",
+                "sn", "User",
+                "givenName", "Test",
+                "mail", USERNAME + "@example.com" );
+    }
+
+    private static String messageOf( PastdevPasswordValidator validator, String password ) {
+        try {
+            validator.validate( password, (CharSequence) USERNAME );
+            return null;
+        }
+        catch ( PasswordPolicyException e ) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public char[] acceptedCharArray() throws PasswordPolicyException {
+        validator.validate( acceptedChars, USERNAME );
+        return acceptedChars;
+    }
+
+    @Benchmark
+    public String acceptedAccountInformation() throws PasswordPolicyException {
+        accountValidator.validate( ACCEPTED, user );
+        return ACCEPTED;
+    }
+
+    @Benchmark
+    public String acceptedEntry() throws PasswordPolicyException {
+        validator.validate( ACCEPTED, user );
+        return ACCEPTED;
+    }
+
+    @Benchmark
+    public String acceptedCharSequence() throws PasswordPolicyException {
+        validator.validate( ACCEPTED, (CharSequence) USERNAME );
+        return ACCEPTED;
+    }
+
+    @Benchmark
+    public String acceptedMeasured() throws PasswordPolicyException {
+        measuredValidator.validate( ACCEPTED, (CharSequence) USERNAME );
+        return ACCEPTED;
+    }
+
+    @Benchmark
+    public String acceptedSequences() throws PasswordPolicyException {
+        sequenceValidator.validate( ACCEPTED, (CharSequence) USERNAME );
+        return ACCEPTED;
+    }
+
+    @Benchmark
+    public String acceptedStrength() throws PasswordPolicyException {
+        strengthValidator.validate( ACCEPTED, (CharSequence) USERNAME );
+        return ACCEPTED;
+    }
+
+    @Benchmark
+    public RuleResult acceptedPasswordData() {
+        PasswordData passwordData = new PasswordData( new Password( ACCEPTED ) );
+        passwordData.setUsername( USERNAME );
+        return legacy.validate( passwordData );
+    }
+
+    @Benchmark
+    public String rejected() {
+        return messageOf( validator, REJECTED );
+    }
+
+    @Benchmark
+    public String rejectedFailFast() {
+        return messageOf( failFastValidator, REJECTED );
+    }
+}
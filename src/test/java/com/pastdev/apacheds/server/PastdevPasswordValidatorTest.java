@@ -0,0 +1,546 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+import com.pastdev.apacheds.server.dictionary.BreachedPasswordCorpus;
+import com.pastdev.apacheds.server.dictionary.DictionaryRegistry;
+import com.pastdev.apacheds.server.dictionary.DictionaryStatistics;
+import com.pastdev.apacheds.server.metrics.RuleStatistics;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+public class PastdevPasswordValidatorTest {
+    private static final Logger logger = LoggerFactory.getLogger( PastdevPasswordValidatorTest.class );
+    private static final String INSUFFICIENT_CHARACTERISTICS_2 = "{{INSUFFICIENT_CHARACTERISTICS|"
+            + "Password must contain at least 3 of the 4 character sets: "
+            + "uppercase, lowercase, digit, non-alphanumeric.|2|3|4|"
+            + "uppercase, lowercase, digit, non-alphanumeric}}";
+    private static final String ILLEGAL_CHAR_TILDE = "{{ILLEGAL_CHAR|Password contains the illegal character '~'.|~}}";
+    private static final String ILLEGAL_USERNAME = "{{ILLEGAL_USERNAME|Password contains the user id 'testuser'.|testuser}}";
+    private static final String ILLEGAL_WORD_SECRET = "{{ILLEGAL_WORD|Password contains the dictionary word 'secret'.|secret}}";
+
+    private static Entry newUser( String uid ) throws Exception {
+        return new DefaultEntry(
+                "uid=" + uid + ",ou=people,dc=example,dc=com",
+                "uid", uid,
+                "mail", uid + "@example.com" );
+    }
+
+    private static String validate( PastdevPasswordValidator validator, String password, Entry user ) {
+        try {
+            validator.validate( password, user );
+            return null;
+        }
+        catch ( PasswordPolicyException e ) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void testValidate() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        Entry user = newUser( "testuser" );
+
+        assertEquals( null, validate( validator, "set%Daw()d", user ) );
+        assertEquals( null, validate( validator, "set4Daw00d", user ) );
+        assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( validator, "FOObarBAZ", user ) );
+        assertEquals( ILLEGAL_CHAR_TILDE, validate( validator, "F00barBAZ~", user ) );
+        assertEquals( ILLEGAL_USERNAME, validate( validator, "1testuserA", user ) );
+    }
+
+    private static String validate( PastdevPasswordValidator validator, char[] password, String username ) {
+        try {
+            validator.validate( password, username );
+            return null;
+        }
+        catch ( PasswordPolicyException e ) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void testValidateCharArray() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+
+        char[] password = "set%Daw()d".toCharArray();
+        assertEquals( null, validate( validator, password, "testuser" ) );
+        assertArrayEquals( "set%Daw()d".toCharArray(), password );
+        assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( validator, "FOObarBAZ".toCharArray(), "testuser" ) );
+        assertEquals( ILLEGAL_CHAR_TILDE, validate( validator, "F00barBAZ~".toCharArray(), "testuser" ) );
+        assertEquals( ILLEGAL_USERNAME, validate( validator, "1testuserA".toCharArray(), "testuser" ) );
+        assertEquals( null, validate( validator, "1testuserA".toCharArray(), null ) );
+    }
+
+    @Test
+    public void testAcceptedPasswordAllocatesNothing() throws Exception {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue( threadBean instanceof com.sun.management.ThreadMXBean );
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue( allocationBean.isThreadAllocatedMemorySupported() );
+        allocationBean.setThreadAllocatedMemoryEnabled( true );
+
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        validator.setSequencesEnabled( true );
+        validator.setMinimumStrengthScore( 3 );
+        char[] password = "set%Daw()d".toCharArray();
+        String username = "testuser";
+        // past compilation, which allocates on this thread while it settles
+        for ( int i = 0; i < 30000; i++ ) {
+            validator.validate( password, username );
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes( threadId );
+        for ( int i = 0; i < 10000; i++ ) {
+            validator.validate( password, username );
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes( threadId ) - before;
+        logger.debug( "10000 accepted validations allocated [{}] bytes", allocated );
+        // allow for the measurement itself, but not for a byte per validation
+        assertTrue( "allocated " + allocated + " bytes", allocated < 10000 );
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        validator.setDictionary( "dictionary/test-words" );
+        validator.setDictionaryEnabled( true );
+        Entry user = newUser( "testuser" );
+
+        // collecting every detail reports the dictionary word, found first
+        assertEquals( ILLEGAL_WORD_SECRET, validate( validator, "X1secret#testuser", user ) );
+        assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( validator, "foobar~secret", user ) );
+
+        // failing fast reports the cheaper username rule
+        validator.setFailFast( true );
+        assertEquals( ILLEGAL_USERNAME, validate( validator, "X1secret#testuser", user ) );
+        assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( validator, "foobar~secret", user ) );
+        assertEquals( ILLEGAL_CHAR_TILDE, validate( validator, "F00barBAZ~secret", user ) );
+        assertEquals( ILLEGAL_WORD_SECRET, validate( validator, "X1secret#", user ) );
+        assertEquals( null, validate( validator, "set%Daw()d", user ) );
+    }
+
+    @Test
+    public void testAccountInformation() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        validator.setAccountInformationEnabled( true );
+        Entry user = new DefaultEntry(
+                "uid=jsmith,ou=people,dc=example,dc=com",
+                "uid", "jsmith",
+                "cn", "John Smith",
+                "mail", "john.smith@example.com" );
+
+        assertEquals( null, validate( validator, "set%Daw()d", user ) );
+        assertEquals( "{{ILLEGAL_ACCOUNT_INFO|Password contains the account information 'john' from cn.|john|cn}}",
+                validate( validator, "John#2024", user ) );
+        assertEquals( "{{ILLEGAL_ACCOUNT_INFO_REVERSED|Password contains the account information 'smith' "
+                + "from cn in reverse.|smith|cn}}",
+                validate( validator, "7HTIMSj!", user ) );
+        assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( validator, "FOObarBAZ", user ) );
+
+        // an entry without mail is checked against what it has
+        Entry noMail = new DefaultEntry( "uid=nomail,ou=people,dc=example,dc=com", "uid", "nomail" );
+        assertEquals( null, validate( validator, "set%Daw()d", noMail ) );
+        assertTrue( validate( validator, "x1NoMail#", noMail ).startsWith( "{{ILLEGAL_ACCOUNT_INFO|" ) );
+
+        // failing fast, account information is checked ahead of the dictionary
+        validator.setDictionary( "dictionary/test-words" );
+        validator.setDictionaryEnabled( true );
+        assertEquals( ILLEGAL_WORD_SECRET, validate( validator, "X1secret#John", user ) );
+        validator.setFailFast( true );
+        assertTrue( validate( validator, "X1secret#John", user ).startsWith( "{{ILLEGAL_ACCOUNT_INFO|" ) );
+        assertEquals( ILLEGAL_WORD_SECRET, validate( validator, "X1secret#", user ) );
+    }
+
+    @Test
+    public void testBreachedPassword() throws Exception {
+        Path corpus = Files.createTempFile( "breached", BreachedPasswordCorpus.EXTENSION );
+        try {
+            byte[] hash = MessageDigest.getInstance( "SHA-1" ).digest( "Tr0ub4dor&3".getBytes( "UTF-8" ) );
+            StringBuilder line = new StringBuilder();
+            for ( byte b : hash ) {
+                line.append( String.format( "%02X", b ) );
+            }
+            BreachedPasswordCorpus.write( Arrays.asList( line.append( ":42" ).toString() ).iterator(), corpus );
+
+            PastdevPasswordValidator validator = new PastdevPasswordValidator();
+            validator.setBreachedPasswordCorpus( corpus.toString() );
+            Entry user = newUser( "testuser" );
+            assertEquals( "{{BREACHED_PASSWORD|Password has appeared in a data breach and cannot be used.}}",
+                    validate( validator, "Tr0ub4dor&3", user ) );
+            assertEquals( null, validate( validator, "set%Daw()d", user ) );
+            assertEquals( ILLEGAL_USERNAME, validate( validator, "Tr0ub4dor&3testuser", user ) );
+            validator.setFailFast( true );
+            assertEquals( "{{BREACHED_PASSWORD|Password has appeared in a data breach and cannot be used.}}",
+                    validate( validator, "Tr0ub4dor&3", user ) );
+        }
+        finally {
+            Files.deleteIfExists( corpus );
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        assertEquals( 0, validator.getMetrics().getRuleStatistics().size() );
+        validator.setMetricsSampleInterval( 1 );
+        Entry user = newUser( "testuser" );
+        for ( int i = 0; i < 10; i++ ) {
+            validate( validator, "set%Daw()d", user );
+            validate( validator, "FOObarBAZ", user );
+            validate( validator, "1testuserA", user );
+        }
+
+        List<RuleStatistics> statistics = validator.getMetrics().getRuleStatistics();
+        logger.debug( "{}", statistics );
+        assertEquals( 2, statistics.size() );
+        assertEquals( "PastdevCharacterRule", statistics.get( 0 ).getName() );
+        assertEquals( 20, statistics.get( 0 ).getPassed() );
+        assertEquals( 10, statistics.get( 0 ).getFailed() );
+        assertEquals( 30, statistics.get( 0 ).getSamples() );
+        assertTrue( statistics.get( 0 ).getP999() >= statistics.get( 0 ).getP50() );
+        assertEquals( "PastdevUsernameRule", statistics.get( 1 ).getName() );
+        assertEquals( 10, statistics.get( 1 ).getPassed() );
+        assertEquals( 10, statistics.get( 1 ).getFailed() );
+        Map<String, Long> rejections = new HashMap<String, Long>();
+        rejections.put( "ILLEGAL_USERNAME", 10L );
+        rejections.put( "INSUFFICIENT_CHARACTERISTICS", 10L );
+        assertEquals( rejections, validator.getMetrics().getRejectionCounts() );
+
+        ObjectName name = validator.getMetrics().register( "testMetrics" );
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals( 1, server.getAttribute( name, "SampleInterval" ) );
+            CompositeData[] rules = (CompositeData[]) server.getAttribute( name, "RuleStatistics" );
+            assertEquals( 20L, rules[0].get( "passed" ) );
+            server.invoke( name, "reset", new Object[0], new String[0] );
+            assertEquals( 0, validator.getMetrics().getRuleStatistics().get( 0 ).getPassed() );
+        }
+        finally {
+            validator.getMetrics().unregister();
+        }
+    }
+
+    @Test
+    public void testOffload() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        try {
+            validator.setDictionary( "dictionary/test-words" );
+            validator.setDictionaryEnabled( true );
+            validator.setOffloadThreads( 2 );
+            validator.setOffloadTimeoutMillis( 10000 );
+            Entry user = newUser( "testuser" );
+
+            // the pool reports what validating inline would
+            assertEquals( ILLEGAL_WORD_SECRET, validate( validator, "X1secret#testuser", user ) );
+            assertEquals( null, validate( validator, "set%Daw()d", user ) );
+            // the pool checks, and wipes, a copy of an array
+            char[] password = "X1secret#".toCharArray();
+            assertEquals( ILLEGAL_WORD_SECRET, validate( validator, password, "testuser" ) );
+            assertArrayEquals( "X1secret#".toCharArray(), password );
+            validator.setFailFast( true );
+            assertEquals( ILLEGAL_USERNAME, validate( validator, "X1secret#testuser", user ) );
+            assertEquals( ILLEGAL_WORD_SECRET, validate( validator, "X1secret#", user ) );
+            assertEquals( 0, validator.getMetrics().getOffloadTimeouts() );
+            assertEquals( 0, validator.getMetrics().getOffloadRejections() );
+        }
+        finally {
+            validator.close();
+        }
+    }
+
+    @Test
+    public void testOffloadTimeout() throws Exception {
+        final PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        try {
+            validator.setDictionary( "dictionary/test-words" );
+            validator.setDictionaryEnabled( true );
+            validator.setOffloadThreads( 1 );
+            validator.setOffloadTimeoutMillis( 50 );
+            Entry user = newUser( "testuser" );
+            assertEquals( null, validate( validator, "set%Daw()d", user ) );
+
+            // hold the only offload thread, as a rule that runs long would
+            validator.getOffload().check( new Callable<RuleResultDetail>() {
+                @Override
+                public RuleResultDetail call() {
+                    started.countDown();
+                    while ( true ) {
+                        try {
+                            release.await();
+                            return null;
+                        }
+                        catch ( InterruptedException e ) {
+                            // rules do not check for interrupts either
+                        }
+                    }
+                }
+            } );
+            started.await( 10, TimeUnit.SECONDS );
+
+            assertEquals( "{{VALIDATION_TIMEOUT|Password could not be checked in time, please try again.}}",
+                    validate( validator, "set%Daw()d", user ) );
+            assertEquals( 2, validator.getMetrics().getOffloadTimeouts() );
+        }
+        finally {
+            release.countDown();
+            validator.close();
+        }
+    }
+
+    @Test
+    public void testSequences() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        Entry user = newUser( "testuser" );
+        assertEquals( null, validate( validator, "Qwerty123!", user ) );
+
+        validator.setSequencesEnabled( true );
+        assertEquals( "{{ILLEGAL_KEYBOARD_SEQUENCE|Password contains the keyboard sequence 'Qwerty'.|Qwerty}}",
+                validate( validator, "Qwerty123!", user ) );
+        assertEquals( "{{ILLEGAL_REPEATED_CHARACTERS|Password contains the repeated characters 'Aaaa'.|Aaaa}}",
+                validate( validator, "Aaaa1111!", user ) );
+        assertEquals( null, validate( validator, "set%Daw()d", user ) );
+
+        validator.setRepeatLength( 5 );
+        validator.setSequenceLength( 7 );
+        assertEquals( null, validate( validator, "Qwerty123!", user ) );
+        assertEquals( null, validate( validator, "Aaaa1111!", user ) );
+    }
+
+    @Test
+    public void testStrength() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        Entry user = newUser( "testuser" );
+        assertEquals( null, validate( validator, "Password1!", user ) );
+
+        validator.setMinimumStrengthScore( 3 );
+        assertEquals( "{{INSUFFICIENT_STRENGTH|Password is too easily guessed, scoring 1 where 3 is required.|1|3}}",
+                validate( validator, "Password1!", user ) );
+        assertEquals( null, validate( validator, "set%Daw()d", user ) );
+        assertTrue( validate( validator, "password", user ).startsWith( "{{INSUFFICIENT_CHARACTERISTICS|" ) );
+
+        try {
+            validator.setMinimumStrengthScore( 5 );
+            fail( "score above 4 accepted" );
+        }
+        catch ( IllegalArgumentException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSettingsRecompile() throws Exception {
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        CompiledPasswordPolicy policy = validator.getCompiledPolicy();
+        assertSame( policy, validator.getCompiledPolicy() );
+
+        validator.setMinimumCharacterTypes( 2 );
+        assertNotSame( policy, validator.getCompiledPolicy() );
+        assertEquals( null, validate( validator, "FOObarBAZ", newUser( "testuser" ) ) );
+    }
+
+    @Test
+    public void testSharedDictionary() throws Exception {
+        PastdevPasswordValidator first = new PastdevPasswordValidator();
+        PastdevPasswordValidator second = new PastdevPasswordValidator();
+        for ( PastdevPasswordValidator validator : new PastdevPasswordValidator[] { first, second } ) {
+            validator.setDictionary( "dictionary/test-words" );
+            validator.setDictionaryEnabled( true );
+        }
+        int references = sharedDictionaryReferences();
+
+        // cheaper rules do not wait for the dictionary, the dictionary rule does
+        assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( first, "foobar~secret", newUser( "testuser" ) ) );
+        assertEquals( ILLEGAL_WORD_SECRET, validate( second, "X1secret#", newUser( "testuser" ) ) );
+        assertEquals( references + 2, sharedDictionaryReferences() );
+        assertSame( first.getCompiledPolicy().getDictionary().getMatcher(),
+                second.getCompiledPolicy().getDictionary().getMatcher() );
+
+        // recompiling keeps the one lease, closing gives it up
+        first.setFailFast( true );
+        assertEquals( ILLEGAL_WORD_SECRET, validate( first, "X1secret#", newUser( "testuser" ) ) );
+        assertEquals( references + 2, sharedDictionaryReferences() );
+        first.close();
+        second.close();
+        assertEquals( references, sharedDictionaryReferences() );
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        Path settings = Files.createTempFile( "password-policy", ".properties" );
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        try {
+            Files.write( settings, "minimumCharacterTypes=3\n".getBytes( "UTF-8" ) );
+            validator.setSettingsFile( settings.toString() );
+            validator.setReloadEnabled( true );
+            Entry user = newUser( "testuser" );
+            assertEquals( INSUFFICIENT_CHARACTERISTICS_2, validate( validator, "FOObarBAZ", user ) );
+
+            Files.write( settings, "minimumCharacterTypes=2\n".getBytes( "UTF-8" ) );
+            validator.reload();
+            assertEquals( null, validate( validator, "FOObarBAZ", user ) );
+
+            // a bad file leaves the policy in place
+            CompiledPasswordPolicy policy = validator.getCompiledPolicy();
+            Files.write( settings, "minimumStrengthScore=9\n".getBytes( "UTF-8" ) );
+            try {
+                validator.reload();
+                fail( "expected IllegalArgumentException" );
+            }
+            catch ( IllegalArgumentException e ) {
+                // expected
+            }
+            assertSame( policy, validator.getCompiledPolicy() );
+
+            // the watcher reloads a changed file by itself
+            assertEquals( null, validate( validator, "set%Daw()d", user ) );
+            Files.write( settings, "minimumCharacterTypes=4\n".getBytes( "UTF-8" ) );
+            long deadline = System.currentTimeMillis() + 10000;
+            while ( validate( validator, "set%Daw()d", user ) == null && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 50 );
+            }
+            assertTrue( validate( validator, "set%Daw()d", user ).startsWith( "{{INSUFFICIENT_CHARACTERISTICS|" ) );
+        }
+        finally {
+            validator.close();
+            Files.delete( settings );
+        }
+    }
+
+    @Test
+    public void testReloadKeepsOffload() throws Exception {
+        Path settings = Files.createTempFile( "password-policy", ".properties" );
+        PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        try {
+            Files.write( settings, "offloadThreads=2\noffloadTimeoutMillis=10000\n".getBytes( "UTF-8" ) );
+            validator.setSettingsFile( settings.toString() );
+            ValidationExecutor offload = validator.getOffload();
+            assertNotNull( offload );
+
+            // the same pool settings keep the pool
+            Files.write( settings, "offloadThreads=2\noffloadTimeoutMillis=10000\nminimumCharacterTypes=2\n"
+                    .getBytes( "UTF-8" ) );
+            validator.reload();
+            assertSame( offload, validator.getOffload() );
+            assertEquals( null, validate( validator, "FOObarBAZ", newUser( "testuser" ) ) );
+
+            Files.write( settings, "offloadThreads=3\noffloadTimeoutMillis=10000\n".getBytes( "UTF-8" ) );
+            validator.reload();
+            assertNotSame( offload, validator.getOffload() );
+        }
+        finally {
+            validator.close();
+            Files.delete( settings );
+        }
+    }
+
+    private static int sharedDictionaryReferences() {
+        // other tests may still hold it, so only the difference counts
+        int references = 0;
+        for ( DictionaryStatistics statistics : DictionaryRegistry.getInstance().getDictionaries() ) {
+            if ( "dictionary/test-words".equals( statistics.getResource() ) ) {
+                references += statistics.getReferences();
+            }
+        }
+        return references;
+    }
+
+    @Test
+    public void testConcurrentValidate() throws Exception {
+        final PastdevPasswordValidator validator = new PastdevPasswordValidator();
+        final Entry user = newUser( "testuser" );
+        final String[] passwords = { "set%Daw()d", "FOObarBAZ", "F00barBAZ~", "1testuserA" };
+        final String[] expected = { null, INSUFFICIENT_CHARACTERISTICS_2, ILLEGAL_CHAR_TILDE, ILLEGAL_USERNAME };
+        final int threads = 16;
+        final int iterations = 500;
+        final CountDownLatch start = new CountDownLatch( 1 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            List<Future<CompiledPasswordPolicy>> futures = new ArrayList<>();
+            for ( int thread = 0; thread < threads; thread++ ) {
+                final int offset = thread;
+                futures.add( executor.submit( new Callable<CompiledPasswordPolicy>() {
+                    @Override
+                    public CompiledPasswordPolicy call() throws Exception {
+                        start.await();
+                        for ( int i = 0; i < iterations; i++ ) {
+                            int index = (offset + i) % passwords.length;
+                            String message = validate( validator, passwords[index], user );
+                            if ( expected[index] == null ? message != null : !expected[index].equals( message ) ) {
+                                throw new AssertionError( "[" + passwords[index] + "] produced [" + message + "]" );
+                            }
+                        }
+                        return validator.getCompiledPolicy();
+                    }
+                } ) );
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            CompiledPasswordPolicy policy = null;
+            for ( Future<CompiledPasswordPolicy> future : futures ) {
+                CompiledPasswordPolicy threadPolicy = future.get( 60, TimeUnit.SECONDS );
+                if ( policy == null ) {
+                    policy = threadPolicy;
+                }
+                else {
+                    // every thread must have seen the one published policy
+                    assertSame( policy, threadPolicy );
+                }
+            }
+            logger.info( "{} concurrent validations took [{}] seconds", threads * iterations,
+                    (System.nanoTime() - begin) / 1000000000.0 );
+        }
+        catch ( Exception e ) {
+            logger.error( "concurrent validation failed", e );
+            fail( e.getMessage() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
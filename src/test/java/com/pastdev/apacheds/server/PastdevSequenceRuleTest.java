@@ -0,0 +1,78 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+import org.junit.Test;
+
+
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.RuleResult;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+public class PastdevSequenceRuleTest {
+    private static final PastdevSequenceRule rule = new PastdevSequenceRule( 5, 4 );
+
+    private static List<String> describe( String password ) {
+        RuleResult result = rule.validate( new PasswordData( new Password( password ) ) );
+        assertEquals( password, result.isValid(), rule.accepts( password, null ) );
+        List<String> details = new ArrayList<String>();
+        for ( RuleResultDetail detail : result.getDetails() ) {
+            details.add( detail.getErrorCode() + Arrays.toString( detail.getValues() ) );
+        }
+        return details;
+    }
+
+    @Test
+    public void testAccepted() {
+        for ( String password : new String[] { "", "a", "set%Daw()d", "were#Fred42", "abcXyz123", "Aaa111!",
+                "sweden2Go", "qwe8rty", "Pässwörd1" } ) {
+            assertEquals( password, Arrays.asList(), describe( password ) );
+        }
+    }
+
+    @Test
+    public void testAdjacency() {
+        assertEquals( KeyboardAdjacency.QWERTY | KeyboardAdjacency.QWERTZ | KeyboardAdjacency.AZERTY,
+                KeyboardAdjacency.adjacent( 'q', 'w' ) );
+        assertTrue( (KeyboardAdjacency.adjacent( 'W', '@' ) & KeyboardAdjacency.QWERTY) != 0 );
+        assertTrue( (KeyboardAdjacency.adjacent( 'a', 'z' ) & KeyboardAdjacency.QWERTY) != 0 );
+        assertTrue( (KeyboardAdjacency.adjacent( 'z', 'a' ) & KeyboardAdjacency.AZERTY) != 0 );
+        assertTrue( (KeyboardAdjacency.adjacent( 'z', 'a' ) & KeyboardAdjacency.DVORAK) == 0 );
+        assertTrue( (KeyboardAdjacency.adjacent( 'y', 'a' ) & KeyboardAdjacency.QWERTZ) != 0 );
+        assertTrue( (KeyboardAdjacency.adjacent( 'a', 'o' ) & KeyboardAdjacency.DVORAK) != 0 );
+        assertTrue( (KeyboardAdjacency.adjacent( '7', '5' ) & KeyboardAdjacency.KEYPAD) != 0 );
+        assertEquals( 0, KeyboardAdjacency.adjacent( 'q', 't' ) );
+        assertEquals( 0, KeyboardAdjacency.adjacent( 'a', 'a' ) );
+        assertEquals( 0, KeyboardAdjacency.adjacent( 'é', 'z' ) );
+    }
+
+    @Test
+    public void testRejected() {
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[Qwerty]" ), describe( "Qwerty123!" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_REPEATED_CHARACTERS[Aaaa]", "ILLEGAL_REPEATED_CHARACTERS[1111]" ),
+                describe( "Aaaa1111!" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_ALPHABETICAL_SEQUENCE[aBcDe]" ), describe( "#aBcDe1" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_ALPHABETICAL_SEQUENCE[zyxwv]" ), describe( "Xzyxwv1" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_NUMERICAL_SEQUENCE[98765]", "ILLEGAL_KEYBOARD_SEQUENCE[98765]" ),
+                describe( "Pass98765" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_NUMERICAL_SEQUENCE[12345]", "ILLEGAL_KEYBOARD_SEQUENCE[12345]",
+                "ILLEGAL_ALPHABETICAL_SEQUENCE[edcba]" ), describe( "12345edcba" ) );
+        assertEquals( Arrays.asList(), describe( "X1qaz2wsx" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[1qazxsw2]" ), describe( "X1qazxsw2" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[!QAZxsw@]" ), describe( "!QAZxsw@" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[aoeui]" ), describe( "Xaoeui9" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[azert]" ), describe( "Yazert9" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[74159]" ), describe( "Pin74159" ) );
+        assertEquals( Arrays.asList( "ILLEGAL_KEYBOARD_SEQUENCE[poiuy]" ), describe( "Zpoiuy" ) );
+    }
+}
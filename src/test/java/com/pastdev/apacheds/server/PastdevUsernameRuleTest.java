@@ -0,0 +1,75 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+
+import org.junit.Test;
+
+
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.RuleResult;
+import edu.vt.middleware.password.RuleResultDetail;
+import edu.vt.middleware.password.UsernameRule;
+
+
+public class PastdevUsernameRuleTest {
+    private static List<String> describe( RuleResult result ) {
+        List<String> details = new ArrayList<String>();
+        details.add( Boolean.toString( result.isValid() ) );
+        for ( RuleResultDetail detail : result.getDetails() ) {
+            details.add( detail.getErrorCode() + Arrays.toString( detail.getValues() ) );
+        }
+        return details;
+    }
+
+    private static String randomString( Random random, String alphabet, int minimum, int maximum ) {
+        char[] chars = new char[minimum + random.nextInt( maximum - minimum + 1 )];
+        for ( int i = 0; i < chars.length; i++ ) {
+            chars[i] = alphabet.charAt( random.nextInt( alphabet.length() ) );
+        }
+        return new String( chars );
+    }
+
+    @Test
+    public void testMatchesUsernameRule() {
+        Random random = new Random( 42 );
+        for ( boolean matchBackwards : new boolean[] { true, false } ) {
+            for ( boolean ignoreCase : new boolean[] { true, false } ) {
+                UsernameRule legacy = new UsernameRule( matchBackwards, ignoreCase );
+                PastdevUsernameRule pastdev = new PastdevUsernameRule( matchBackwards, ignoreCase );
+                for ( int i = 0; i < 5000; i++ ) {
+                    PasswordData passwordData = new PasswordData(
+                            new Password( randomString( random, "abAB1", 0, 12 ) ) );
+                    passwordData.setUsername( randomString( random, "abAB", 1, 3 ) );
+                    assertEquals( passwordData.getPassword().getText() + " " + passwordData.getUsername(),
+                            describe( legacy.validate( passwordData ) ),
+                            describe( pastdev.validate( passwordData ) ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIgnoresDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault( new Locale( "tr", "TR" ) );
+        try {
+            PasswordData passwordData = new PasswordData( new Password( "x1AdmIn#" ) );
+            passwordData.setUsername( "ADMIN" );
+            assertEquals( Arrays.asList( "false", UsernameRule.ERROR_CODE + "[admin]" ),
+                    describe( new PastdevUsernameRule( false, true ).validate( passwordData ) ) );
+        }
+        finally {
+            Locale.setDefault( locale );
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import java.io.IOException;
+
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+import com.pastdev.apacheds.server.dictionary.FrequencyTable;
+
+
+public class StrengthEstimatorTest {
+    private static final Logger logger = LoggerFactory.getLogger( StrengthEstimatorTest.class );
+
+    private static StrengthEstimator estimator;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        estimator = new StrengthEstimator( FrequencyTable.load( StrengthEstimatorTest.class.getClassLoader(),
+                "conf/password_frequencies" ), 2016 );
+    }
+
+    @Test
+    public void testBounded() {
+        StringBuilder adversarial = new StringBuilder();
+        while ( adversarial.length() < 100000 ) {
+            adversarial.append( "passwordpass1" );
+        }
+        String password = adversarial.toString();
+        estimator.estimate( password );
+        long start = System.nanoTime();
+        for ( int i = 0; i < 100; i++ ) {
+            estimator.estimate( password );
+        }
+        long elapsed = (System.nanoTime() - start) / 100;
+        logger.debug( "estimated {} characters in {}ns", password.length(), elapsed );
+        // the length beyond the bound only adds brute force characters
+        assertEquals( estimator.estimate( password.substring( 0, StrengthEstimator.MAX_LENGTH ) )
+                + password.length() - StrengthEstimator.MAX_LENGTH, estimator.estimate( password ), 1e-9 );
+        assertTrue( "took " + elapsed + "ns", elapsed < 1000000 );
+    }
+
+    @Test
+    public void testScore() {
+        String[][] scores = {
+                { "0", "qwertyuiop!", "password", "123456", "Password1", "qwerty123", "P@ssw0rd", "aaaaaaaa", "abcdef", "2016" },
+                { "1", "Password1!", "monkey2016", "dragon12", "iloveyou99" },
+                { "2", "GoldenTiger9", "k7#Mq2" },
+                { "4", "set%Daw()d", "correcthorsebatterystaple", "x9$Lq!v2Rz#t" },
+        };
+        for ( String[] expected : scores ) {
+            for ( int i = 1; i < expected.length; i++ ) {
+                assertEquals( expected[i] + " " + estimator.estimate( expected[i] ),
+                        Integer.parseInt( expected[0] ), estimator.score( expected[i] ) );
+            }
+        }
+        assertEquals( 0, estimator.score( "" ) );
+    }
+
+    @Test
+    public void testScoreThresholds() {
+        assertEquals( 0, StrengthEstimator.score( 2.9 ) );
+        assertEquals( 1, StrengthEstimator.score( 3 ) );
+        assertEquals( 2, StrengthEstimator.score( 7.5 ) );
+        assertEquals( 3, StrengthEstimator.score( 9.99 ) );
+        assertEquals( 4, StrengthEstimator.score( 42 ) );
+    }
+}
@@ -0,0 +1,179 @@
+package com.pastdev.apacheds.server;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures {@link PastdevPasswordValidator#validate(CharSequence,
+ * CharSequence)} across the cases that decide its cost: the password length,
+ * ASCII or not, with and without the dictionary, accepted or rejected, and
+ * on one thread or several sharing the validator. A rejected password fails
+ * the character classes, so with the dictionary on it also measures
+ * collecting the details of every rule.
+ * <p>
+ * The dictionary is off, the four word test list, or a large one: the
+ * cracklib word list when it is on the classpath, otherwise
+ * {@value #GENERATED_WORDS} generated words, about the size of a desktop
+ * spelling dictionary. The generated list is written next to the test list
+ * on first use and kept for later runs. The automaton scans a password once
+ * whatever the dictionary size, which the large case shows, along with the
+ * cost of its larger arrays.
+ * <p>
+ * Run with <code>mvn -P benchmark verify -Dbenchmark=ValidateBenchmark</code>;
+ * the results are also written as JSON to
+ * <code>target/jmh-result.json</code> for comparing runs.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class ValidateBenchmark {
+    private static final String CRACKLIB = "cracklib-words-20080507";
+    private static final String GENERATED = "dictionary/generated-words";
+    static final int GENERATED_WORDS = 250000;
+    private static final String TEST_WORDS = "dictionary/test-words";
+    private static final String USERNAME = "testuser";
+
+    @Param( { "ascii", "nonAscii" } )
+    public String characters;
+
+    @Param( { "none", "test", "large" } )
+    public String dictionary;
+
+    @Param( { "8", "16", "32", "64", "128" } )
+    public int length;
+
+    @Param( { "accepted", "rejected" } )
+    public String outcome;
+
+    private String password;
+    private PastdevPasswordValidator validator;
+
+    /**
+     * Returns the cracklib word list if it is on the classpath, otherwise
+     * the generated one, writing it first if need be. Generated words are
+     * 4 to 12 lower case letters, and the accepted passwords have no run of
+     * 4 lower case ASCII letters, so they stay accepted.
+     */
+    static String largeDictionary() throws IOException {
+        ClassLoader classLoader = ValidateBenchmark.class.getClassLoader();
+        if ( classLoader.getResource( CRACKLIB ) != null ) {
+            return CRACKLIB;
+        }
+        Path generated;
+        try {
+            generated = Paths.get( classLoader.getResource( TEST_WORDS ).toURI() ).resolveSibling(
+                    Paths.get( GENERATED ).getFileName() );
+        }
+        catch ( URISyntaxException e ) {
+            throw new IOException( "Invalid test word list url", e );
+        }
+        if ( Files.exists( generated ) ) {
+            return GENERATED;
+        }
+
+        Random random = new Random( 42 );
+        Path temp = Files.createTempFile( generated.getParent(), "generated-words", ".tmp" );
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter( temp, StandardCharsets.UTF_8 )) {
+                char[] word = new char[12];
+                for ( int i = 0; i < GENERATED_WORDS; i++ ) {
+                    int length = 4 + random.nextInt( word.length - 3 );
+                    for ( int j = 0; j < length; j++ ) {
+                        word[j] = (char) ('a' + random.nextInt( 26 ));
+                    }
+                    writer.write( word, 0, length );
+                    writer.newLine();
+                }
+            }
+            Files.move( temp, generated, StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally {
+            Files.deleteIfExists( temp );
+        }
+        return GENERATED;
+    }
+
+    /**
+     * Repeats <code>pattern</code> to <code>length</code> characters. An
+     * accepted pattern has all four character classes and no dictionary
+     * word or username; a rejected one has only lower case letters and
+     * digits.
+     */
+    static String password( String characters, String outcome, int length ) {
+        String pattern;
+        if ( "ascii".equals( characters ) ) {
+            pattern = "accepted".equals( outcome ) ? "kT4%vRw9(z" : "kt4xvrw9hz";
+        }
+        else {
+            pattern = "accepted".equals( outcome ) ? "éŽ4%ñßΩ9(ж" : "éž4xñßω9hж";
+        }
+        StringBuilder password = new StringBuilder( length );
+        while ( password.length() < length ) {
+            password.append( pattern.charAt( password.length() % pattern.length() ) );
+        }
+        return password.toString();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        validator = new PastdevPasswordValidator();
+        validator.setDictionary( "large".equals( dictionary ) ? largeDictionary() : TEST_WORDS );
+        validator.setDictionaryEnabled( !"none".equals( dictionary ) );
+        password = password( characters, outcome, length );
+
+        // fail here rather than measure the wrong case
+        boolean accepted = validate() == null;
+        if ( accepted != "accepted".equals( outcome ) ) {
+            throw new IllegalStateException( password + " was not " + outcome );
+        }
+    }
+
+    @Benchmark
+    public String single() {
+        return validate();
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public String contended() {
+        return validate();
+    }
+
+    private String validate() {
+        try {
+            validator.validate( password, (CharSequence) USERNAME );
+            return null;
+        }
+        catch ( PasswordPolicyException e ) {
+            return e.getMessage();
+        }
+    }
+}
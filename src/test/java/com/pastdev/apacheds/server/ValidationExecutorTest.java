@@ -0,0 +1,134 @@
+package com.pastdev.apacheds.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+import com.pastdev.apacheds.server.metrics.PasswordPolicyMetrics;
+
+
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+public class ValidationExecutorTest {
+    private CountDownLatch release;
+    private PasswordPolicyMetrics metrics;
+
+    private Callable<RuleResultDetail> blocked( final CountDownLatch started ) {
+        return new Callable<RuleResultDetail>() {
+            @Override
+            public RuleResultDetail call() throws Exception {
+                started.countDown();
+                release.await( 10, TimeUnit.SECONDS );
+                return null;
+            }
+        };
+    }
+
+    @Before
+    public void setUp() {
+        release = new CountDownLatch( 1 );
+        metrics = new PasswordPolicyMetrics();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void testCheck() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor( 2, 10, 5000, metrics );
+        assertNull( executor.check( new Callable<RuleResultDetail>() {
+            @Override
+            public RuleResultDetail call() {
+                return null;
+            }
+        } ) );
+        try {
+            executor.check( new Callable<RuleResultDetail>() {
+                @Override
+                public RuleResultDetail call() throws PasswordPolicyException {
+                    throw new PasswordPolicyException( "Email not found" );
+                }
+            } );
+            fail( "expected PasswordPolicyException" );
+        }
+        catch ( PasswordPolicyException e ) {
+            assertEquals( "Email not found", e.getMessage() );
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        final ValidationExecutor executor = new ValidationExecutor( 1, 1, 5000, metrics );
+        final CountDownLatch started = new CountDownLatch( 1 );
+        new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.check( blocked( started ) );
+                }
+                catch ( PasswordPolicyException e ) {
+                    // not thrown
+                }
+            }
+        } ).start();
+        started.await( 10, TimeUnit.SECONDS );
+        final CountDownLatch queued = new CountDownLatch( 1 );
+        new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queued.countDown();
+                    executor.check( blocked( new CountDownLatch( 1 ) ) );
+                }
+                catch ( PasswordPolicyException e ) {
+                    // not thrown
+                }
+            }
+        } ).start();
+        queued.await( 10, TimeUnit.SECONDS );
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( metrics.getOffloadQueueDepth() == 0 && System.currentTimeMillis() < deadline ) {
+            Thread.sleep( 10 );
+        }
+        assertEquals( 1, metrics.getOffloadQueueDepth() );
+
+        RuleResultDetail detail = executor.check( blocked( new CountDownLatch( 1 ) ) );
+        assertEquals( ValidationExecutor.ERROR_CODE, detail.getErrorCode() );
+        assertEquals( 1, metrics.getOffloadRejections() );
+        assertEquals( 0, metrics.getOffloadTimeouts() );
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor( 1, 10, 50, metrics );
+        CountDownLatch started = new CountDownLatch( 1 );
+        RuleResultDetail detail = executor.check( blocked( started ) );
+        assertEquals( ValidationExecutor.ERROR_CODE, detail.getErrorCode() );
+        assertEquals( 1, metrics.getOffloadTimeouts() );
+
+        // one that never started gives up its place in the queue
+        detail = executor.check( blocked( new CountDownLatch( 1 ) ) );
+        assertEquals( ValidationExecutor.ERROR_CODE, detail.getErrorCode() );
+        assertEquals( 2, metrics.getOffloadTimeouts() );
+        assertEquals( 0, metrics.getOffloadQueueDepth() );
+        executor.shutdown();
+    }
+}
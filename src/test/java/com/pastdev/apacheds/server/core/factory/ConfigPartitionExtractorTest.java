@@ -0,0 +1,57 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.config.ConfigPartitionReader;
+import org.apache.directory.server.config.beans.ConfigBean;
+import org.apache.directory.server.config.beans.DirectoryServiceBean;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class ConfigPartitionExtractorTest {
+    private static final Logger logger = LoggerFactory.getLogger( ConfigPartitionExtractorTest.class );
+
+    private static void readConfig( ResourceExtractor resourceExtractor ) throws Exception {
+        SchemaManager schemaManager = new DefaultSchemaManager();
+        schemaManager.loadAllEnabled();
+        CacheService cacheService = new CacheService();
+        cacheService.initialize( null, "config-partition-extractor-test" );
+
+        long start = System.nanoTime();
+        ConfigPartitionExtractor extractor = new ConfigPartitionExtractor( schemaManager, null, cacheService );
+        resourceExtractor.using( extractor );
+        AvlPartition partition = extractor.createPartition();
+        ConfigBean configBean = new ConfigPartitionReader( partition ).readConfig();
+        logger.info( "Reading the config took [{}] seconds", (System.nanoTime() - start) / 1000000000.0 );
+
+        DirectoryServiceBean directoryServiceBean = configBean.getDirectoryServiceBean();
+        assertNotNull( directoryServiceBean );
+        assertEquals( "default", directoryServiceBean.getDirectoryServiceId() );
+        assertFalse( directoryServiceBean.getInterceptors().isEmpty() );
+        partition.destroy();
+        cacheService.destroy();
+    }
+
+    @Test
+    public void testReadConfig() throws Exception {
+        readConfig( ResourceExtractor.extractResources()
+                .fromIndex( "/META-INF/apacheds-config.index" )
+                .inParallel( 4 ) );
+    }
+
+    @Test
+    public void testReadConfigFromArchive() throws Exception {
+        readConfig( ResourceExtractor.extractResources()
+                .fromArchive( "/META-INF/apacheds-config.zip" ) );
+    }
+}
@@ -0,0 +1,142 @@
+package com.pastdev.apacheds.server.core.factory;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.config.ConfigPartitionReader;
+import org.apache.directory.server.config.beans.DirectoryServiceBean;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class ConfigSnapshotTest {
+    private static final Logger logger = LoggerFactory.getLogger( ConfigSnapshotTest.class );
+
+    private Path directory;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory( "config-snapshot-test" );
+    }
+
+    @After
+    public void after() throws IOException {
+        ResourceExtractorTest.delete( directory );
+    }
+
+    private static File snapshotFile( Path directory ) {
+        File[] files = directory.toFile().listFiles( new FilenameFilter() {
+            @Override
+            public boolean accept( File directory, String name ) {
+                return name.endsWith( ".xml.gz" );
+            }
+        } );
+        assertEquals( 1, files.length );
+        return files[0];
+    }
+
+    private static DirectoryServiceBean readConfig() throws Exception {
+        SchemaManager schemaManager = new DefaultSchemaManager();
+        schemaManager.loadAllEnabled();
+        CacheService cacheService = new CacheService();
+        cacheService.initialize( null, "config-snapshot-test" );
+
+        ConfigPartitionExtractor extractor = new ConfigPartitionExtractor( schemaManager, null, cacheService );
+        ResourceExtractor.extractResources()
+                .fromArchive( ConfigDirectoryServiceFactory.CONFIG_ARCHIVE )
+                .using( extractor );
+        AvlPartition partition = extractor.createPartition();
+        DirectoryServiceBean directoryServiceBean = new ConfigPartitionReader( partition )
+                .readConfig().getDirectoryServiceBean();
+        partition.destroy();
+        cacheService.destroy();
+        return directoryServiceBean;
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        ConfigSnapshot snapshot = ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX,
+                directory.toFile() );
+        assertNotNull( snapshot );
+        assertNull( snapshot.read() );
+
+        DirectoryServiceBean directoryServiceBean = readConfig();
+        snapshot.write( directoryServiceBean );
+
+        long start = System.nanoTime();
+        DirectoryServiceBean read = ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX,
+                directory.toFile() ).read();
+        logger.info( "Reading the snapshot took [{}] seconds", (System.nanoTime() - start) / 1000000000.0 );
+        assertNotNull( read );
+        assertEquals( "default", read.getDirectoryServiceId() );
+        assertFalse( read.getInterceptors().isEmpty() );
+        assertEquals( directoryServiceBean.toString(), read.toString() );
+    }
+
+    @Test
+    public void testSnapshotUnreadable() throws Exception {
+        ConfigSnapshot snapshot = ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX,
+                directory.toFile() );
+        snapshot.write( readConfig() );
+
+        File file = snapshotFile( directory );
+        Files.write( file.toPath(), "not a snapshot".getBytes( StandardCharsets.UTF_8 ) );
+        assertNull( snapshot.read() );
+        assertFalse( file.exists() );
+    }
+
+    @Test
+    public void testSnapshotSignedWithAnotherKey() throws Exception {
+        ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX, directory.toFile() )
+                .write( readConfig() );
+
+        // a well formed snapshot, but not one this folder's key signed
+        Path other = directory.resolve( "other" );
+        ConfigSnapshot snapshot = ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX,
+                other.toFile() );
+        File file = snapshotFile( directory );
+        Files.copy( file.toPath(), other.resolve( file.getName() ) );
+        assertNull( snapshot.read() );
+        assertFalse( other.resolve( file.getName() ).toFile().exists() );
+    }
+
+    @Test
+    public void testSnapshotDirectoryCreatedPrivate() throws Exception {
+        Path created = directory.resolve( "snapshots" );
+        assertNotNull( ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX, created.toFile() ) );
+        assertEquals( PosixFilePermissions.fromString( "rwx------" ), Files.getPosixFilePermissions( created ) );
+    }
+
+    @Test
+    public void testSnapshotDirectoryNotPrivate() throws Exception {
+        Path shared = Files.createDirectory( directory.resolve( "shared" ) );
+        Files.setPosixFilePermissions( shared, PosixFilePermissions.fromString( "rwxrwxrwx" ) );
+        assertNull( ConfigSnapshot.forIndex( ConfigDirectoryServiceFactory.CONFIG_INDEX, shared.toFile() ) );
+        assertEquals( 0, shared.toFile().list().length );
+    }
+
+    @Test
+    public void testSnapshotWithoutIndex() throws Exception {
+        assertNull( ConfigSnapshot.forIndex( "/META-INF/no-such.index", directory.toFile() ) );
+    }
+}
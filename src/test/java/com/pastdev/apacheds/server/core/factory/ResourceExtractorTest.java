@@ -1,23 +1,34 @@
 package com.pastdev.apacheds.server.core.factory;
 
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
 import org.junit.Test;
+import com.pastdev.apacheds.server.core.factory.ResourceExtractor.Extractor;
 import com.pastdev.apacheds.server.core.factory.ResourceExtractor.FileNamer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,22 +83,36 @@ public class ResourceExtractorTest {
     public void testExtract() throws IOException {
         final Path folder = Files.createTempDirectory( "resourceextractor" );
         try {
+            FileNamer fileNamer = new FileNamer() {
+                @Override
+                public File name( String name ) {
+                    Matcher matcher = CONFIG_INDEX_ENTRY.matcher( name );
+                    if ( matcher.matches() ) {
+                        logger.debug( "{}\n{}\n{}", folder, matcher.group( 1 ),
+                                folder.resolve( matcher.group( 1 ) ) );
+                        return folder.resolve( matcher.group( 1 ) ).toFile();
+                    }
+                    return null;
+                }
+            };
+            File manifest = folder.resolve( ".manifest" ).toFile();
+
             long start = System.nanoTime();
             ResourceExtractor.extractResources()
                     .fromIndex( "/META-INF/apacheds-config.index" )
-                    .to( new FileNamer() {
-                        @Override
-                        public File name( String name ) {
-                            Matcher matcher = CONFIG_INDEX_ENTRY.matcher( name );
-                            if ( matcher.matches() ) {
-                                logger.debug( "{}\n{}\n{}", folder, matcher.group( 1 ),
-                                        folder.resolve( matcher.group( 1 ) ) );
-                                return folder.resolve( matcher.group( 1 ) ).toFile();
-                            }
-                            return null;
-                        }
-                    } );
-            logger.info( "Extraction took [{}] seconds", (System.nanoTime() - start) / 1000000000.0 );
+                    .incrementally( manifest )
+                    .to( fileNamer );
+            long cold = System.nanoTime() - start;
+            assertTrue( Files.exists( folder.resolve( "ou=config.ldif" ) ) );
+
+            start = System.nanoTime();
+            ResourceExtractor.extractResources()
+                    .fromIndex( "/META-INF/apacheds-config.index" )
+                    .incrementally( manifest )
+                    .to( fileNamer );
+            long warm = System.nanoTime() - start;
+            logger.info( "Extraction took [{}] seconds cold, [{}] seconds warm",
+                    cold / 1000000000.0, warm / 1000000000.0 );
         }
         finally {
             // best effort delete all files/folders
@@ -118,4 +143,252 @@ public class ResourceExtractorTest {
         }
         assertFalse( Files.exists( folder ) );
     }
+
+    @Test
+    public void testExtractByLinking() throws Exception {
+        Path folder = Files.createTempDirectory( "resourceextractor" );
+        try {
+            Path resource = Paths.get( getClass().getResource( "/conf/ou=config.ldif" ).toURI() );
+            byte[] contents = Files.readAllBytes( resource );
+            ResourceExtractor.extractResources()
+                    .fromResources( "/conf/ou=config.ldif" )
+                    .byLinking()
+                    .to( folder.toFile() );
+            Path extracted = folder.resolve( "conf/ou=config.ldif" );
+            assertArrayEquals( contents, Files.readAllBytes( extracted ) );
+
+            // extracting again, linked or not, replaces the link rather than
+            // writing through it to the resource
+            ResourceExtractor.extractResources()
+                    .fromResources( "/conf/ou=config.ldif" )
+                    .to( folder.toFile() );
+            assertArrayEquals( contents, Files.readAllBytes( extracted ) );
+            assertArrayEquals( contents, Files.readAllBytes( resource ) );
+        }
+        finally {
+            delete( folder );
+        }
+    }
+
+    @Test
+    public void testExtractFromJar() throws IOException {
+        Path folder = Files.createTempDirectory( "resourceextractor" );
+        try {
+            // the first is in a jar, so the others are looked for there too
+            String[] resources = { "/org/junit/Test.class", "/conf/ou=config.ldif", "/junit/framework/Assert.class",
+                    "/org/junit/Assert.class" };
+            ResourceExtractor.extractResources()
+                    .fromResources( resources )
+                    .using( new Extractor() {
+                        @Override
+                        public void extract( String name, InputStream contents ) throws IOException {
+                            // closing an entry must not close the jar
+                            contents.close();
+                        }
+                    } );
+            ResourceExtractor.extractResources()
+                    .fromResources( resources )
+                    .to( folder.toFile() );
+            for ( String resource : resources ) {
+                try (InputStream expected = getClass().getResourceAsStream( resource )) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    ResourceExtractor.copy( expected, bytes );
+                    assertArrayEquals( resource, bytes.toByteArray(),
+                            Files.readAllBytes( folder.resolve( resource.substring( 1 ) ) ) );
+                }
+            }
+        }
+        finally {
+            delete( folder );
+        }
+    }
+
+    @Test
+    public void testExtractFromArchive() throws IOException {
+        Path folder = Files.createTempDirectory( "resourceextractor" );
+        try {
+            long start = System.nanoTime();
+            ResourceExtractor.extractResources()
+                    .fromIndex( "/META-INF/apacheds-config.index" )
+                    .to( folder.resolve( "index" ).toFile() );
+            long index = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ResourceExtractor.extractResources()
+                    .fromArchive( "/META-INF/apacheds-config.zip" )
+                    .to( folder.resolve( "archive" ).toFile() );
+            long archive = System.nanoTime() - start;
+            logger.info( "Extraction took [{}] seconds from the index, [{}] seconds from the archive",
+                    index / 1000000000.0, archive / 1000000000.0 );
+
+            // the same files, named the same
+            int count = 0;
+            for ( String resource : new ResourceExtractor.ArchiveSource( "/META-INF/apacheds-config.zip" )
+                    .resourceNames() ) {
+                assertArrayEquals( resource,
+                        Files.readAllBytes( folder.resolve( "index" ).resolve( resource.substring( 1 ) ) ),
+                        Files.readAllBytes( folder.resolve( "archive" ).resolve( resource.substring( 1 ) ) ) );
+                count++;
+            }
+            assertEquals( 91, count );
+            delete( folder.resolve( "index" ) );
+            delete( folder.resolve( "archive" ) );
+            assertEquals( 0, folder.toFile().list().length );
+        }
+        finally {
+            delete( folder );
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        int count = 0;
+        for ( ResourceIndex.Entry entry : new ResourceExtractor.IndexSource( "/META-INF/apacheds-config.index" )
+                .entries() ) {
+            try (InputStream contents = getClass().getResourceAsStream( entry.getName() )) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ResourceExtractor.copy( contents, bytes );
+                assertEquals( entry.getName(), bytes.size(), entry.getSize() );
+                assertEquals( entry.getName(), ResourceExtractor.Manifest.hash( bytes.toByteArray() ),
+                        entry.getHash() );
+            }
+            count++;
+        }
+        assertEquals( 91, count );
+
+        // a name alone, as written by hand, is still read
+        ResourceIndex.Entry entry = ResourceIndex.parse( "conf/ou=config.ldif" );
+        assertEquals( "/conf/ou=config.ldif", entry.getName() );
+        assertEquals( -1, entry.getSize() );
+        assertEquals( null, entry.getHash() );
+    }
+
+    @Test
+    public void testExtractInParallel() throws IOException {
+        Path folder = Files.createTempDirectory( "resourceextractor" );
+        try {
+            long start = System.nanoTime();
+            ResourceExtractor.extractResources()
+                    .fromIndex( "/META-INF/apacheds-config.index" )
+                    .to( folder.resolve( "sequential" ).toFile() );
+            long sequential = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ResourceExtractor.extractResources()
+                    .fromIndex( "/META-INF/apacheds-config.index" )
+                    .inParallel( 4 )
+                    .to( folder.resolve( "parallel" ).toFile() );
+            long parallel = System.nanoTime() - start;
+            logger.info( "Extraction took [{}] seconds in turn, [{}] seconds in parallel",
+                    sequential / 1000000000.0, parallel / 1000000000.0 );
+
+            for ( String resource : new ResourceExtractor.IndexSource( "/META-INF/apacheds-config.index" )
+                    .resourceNames() ) {
+                assertArrayEquals( resource,
+                        Files.readAllBytes( folder.resolve( "sequential" ).resolve( resource.substring( 1 ) ) ),
+                        Files.readAllBytes( folder.resolve( "parallel" ).resolve( resource.substring( 1 ) ) ) );
+            }
+        }
+        finally {
+            delete( folder );
+        }
+    }
+
+    @Test
+    public void testExtractInParallelFailure() throws Exception {
+        final int threads = 4;
+        final AtomicInteger extracted = new AtomicInteger();
+        try {
+            ResourceExtractor.extractResources()
+                    .fromIndex( "/META-INF/apacheds-config.index" )
+                    .inParallel( threads )
+                    .using( new Extractor() {
+                        @Override
+                        public void extract( String name, InputStream contents ) throws IOException {
+                            if ( extracted.incrementAndGet() == 10 ) {
+                                throw new IOException( "disk full" );
+                            }
+                        }
+                    } );
+            fail( "expected IOException" );
+        }
+        catch ( IOException e ) {
+            assertEquals( "disk full", e.getMessage() );
+        }
+
+        // each other worker finished at most the one resource it had taken
+        // when the failure came, and none took another, then or later
+        int count = extracted.get();
+        assertTrue( String.valueOf( count ), count <= 10 + threads - 1 );
+        Thread.sleep( 100 );
+        assertEquals( count, extracted.get() );
+    }
+
+    @Test
+    public void testExtractIncrementally() throws IOException {
+        Path folder = Files.createTempDirectory( "resourceextractor" );
+        try {
+            File manifest = folder.resolve( ".manifest" ).toFile();
+            String[] resources = { "/conf/ou=config.ldif", "/conf/ou=config/ads-directoryserviceid=default.ldif" };
+            ResourceExtractor.extractResources()
+                    .fromResources( resources )
+                    .incrementally( manifest )
+                    .to( folder.toFile() );
+            File config = folder.resolve( "conf/ou=config.ldif" ).toFile();
+            File directoryService = folder.resolve( "conf/ou=config/ads-directoryserviceid=default.ldif" ).toFile();
+            byte[] contents = Files.readAllBytes( config.toPath() );
+            assertTrue( manifest.exists() );
+            assertTrue( directoryService.exists() );
+
+            // the same size and time are taken to be the same contents
+            byte[] changed = contents.clone();
+            changed[0] = (byte) '#';
+            long lastModified = config.lastModified();
+            Files.write( config.toPath(), changed );
+            config.setLastModified( lastModified );
+            ResourceExtractor.extractResources()
+                    .fromResources( resources )
+                    .incrementally( manifest )
+                    .to( folder.toFile() );
+            assertArrayEquals( changed, Files.readAllBytes( config.toPath() ) );
+
+            // a different time is not, and the file is restored
+            config.setLastModified( lastModified - 10000 );
+            ResourceExtractor.extractResources()
+                    .fromResources( resources )
+                    .incrementally( manifest )
+                    .to( folder.toFile() );
+            assertArrayEquals( contents, Files.readAllBytes( config.toPath() ) );
+
+            // a resource no longer extracted is removed
+            ResourceExtractor.extractResources()
+                    .fromResources( resources[0] )
+                    .incrementally( manifest )
+                    .to( folder.toFile() );
+            assertTrue( config.exists() );
+            assertFalse( directoryService.exists() );
+            assertEquals( 1, Files.readAllLines( manifest.toPath(), StandardCharsets.UTF_8 ).size() );
+        }
+        finally {
+            delete( folder );
+        }
+    }
+
+    static void delete( Path folder ) throws IOException {
+        // best effort delete all files/folders
+        Files.walkFileTree( folder, EnumSet.noneOf( FileVisitOption.class ), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
+                        Files.delete( file );
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory( Path dir, IOException exc ) throws IOException {
+                        Files.delete( dir );
+                        return FileVisitResult.CONTINUE;
+                    }
+                } );
+    }
 }
@@ -0,0 +1,134 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+import edu.vt.middleware.dictionary.ArrayWordList;
+import edu.vt.middleware.dictionary.WordListDictionary;
+import edu.vt.middleware.dictionary.sort.ArraysSort;
+import edu.vt.middleware.password.DictionarySubstringRule;
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+
+
+public class BinaryDictionaryTest {
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile( "dictionary", BinaryDictionary.EXTENSION );
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists( file );
+    }
+
+    private DictionaryAutomaton write( String[] words, boolean caseSensitive ) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream( file )) {
+            BinaryDictionary.write( Arrays.asList( words ).iterator(), caseSensitive, 4, outputStream );
+        }
+        return BinaryDictionary.open( file.toUri().toURL() );
+    }
+
+    @Test
+    public void testMatchesDictionarySubstringRule() throws IOException {
+        Random random = new Random( 42 );
+        for ( boolean caseSensitive : new boolean[] { true, false } ) {
+            // enough words for the dense root table
+            String[] words = new String[3000];
+            for ( int i = 0; i < words.length; i++ ) {
+                words[i] = DictionaryAutomatonTest.randomString( random, "abcdABéā", 1, 7 )
+                        + (char) ('\u4e00' + random.nextInt( 100 ));
+            }
+            DictionaryAutomaton automaton = write( words, caseSensitive );
+            assertTrue( Files.size( file ) > (Character.MAX_VALUE + 1) * 4 );
+            assertEquals( 0, automaton.getHeapBytes() );
+            assertEquals( Files.size( file ), automaton.getMappedBytes() );
+
+            WordListDictionary legacyDictionary = new WordListDictionary(
+                    new ArrayWordList( words.clone(), caseSensitive, new ArraysSort() ) );
+            DictionarySubstringRule legacy = new DictionarySubstringRule( legacyDictionary, 4 );
+            legacy.setMatchBackwards( true );
+            DictionarySubstringRule legacyForward = new DictionarySubstringRule( legacyDictionary, 4 );
+            DictionaryAutomaton forwardOnly = automaton.forwardOnly();
+
+            for ( int i = 0; i < 5000; i++ ) {
+                String password = DictionaryAutomatonTest.randomString( random, "abcdABxÉ\u4e00\u4e01\u4e02", 0, 12 );
+                PasswordData passwordData = new PasswordData( new Password( password ) );
+                assertEquals( password + " caseSensitive=" + caseSensitive,
+                        DictionaryAutomatonTest.describe( legacy.validate( passwordData ) ),
+                        DictionaryAutomatonTest.describe( automaton.search( password ) ) );
+                assertEquals( password + " caseSensitive=" + caseSensitive,
+                        DictionaryAutomatonTest.describe( legacyForward.validate( passwordData ) ),
+                        DictionaryAutomatonTest.describe( forwardOnly.search( password ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testOpenFromJar() throws IOException {
+        write( new String[] { "pass", "word" }, false );
+        Path jar = Files.createTempFile( "dictionary", ".jar" );
+        try {
+            try (JarOutputStream jarOutputStream = new JarOutputStream( Files.newOutputStream( jar ) )) {
+                jarOutputStream.putNextEntry( new JarEntry( "words" + BinaryDictionary.EXTENSION ) );
+                Files.copy( file, jarOutputStream );
+            }
+            DictionaryAutomaton automaton = BinaryDictionary.open(
+                    new URL( "jar:" + jar.toUri() + "!/words" + BinaryDictionary.EXTENSION ) );
+            assertEquals( "WORD", automaton.search( "X1WORD#" ).getWord() );
+            assertEquals( 0, automaton.getHeapBytes() );
+            assertEquals( Files.size( file ), automaton.getMappedBytes() );
+        }
+        finally {
+            Files.delete( jar );
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void testOpenTruncated() throws IOException {
+        write( new String[] { "pass", "word" }, true );
+        byte[] contents = Files.readAllBytes( file );
+        Files.write( file, Arrays.copyOf( contents, contents.length - 1 ) );
+        BinaryDictionary.open( file );
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        DictionaryAutomaton automaton = write( new String[] { " Pass ", "word", "", "pass", "word" }, true );
+        assertTrue( automaton.isCaseSensitive() );
+        assertTrue( automaton.isMatchBackwards() );
+        assertEquals( 4, automaton.getMinimumLength() );
+        assertEquals( "Pass", automaton.search( "X Pass#" ).getWord() );
+        assertNull( automaton.search( "X1PASS#" ) );
+        assertEquals( "pass", automaton.search( "X1ssap#" ).getReversedWord() );
+        assertNull( automaton.forwardOnly().search( "X1ssap#" ) );
+
+        automaton = write( new String[] { " Pass ", "word", "pass" }, false );
+        assertFalse( automaton.isCaseSensitive() );
+        assertNotNull( automaton.search( "X1PASS#" ) );
+        assertNull( automaton.search( "X1pas#" ) );
+    }
+}
@@ -0,0 +1,100 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+
+import org.junit.Test;
+
+
+public class BloomFilterTest {
+    @Test
+    public void testCountPrefixes() {
+        Random random = new Random( 42 );
+        for ( boolean matchBackwards : new boolean[] { true, false } ) {
+            String[] words = new String[500];
+            Set<String> prefixes = new HashSet<String>();
+            for ( int i = 0; i < words.length; i++ ) {
+                words[i] = DictionaryAutomatonTest.randomString( random, "abcdef", 2, 8 );
+                if ( words[i].length() >= 4 ) {
+                    prefixes.add( words[i].substring( 0, 4 ) );
+                    if ( matchBackwards ) {
+                        prefixes.add( new StringBuilder( words[i] ).reverse().substring( 0, 4 ) );
+                    }
+                }
+            }
+            DictionaryAutomaton automaton = DictionaryAutomaton.compile( Arrays.asList( words ).iterator(), true,
+                    4, matchBackwards );
+            assertEquals( prefixes.size(), automaton.countPrefixes() );
+            assertEquals( prefixes.size(), BloomFilter.build( automaton, 10 ).getPrefixCount() );
+        }
+    }
+
+    @Test
+    public void testCounters() {
+        DictionaryAutomaton automaton = DictionaryAutomaton.compile(
+                Arrays.asList( "password", "secret" ).iterator(), false, 4, false );
+        BloomFilter filter = BloomFilter.build( automaton, 10 );
+        assertEquals( 0, filter.getHitRatio(), 0 );
+        assertEquals( 0, filter.getFalsePositiveRate(), 0 );
+
+        assertEquals( "SeCrEt", filter.search( "X1SeCrEt#" ).getWord() );
+        assertNull( filter.search( "X1wxyz#" ) );
+        assertNull( filter.search( "abc" ) );
+        assertEquals( 2, filter.getSearches() );
+        assertEquals( filter.getSearches() - 1, filter.getRejections() + filter.getFalsePositives() );
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        Random random = new Random( 42 );
+        String[] words = new String[20000];
+        for ( int i = 0; i < words.length; i++ ) {
+            words[i] = DictionaryAutomatonTest.randomString( random, "abcdefghijklmnopqrstuvwxyz", 6, 10 );
+        }
+        BloomFilter filter = BloomFilter.build(
+                DictionaryAutomaton.compile( Arrays.asList( words ).iterator(), true, 6, true ), 10 );
+        assertTrue( filter.getExpectedFalsePositiveRate() < 0.01 );
+
+        // single windows, so the rate is the one the filter was sized for
+        for ( int i = 0; i < 100000; i++ ) {
+            filter.search( DictionaryAutomatonTest.randomString( random, "ABCDEFGHIJKLMNOPQRSTUVWXYZ", 6, 6 ) );
+        }
+        assertEquals( 100000, filter.getSearches() );
+        assertEquals( filter.getExpectedFalsePositiveRate(), filter.getFalsePositiveRate(), 0.005 );
+        assertTrue( filter.getHitRatio() > 0.98 );
+    }
+
+    @Test
+    public void testMatchesAutomaton() {
+        Random random = new Random( 42 );
+        for ( boolean caseSensitive : new boolean[] { true, false } ) {
+            for ( boolean matchBackwards : new boolean[] { true, false } ) {
+                String[] words = new String[300];
+                for ( int i = 0; i < words.length; i++ ) {
+                    words[i] = DictionaryAutomatonTest.randomString( random, "abcdABéā", 1, 7 );
+                }
+                DictionaryAutomaton automaton = DictionaryAutomaton.compile( Arrays.asList( words ).iterator(),
+                        caseSensitive, 4, matchBackwards );
+                // a tiny filter, so that most texts reach the automaton
+                for ( int bitsPerPrefix : new int[] { 1, 10 } ) {
+                    BloomFilter filter = BloomFilter.build( automaton, bitsPerPrefix );
+                    for ( int i = 0; i < 3000; i++ ) {
+                        String password = DictionaryAutomatonTest.randomString( random, "abcdABxÉ", 0, 12 );
+                        assertEquals( password + " caseSensitive=" + caseSensitive,
+                                DictionaryAutomatonTest.describe( automaton.search( password ) ),
+                                DictionaryAutomatonTest.describe( filter.search( password ) ) );
+                    }
+                }
+            }
+        }
+    }
+}
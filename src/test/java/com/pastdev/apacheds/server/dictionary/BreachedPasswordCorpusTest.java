@@ -0,0 +1,129 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class BreachedPasswordCorpusTest {
+    private static final String[] BREACHED = { "password", "123456", "P@ssw0rd!", "Pässwörd😀" };
+
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile( "breached", BreachedPasswordCorpus.EXTENSION );
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists( file );
+    }
+
+    private static String hex( byte[] bytes ) {
+        StringBuilder builder = new StringBuilder();
+        for ( byte b : bytes ) {
+            builder.append( String.format( "%02X", b ) );
+        }
+        return builder.toString();
+    }
+
+    private static byte[] sha1( String password ) throws Exception {
+        return MessageDigest.getInstance( "SHA-1" ).digest( password.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        Random random = new Random( 42 );
+        List<String> lines = new ArrayList<String>();
+        List<byte[]> absent = new ArrayList<byte[]>();
+        for ( int i = 0; i < 20000; i++ ) {
+            byte[] hash = new byte[20];
+            random.nextBytes( hash );
+            if ( i % 4 == 0 ) {
+                absent.add( hash );
+            }
+            else {
+                lines.add( hex( hash ) + ":" + random.nextInt( 1000 ) );
+            }
+        }
+        // the edges of the fan-out
+        lines.add( "0000000000000000000000000000000000000000" );
+        lines.add( "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF:1" );
+        for ( String password : BREACHED ) {
+            lines.add( hex( sha1( password ) ) );
+        }
+        Collections.sort( lines );
+        // range file style, prefix and suffix split by a colon
+        lines.set( 1, lines.get( 1 ).substring( 0, 5 ) + ":" + lines.get( 1 ).substring( 5 ).toLowerCase() );
+        lines.add( 3, lines.get( 2 ) );
+        lines.add( "" );
+
+        BreachedPasswordCorpus.write( lines.iterator(), file );
+        BreachedPasswordCorpus corpus = BreachedPasswordCorpus.open( file );
+        assertEquals( lines.size() - 2, corpus.size() );
+
+        for ( String password : BREACHED ) {
+            assertTrue( password, corpus.contains( password ) );
+            assertTrue( password, corpus.contains( new StringBuilder( password ) ) );
+        }
+        assertFalse( corpus.contains( "Password" ) );
+        assertFalse( corpus.contains( "Pässwörd\ud83d" ) );
+        assertTrue( corpus.containsHash( new byte[20] ) );
+        byte[] ones = new byte[20];
+        Arrays.fill( ones, (byte) 0xff );
+        assertTrue( corpus.containsHash( ones ) );
+        for ( String line : lines ) {
+            if ( !line.isEmpty() ) {
+                String hex = line.replace( ":", "" ).substring( 0, 40 );
+                byte[] hash = new byte[20];
+                for ( int i = 0; i < 20; i++ ) {
+                    hash[i] = (byte) Integer.parseInt( hex.substring( i * 2, i * 2 + 2 ), 16 );
+                }
+                assertTrue( line, corpus.containsHash( hash ) );
+            }
+        }
+        for ( byte[] hash : absent ) {
+            assertFalse( hex( hash ), corpus.containsHash( hash ) );
+        }
+    }
+
+    @Test
+    public void testUnsorted() throws IOException {
+        try {
+            BreachedPasswordCorpus.write( Arrays.asList( "B000000000000000000000000000000000000000",
+                    "A000000000000000000000000000000000000000" ).iterator(), file );
+            fail( "unsorted hashes written" );
+        }
+        catch ( IOException e ) {
+            assertEquals( "Hash list is not sorted at line 2", e.getMessage() );
+        }
+
+        try {
+            BreachedPasswordCorpus.write( Arrays.asList( "A0000:123" ).iterator(), file );
+            fail( "short hash written" );
+        }
+        catch ( IOException e ) {
+            assertEquals( "Invalid SHA-1 hash on line 1", e.getMessage() );
+        }
+    }
+}
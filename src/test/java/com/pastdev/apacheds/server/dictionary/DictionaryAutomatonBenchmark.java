@@ -0,0 +1,121 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import edu.vt.middleware.dictionary.ArrayWordList;
+import edu.vt.middleware.dictionary.WordListDictionary;
+import edu.vt.middleware.dictionary.sort.ArraysSort;
+import edu.vt.middleware.password.DictionarySubstringRule;
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.RuleResult;
+
+
+/**
+ * Compares {@link DictionarySubstringRule} with {@link DictionaryAutomaton},
+ * compiled on the heap and mapped from a {@link BinaryDictionary}, on long
+ * passphrases that contain no dictionary word, the case where every
+ * substring has to be looked up.
+ * <p>
+ * Run with <code>mvn -P benchmark verify -Dbenchmark=DictionaryAutomaton</code>
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class DictionaryAutomatonBenchmark {
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    @Param( { "200000" } )
+    public int dictionarySize;
+
+    @Param( { "16", "64", "128", "256" } )
+    public int passphraseLength;
+
+    private DictionaryAutomaton automaton;
+    private DictionaryAutomaton mapped;
+    private String passphrase;
+    private PasswordData passwordData;
+    private DictionarySubstringRule substringRule;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random( 42 );
+        String[] words = new String[dictionarySize];
+        for ( int i = 0; i < words.length; i++ ) {
+            char[] word = new char[4 + random.nextInt( 7 )];
+            for ( int j = 0; j < word.length; j++ ) {
+                word[j] = LETTERS.charAt( random.nextInt( LETTERS.length() ) );
+            }
+            words[i] = new String( word );
+        }
+
+        // three letter syllables never contain a dictionary word
+        StringBuilder builder = new StringBuilder( passphraseLength );
+        while ( builder.length() < passphraseLength ) {
+            if ( builder.length() % 4 == 3 ) {
+                builder.append( random.nextBoolean() ? ' ' : (char) ('0' + random.nextInt( 10 )) );
+            }
+            else {
+                builder.append( LETTERS.charAt( random.nextInt( LETTERS.length() ) ) );
+            }
+        }
+        passphrase = builder.toString();
+        passwordData = new PasswordData( new Password( passphrase ) );
+
+        substringRule = new DictionarySubstringRule(
+                new WordListDictionary( new ArrayWordList( words.clone(), true, new ArraysSort() ) ), 4 );
+        substringRule.setMatchBackwards( true );
+        automaton = DictionaryAutomaton.compile( Arrays.asList( words ).iterator(), true, 4, true );
+
+        Path file = Files.createTempFile( "benchmark", BinaryDictionary.EXTENSION );
+        try {
+            try (OutputStream outputStream = Files.newOutputStream( file )) {
+                BinaryDictionary.write( Arrays.asList( words ).iterator(), true, 4, outputStream );
+            }
+            // the mapping outlives the file
+            mapped = BinaryDictionary.open( file );
+        }
+        finally {
+            Files.delete( file );
+        }
+    }
+
+    @Benchmark
+    public WordMatch automaton() {
+        return automaton.search( passphrase );
+    }
+
+    @Benchmark
+    public WordMatch mapped() {
+        return mapped.search( passphrase );
+    }
+
+    @Benchmark
+    public RuleResult substringRule() {
+        return substringRule.validate( passwordData );
+    }
+}
@@ -0,0 +1,92 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+import org.junit.Test;
+
+
+import edu.vt.middleware.dictionary.ArrayWordList;
+import edu.vt.middleware.dictionary.WordListDictionary;
+import edu.vt.middleware.dictionary.sort.ArraysSort;
+import edu.vt.middleware.password.DictionarySubstringRule;
+import edu.vt.middleware.password.Password;
+import edu.vt.middleware.password.PasswordData;
+import edu.vt.middleware.password.RuleResult;
+import edu.vt.middleware.password.RuleResultDetail;
+
+
+public class DictionaryAutomatonTest {
+    static List<String> describe( RuleResult result ) {
+        List<String> details = new ArrayList<String>();
+        for ( RuleResultDetail detail : result.getDetails() ) {
+            details.add( detail.getErrorCode() + Arrays.toString( detail.getValues() ) );
+        }
+        return details;
+    }
+
+    static List<String> describe( WordMatch match ) {
+        List<String> details = new ArrayList<String>();
+        if ( match != null && match.getWord() != null ) {
+            details.add( "ILLEGAL_WORD[" + match.getWord() + "]" );
+        }
+        if ( match != null && match.getReversedWord() != null ) {
+            details.add( "ILLEGAL_WORD_REVERSED[" + match.getReversedWord() + "]" );
+        }
+        return details;
+    }
+
+    static String randomString( Random random, String alphabet, int minimum, int maximum ) {
+        char[] chars = new char[minimum + random.nextInt( maximum - minimum + 1 )];
+        for ( int i = 0; i < chars.length; i++ ) {
+            chars[i] = alphabet.charAt( random.nextInt( alphabet.length() ) );
+        }
+        return new String( chars );
+    }
+
+    @Test
+    public void testMatchesDictionarySubstringRule() {
+        Random random = new Random( 42 );
+        for ( boolean caseSensitive : new boolean[] { true, false } ) {
+            for ( boolean matchBackwards : new boolean[] { true, false } ) {
+                String[] words = new String[300];
+                for ( int i = 0; i < words.length; i++ ) {
+                    words[i] = randomString( random, "abcdAB", 1, 7 );
+                }
+                DictionarySubstringRule legacy = new DictionarySubstringRule(
+                        new WordListDictionary( new ArrayWordList( words.clone(), caseSensitive, new ArraysSort() ) ), 4 );
+                legacy.setMatchBackwards( matchBackwards );
+                DictionaryAutomaton automaton = DictionaryAutomaton.compile(
+                        Arrays.asList( words ).iterator(), caseSensitive, 4, matchBackwards );
+
+                for ( int i = 0; i < 5000; i++ ) {
+                    String password = randomString( random, "abcdABx", 0, 20 );
+                    assertEquals( password + " caseSensitive=" + caseSensitive,
+                            describe( legacy.validate( new PasswordData( new Password( password ) ) ) ),
+                            describe( automaton.search( password ) ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSearch() {
+        DictionaryAutomaton automaton = DictionaryAutomaton.compile(
+                Arrays.asList( "password", "word", "pass", "abc", "secret" ).iterator(), false, 4, true );
+
+        assertNull( automaton.search( "Xy7!abcQ" ) );
+        assertEquals( "WORD", automaton.search( "xWORD9" ).getWord() );
+        assertEquals( "pass", automaton.search( "1passWORD" ).getWord() );
+        assertNull( automaton.search( "1passWORD" ).getReversedWord() );
+        assertEquals( "Secret", automaton.search( "terceS!" ).getReversedWord() );
+        assertNull( automaton.search( "terceS!" ).getWord() );
+    }
+}
@@ -0,0 +1,172 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class DictionaryRegistryTest {
+    private List<Runnable> loads;
+    private DictionaryRegistry registry;
+
+    private void load() {
+        for ( Runnable load : loads ) {
+            load.run();
+        }
+        loads.clear();
+    }
+
+    @Before
+    public void setUp() {
+        loads = new ArrayList<Runnable>();
+        registry = new DictionaryRegistry( new Executor() {
+            @Override
+            public void execute( Runnable command ) {
+                loads.add( command );
+            }
+        } );
+    }
+
+    @Test
+    public void testLoadFailure() {
+        DictionaryRegistry.Lease lease = registry.acquire( getClass().getClassLoader(), "dictionary/missing",
+                true, 4, false );
+        load();
+        assertEquals( "FAILED", registry.getDictionaries().get( 0 ).getState() );
+        try {
+            lease.search( "X1secret#" );
+            fail( "expected IllegalStateException" );
+        }
+        catch ( IllegalStateException e ) {
+            assertEquals( "Unable to load dictionary", e.getMessage() );
+        }
+
+        // a failed load is retried by the next lease
+        registry.acquire( getClass().getClassLoader(), "dictionary/missing", true, 4, false );
+        assertEquals( 1, loads.size() );
+        lease.release();
+        assertEquals( 1, registry.getDictionaries().size() );
+    }
+
+    @Test
+    public void testShared() {
+        DictionaryRegistry.Lease first = registry.acquire( getClass().getClassLoader(), "dictionary/test-words",
+                true, 4, false );
+        DictionaryRegistry.Lease second = registry.acquire( getClass().getClassLoader(), "dictionary/test-words",
+                true, 4, false );
+        DictionaryRegistry.Lease backwards = registry.acquire( getClass().getClassLoader(), "dictionary/test-words",
+                true, 4, true );
+        assertEquals( 2, loads.size() );
+        assertFalse( first.isLoaded() );
+        assertEquals( 2, registry.getDictionaries().size() );
+        assertEquals( 0, registry.getHeapBytes() );
+
+        load();
+        assertTrue( first.isLoaded() );
+        assertSame( first.getMatcher(), second.getMatcher() );
+        assertNotNull( first.search( "X1secret#" ) );
+        assertNull( first.search( "X1terces#" ) );
+        assertNotNull( backwards.search( "X1terces#" ) );
+        assertTrue( registry.getHeapBytes() > 0 );
+
+        first.release();
+        first.release();
+        backwards.release();
+        List<DictionaryStatistics> statistics = registry.getDictionaries();
+        assertEquals( 1, statistics.size() );
+        assertEquals( "dictionary/test-words", statistics.get( 0 ).getResource() );
+        assertEquals( 1, statistics.get( 0 ).getReferences() );
+        assertEquals( "LOADED", statistics.get( 0 ).getState() );
+        assertTrue( statistics.get( 0 ).getLoadMillis() > 0 );
+
+        // the last lease drops the dictionary, so the next one loads it again
+        second.release();
+        assertEquals( 0, registry.getDictionaries().size() );
+        registry.acquire( getClass().getClassLoader(), "dictionary/test-words", true, 4, false );
+        assertEquals( 1, loads.size() );
+    }
+
+    @Test
+    public void testPrefilter() {
+        DictionaryRegistry.Lease filtered = registry.acquire( getClass().getClassLoader(), "dictionary/test-words",
+                true, 4, false, 10 );
+        DictionaryRegistry.Lease unfiltered = registry.acquire( getClass().getClassLoader(),
+                "dictionary/test-words", true, 4, false );
+        assertEquals( 2, loads.size() );
+        load();
+        assertNull( unfiltered.getPrefilter() );
+        BloomFilter prefilter = filtered.getPrefilter();
+        assertSame( prefilter, filtered.getMatcher() );
+        assertNotNull( filtered.search( "X1secret#" ) );
+        assertNull( filtered.search( "X1zzzzzz#" ) );
+        assertEquals( 2, prefilter.getSearches() );
+
+        for ( DictionaryStatistics statistics : registry.getDictionaries() ) {
+            if ( statistics.getPrefilterBitsPerPrefix() == 10 ) {
+                assertEquals( prefilter.getHitRatio(), statistics.getPrefilterHitRatio(), 0 );
+                assertTrue( statistics.getHeapBytes() > prefilter.getHeapBytes() );
+            }
+            else {
+                assertEquals( 0, statistics.getPrefilterHitRatio(), 0 );
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryDictionary() throws IOException {
+        Path folder = Files.createTempDirectory( "dictionaryregistry" );
+        try {
+            // the word list is not the one compiled, so which was used shows
+            Files.write( folder.resolve( "words" ), "other\n".getBytes( StandardCharsets.UTF_8 ) );
+            try (OutputStream outputStream = Files.newOutputStream( folder.resolve( "words"
+                    + BinaryDictionary.EXTENSION ) )) {
+                BinaryDictionary.write( Arrays.asList( "secret", "password" ).iterator(), true, 4, outputStream );
+            }
+            ClassLoader classLoader = new URLClassLoader( new URL[] { folder.toUri().toURL() }, null );
+
+            DictionaryRegistry.Lease mapped = registry.acquire( classLoader, "words", true, 4, false );
+            DictionaryRegistry.Lease backwards = registry.acquire( classLoader, "words", true, 4, true );
+            DictionaryRegistry.Lease compiled = registry.acquire( classLoader, "words", true, 5, false );
+            load();
+            assertNotNull( mapped.search( "X1secret#" ) );
+            assertNull( mapped.search( "X1terces#" ) );
+            assertNotNull( backwards.search( "X1terces#" ) );
+            assertNull( compiled.search( "X1secret#" ) );
+            assertNotNull( compiled.search( "X1other#" ) );
+            assertEquals( Files.size( folder.resolve( "words" + BinaryDictionary.EXTENSION ) ) * 2,
+                    registry.getMappedBytes() );
+            for ( DictionaryStatistics statistics : registry.getDictionaries() ) {
+                assertEquals( statistics.toString(), statistics.getHeapBytes() == 0,
+                        statistics.getMappedBytes() > 0 );
+            }
+        }
+        finally {
+            for ( String name : new String[] { "words", "words" + BinaryDictionary.EXTENSION } ) {
+                Files.deleteIfExists( folder.resolve( name ) );
+            }
+            Files.delete( folder );
+        }
+    }
+}
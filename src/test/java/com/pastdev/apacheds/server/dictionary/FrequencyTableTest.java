@@ -0,0 +1,60 @@
+package com.pastdev.apacheds.server.dictionary;
+
+
+import static org.junit.Assert.assertEquals;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+import org.junit.Test;
+
+
+public class FrequencyTableTest {
+    private static int rank( FrequencyTable table, String word ) {
+        int state = FrequencyTable.ROOT;
+        for ( int i = 0; i < word.length() && state >= 0; i++ ) {
+            state = table.next( state, FrequencyTable.fold( word.charAt( i ) ) );
+        }
+        return state < 0 ? 0 : table.rank( state );
+    }
+
+    @Test
+    public void testCompile() throws IOException {
+        FrequencyTable table = FrequencyTable.compile( new StringReader(
+                "password\n 123456 \n\nPassWord\npass\nÉté\n" ) );
+        assertEquals( 4, table.size() );
+        assertEquals( 1, rank( table, "password" ) );
+        assertEquals( 1, rank( table, "PASSWORD" ) );
+        assertEquals( 2, rank( table, "123456" ) );
+        assertEquals( 3, rank( table, "pass" ) );
+        assertEquals( 4, rank( table, "été" ) );
+        assertEquals( 0, rank( table, "passw" ) );
+        assertEquals( 0, rank( table, "1234567" ) );
+        assertEquals( -1, table.next( FrequencyTable.ROOT, 'x' ) );
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        FrequencyTable table = FrequencyTable.compile( new StringReader( "zebra\napple\nzoo\nappl\n" ) );
+        Path file = Files.createTempFile( "frequencies", FrequencyTable.EXTENSION );
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            table.write( bytes );
+            Files.write( file, bytes.toByteArray() );
+            FrequencyTable read = FrequencyTable.open( file.toUri().toURL() );
+            assertEquals( 4, read.size() );
+            for ( String word : new String[] { "zebra", "apple", "zoo", "appl", "app", "zo" } ) {
+                assertEquals( word, rank( table, word ), rank( read, word ) );
+            }
+            assertEquals( 2, rank( read, "apple" ) );
+        }
+        finally {
+            Files.deleteIfExists( file );
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.pastdev.apacheds.server.metrics;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+import org.junit.Test;
+
+
+public class LatencyHistogramTest {
+    @Test
+    public void testIndex() {
+        assertEquals( 0, LatencyHistogram.index( -5 ) );
+        assertEquals( LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.index( Long.MAX_VALUE ) );
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 100000; i++ ) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt( 63 );
+            int index = LatencyHistogram.index( value );
+            long highest = LatencyHistogram.highestEquivalentValue( index );
+            assertTrue( value + " <= " + highest, value <= highest );
+            assertTrue( value + " within 1/16 of " + highest,
+                    highest - value <= value / LatencyHistogram.SUB_BUCKETS );
+            if ( index > 0 ) {
+                assertTrue( LatencyHistogram.highestEquivalentValue( index - 1 ) < value );
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random( 42 );
+        long[] values = new long[10000];
+        for ( int i = 0; i < values.length; i++ ) {
+            values[i] = 100 + random.nextInt( 1000000 );
+            histogram.record( values[i] );
+        }
+        Arrays.sort( values );
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals( values.length, snapshot.getCount() );
+        assertEquals( values[values.length - 1], snapshot.getMaximum() );
+        for ( double percentile : new double[] { 50, 99, 99.9 } ) {
+            long exact = values[(int) Math.ceil( percentile / 100 * values.length ) - 1];
+            long reported = snapshot.getValueAtPercentile( percentile );
+            assertTrue( percentile + ": " + reported + " for " + exact,
+                    reported >= exact && reported - exact <= exact / LatencyHistogram.SUB_BUCKETS );
+        }
+
+        histogram.reset();
+        assertEquals( 0, histogram.snapshot().getCount() );
+        assertEquals( 0, histogram.snapshot().getValueAtPercentile( 99 ) );
+    }
+}